@@ -0,0 +1,120 @@
+package de.unistuttgart.vis.dsass2021.ex05.jmh;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.unistuttgart.vis.dsass2021.ex05.p1.Rectangle;
+import de.unistuttgart.vis.dsass2021.ex05.p2.BroadPhase;
+import de.unistuttgart.vis.dsass2021.ex05.p2.CollisionMap;
+import de.unistuttgart.vis.dsass2021.ex05.p2.SweepAndPrune;
+
+/**
+ * Compares the broad phase engines on the same scenes: single queries, the
+ * all-pairs search and a tick that moves every rectangle a little before
+ * searching all pairs. In the mixed scene one rectangle in a hundred is up to
+ * a quarter of the data extent large, which degrades the uniform grid.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx8g" })
+public class BroadPhaseBenchmark {
+
+    private static final int QUERY_COUNT = 1024;
+
+    private static final float SMALL_SIZE = 0.005f * Distribution.EXTENT;
+    private static final float LARGE_SIZE = 0.25f * Distribution.EXTENT;
+
+    @Param({ "1000", "10000", "100000" })
+    int rectangleCount;
+
+    @Param({ "uniform", "mixed" })
+    String scene;
+
+    @Param({ "grid", "adaptiveGrid", "sweepAndPrune" })
+    String engine;
+
+    Rectangle[] rectangles;
+
+    BroadPhase broadPhase;
+
+    Rectangle[] queries;
+
+    int nextQuery = 0;
+
+    /**
+     * Offset of the next tick, alternating so that the rectangles stay in place
+     * on average
+     */
+    float tickOffset = 0.1f;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        final Set<Rectangle> set = new HashSet<>();
+        for (int i = 0; i < this.rectangleCount; ++i) {
+            set.add(randomRectangle(random, "mixed".equals(this.scene) && i % 100 == 0));
+        }
+        this.rectangles = set.toArray(new Rectangle[0]);
+        if ("sweepAndPrune".equals(this.engine)) {
+            this.broadPhase = new SweepAndPrune(set);
+        } else if ("adaptiveGrid".equals(this.engine)) {
+            this.broadPhase = CollisionMap.createAdaptive(set);
+        } else {
+            this.broadPhase = new CollisionMap(set);
+        }
+        this.queries = new Rectangle[QUERY_COUNT];
+        for (int i = 0; i < QUERY_COUNT; ++i) {
+            this.queries[i] = randomRectangle(random, false);
+        }
+    }
+
+    private static Rectangle randomRectangle(final Random random, final boolean large) {
+        final float maxSize = large ? LARGE_SIZE : SMALL_SIZE;
+        final float width = Math.max(Float.MIN_NORMAL, random.nextFloat() * maxSize);
+        final float height = Math.max(Float.MIN_NORMAL, random.nextFloat() * maxSize);
+        return new Rectangle(random.nextFloat() * (Distribution.EXTENT - width),
+                random.nextFloat() * (Distribution.EXTENT - height), width, height);
+    }
+
+    @Benchmark
+    public boolean collide() {
+        return this.broadPhase.collide(this.queries[this.nextQuery++ & (QUERY_COUNT - 1)]);
+    }
+
+    @Benchmark
+    public long allPairs() {
+        return this.broadPhase.forEachCollidingPair((first, second) -> {
+        });
+    }
+
+    @Benchmark
+    public long tick() {
+        for (int i = 0; i < this.rectangles.length; ++i) {
+            final Rectangle rectangle = this.rectangles[i];
+            final Rectangle moved = new Rectangle(rectangle.getX() + this.tickOffset,
+                    rectangle.getY() - this.tickOffset, rectangle.getWidth(), rectangle.getHeight());
+            this.broadPhase.move(rectangle, moved);
+            this.rectangles[i] = moved;
+        }
+        this.tickOffset = -this.tickOffset;
+        return this.broadPhase.forEachCollidingPair((first, second) -> {
+        });
+    }
+}
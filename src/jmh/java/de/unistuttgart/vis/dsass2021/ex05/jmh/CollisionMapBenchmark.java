@@ -0,0 +1,88 @@
+package de.unistuttgart.vis.dsass2021.ex05.jmh;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.unistuttgart.vis.dsass2021.ex05.p1.Rectangle;
+import de.unistuttgart.vis.dsass2021.ex05.p2.CollisionMap;
+
+/**
+ * Measures filling a {@link CollisionMap} and querying it with
+ * {@link CollisionMap#collide(Rectangle)} for different grid resolutions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx8g" })
+public class CollisionMapBenchmark {
+
+    private static final int QUERY_COUNT = 1024;
+
+    @Param({ "1000", "10000", "100000" })
+    int rectangleCount;
+
+    @Param({ "10", "100", "1000" })
+    int gridResolution;
+
+    /**
+     * Maximum side length of a rectangle relative to the data extent
+     */
+    @Param({ "0.001", "0.05" })
+    float maxRelativeSize;
+
+    Set<Rectangle> rectangles;
+
+    CollisionMap collisionMap;
+
+    Rectangle[] queries;
+
+    int nextQuery = 0;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        this.rectangles = new HashSet<>();
+        for (int i = 0; i < this.rectangleCount; ++i) {
+            this.rectangles.add(randomRectangle(random));
+        }
+        this.collisionMap = new CollisionMap(this.rectangles, this.gridResolution, this.gridResolution);
+        this.queries = new Rectangle[QUERY_COUNT];
+        for (int i = 0; i < QUERY_COUNT; ++i) {
+            this.queries[i] = randomRectangle(random);
+        }
+    }
+
+    private Rectangle randomRectangle(final Random random) {
+        final float maxSize = this.maxRelativeSize * Distribution.EXTENT;
+        final float width = Math.max(Float.MIN_NORMAL, random.nextFloat() * maxSize);
+        final float height = Math.max(Float.MIN_NORMAL, random.nextFloat() * maxSize);
+        return new Rectangle(random.nextFloat() * (Distribution.EXTENT - width),
+                random.nextFloat() * (Distribution.EXTENT - height), width, height);
+    }
+
+    @Benchmark
+    public CollisionMap fill() {
+        return new CollisionMap(this.rectangles, this.gridResolution, this.gridResolution);
+    }
+
+    @Benchmark
+    public boolean collide() {
+        return this.collisionMap.collide(this.queries[this.nextQuery++ & (QUERY_COUNT - 1)]);
+    }
+}
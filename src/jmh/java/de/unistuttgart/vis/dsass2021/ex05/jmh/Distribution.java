@@ -0,0 +1,83 @@
+package de.unistuttgart.vis.dsass2021.ex05.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Point distributions used by the benchmarks. All points lie in the square
+ * [0, EXTENT] x [0, EXTENT].
+ */
+public enum Distribution {
+
+    /**
+     * Points spread uniformly over the square.
+     */
+    UNIFORM {
+        @Override
+        PointElement next(final Random random) {
+            return new PointElement(random.nextFloat() * EXTENT, random.nextFloat() * EXTENT);
+        }
+    },
+
+    /**
+     * Points in a few dense Gaussian clusters.
+     */
+    CLUSTERED {
+        @Override
+        PointElement next(final Random random) {
+            final int cluster = random.nextInt(CLUSTER_CENTERS.length);
+            final float x = CLUSTER_CENTERS[cluster][0] + (float) random.nextGaussian() * EXTENT / 100;
+            final float y = CLUSTER_CENTERS[cluster][1] + (float) random.nextGaussian() * EXTENT / 100;
+            return new PointElement(clamp(x), clamp(y));
+        }
+    },
+
+    /**
+     * All points at the same position.
+     */
+    DUPLICATES {
+        @Override
+        PointElement next(final Random random) {
+            return new PointElement(EXTENT / 2, EXTENT / 2);
+        }
+    },
+
+    /**
+     * Points on the diagonal of the square.
+     */
+    LINE {
+        @Override
+        PointElement next(final Random random) {
+            final float t = random.nextFloat() * EXTENT;
+            return new PointElement(t, t);
+        }
+    };
+
+    public static final float EXTENT = 1000;
+
+    private static final float[][] CLUSTER_CENTERS = { { 100, 100 }, { 250, 800 }, { 500, 500 }, { 900, 150 },
+            { 700, 850 } };
+
+    abstract PointElement next(Random random);
+
+    /**
+     * Generates a reproducible list of points.
+     *
+     * @param size number of points
+     * @param seed random seed
+     * @return the points
+     */
+    public List<PointElement> generate(final int size, final long seed) {
+        final Random random = new Random(seed);
+        final List<PointElement> elements = new ArrayList<>(size);
+        for (int i = 0; i < size; ++i) {
+            elements.add(next(random));
+        }
+        return elements;
+    }
+
+    private static float clamp(final float value) {
+        return Math.max(0, Math.min(EXTENT, value));
+    }
+}
@@ -0,0 +1,21 @@
+package de.unistuttgart.vis.dsass2021.ex05.jmh;
+
+import de.unistuttgart.vis.dsass2021.ex05.p1.Point;
+import de.unistuttgart.vis.dsass2021.ex05.p1.QuadTreeElement;
+
+/**
+ * Minimal quad tree element that only carries a position.
+ */
+public final class PointElement implements QuadTreeElement {
+
+    private final Point position;
+
+    public PointElement(final float x, final float y) {
+        this.position = new Point(x, y);
+    }
+
+    @Override
+    public Point getPosition() {
+        return this.position;
+    }
+}
@@ -0,0 +1,68 @@
+package de.unistuttgart.vis.dsass2021.ex05.jmh;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.unistuttgart.vis.dsass2021.ex05.p1.PackedQuadTree;
+import de.unistuttgart.vis.dsass2021.ex05.p1.QuadTree;
+import de.unistuttgart.vis.dsass2021.ex05.p1.SimpleQuadTree;
+
+/**
+ * Measures the time to build a quad tree from a list of points.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx8g" })
+public class QuadTreeBuildBenchmark {
+
+    @Param({ "1000", "10000", "100000", "1000000", "10000000" })
+    int size;
+
+    @Param({ "UNIFORM", "CLUSTERED", "DUPLICATES", "LINE" })
+    Distribution distribution;
+
+    @Param({ "4", "16" })
+    int maxElementsInLeaf;
+
+    List<PointElement> elements;
+
+    @Setup
+    public void setUp() {
+        this.elements = this.distribution.generate(this.size, 42);
+    }
+
+    @Benchmark
+    public QuadTree<PointElement> simple() {
+        return new SimpleQuadTree<>(this.elements, this.maxElementsInLeaf);
+    }
+
+    @Benchmark
+    public QuadTree<PointElement> simpleParallel() {
+        return SimpleQuadTree.createParallel(this.elements, this.maxElementsInLeaf);
+    }
+
+    @Benchmark
+    public QuadTree<PointElement> packed() {
+        return new PackedQuadTree<>(this.elements, this.maxElementsInLeaf);
+    }
+
+    @Benchmark
+    public QuadTree<PointElement> packedMorton() {
+        return PackedQuadTree.bulkLoad(this.elements, this.maxElementsInLeaf);
+    }
+}
@@ -0,0 +1,86 @@
+package de.unistuttgart.vis.dsass2021.ex05.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.unistuttgart.vis.dsass2021.ex05.p1.PackedQuadTree;
+import de.unistuttgart.vis.dsass2021.ex05.p1.QuadTree;
+import de.unistuttgart.vis.dsass2021.ex05.p1.Rectangle;
+import de.unistuttgart.vis.dsass2021.ex05.p1.SimpleQuadTree;
+
+/**
+ * Measures range query throughput and latency. The query rectangles are square
+ * and cover the given fraction (selectivity) of the data extent, so the number
+ * of hits grows with selectivity on uniform data.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx8g" })
+public class QuadTreeQueryBenchmark {
+
+    private static final int QUERY_COUNT = 1024;
+
+    @Param({ "1000", "100000", "10000000" })
+    int size;
+
+    @Param({ "UNIFORM", "CLUSTERED", "DUPLICATES", "LINE" })
+    Distribution distribution;
+
+    @Param({ "0.0001", "0.01", "0.25" })
+    double selectivity;
+
+    @Param({ "simple", "packed" })
+    String tree;
+
+    QuadTree<PointElement> quadTree;
+
+    Rectangle[] queries;
+
+    int nextQuery = 0;
+
+    @Setup
+    public void setUp() {
+        final List<PointElement> elements = this.distribution.generate(this.size, 42);
+        this.quadTree = "packed".equals(this.tree) ? new PackedQuadTree<>(elements, 8)
+                : new SimpleQuadTree<>(elements, 8);
+
+        final Random random = new Random(7);
+        final float side = (float) Math.sqrt(this.selectivity) * Distribution.EXTENT;
+        this.queries = new Rectangle[QUERY_COUNT];
+        for (int i = 0; i < QUERY_COUNT; ++i) {
+            this.queries[i] = new Rectangle(random.nextFloat() * (Distribution.EXTENT - side),
+                    random.nextFloat() * (Distribution.EXTENT - side), side, side);
+        }
+    }
+
+    @Benchmark
+    public List<PointElement> rangeQuery() {
+        final List<PointElement> result = new ArrayList<>();
+        this.quadTree.rangeQuery(result, this.queries[this.nextQuery++ & (QUERY_COUNT - 1)]);
+        return result;
+    }
+
+    @Benchmark
+    public int count() {
+        final Rectangle query = this.queries[this.nextQuery++ & (QUERY_COUNT - 1)];
+        return this.quadTree.count(query.getX(), query.getY(), query.getX() + query.getWidth(),
+                query.getY() + query.getHeight());
+    }
+}
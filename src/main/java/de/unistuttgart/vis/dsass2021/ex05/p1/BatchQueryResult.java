@@ -0,0 +1,75 @@
+package de.unistuttgart.vis.dsass2021.ex05.p1;
+
+/**
+ * The results of a batch of range queries. The hits of all queries are stored
+ * in one array, grouped by query index, so no list is allocated per query.
+ *
+ * @param <T> type of the elements
+ */
+public final class BatchQueryResult<T> {
+
+    /**
+     * The hits of query q are elements[offsets[q]] to elements[offsets[q + 1] - 1]
+     */
+    private final int[] offsets;
+    private final Object[] elements;
+
+    BatchQueryResult(final int[] offsets, final Object[] elements) {
+        this.offsets = offsets;
+        this.elements = elements;
+    }
+
+    /**
+     * Returns the number of queries in the batch.
+     *
+     * @return the number of queries
+     */
+    public int queryCount() {
+        return this.offsets.length - 1;
+    }
+
+    /**
+     * Returns the number of hits of a query.
+     *
+     * @param query index of the query in the batch
+     * @return the number of hits
+     * @throws IndexOutOfBoundsException if query is not a valid index
+     */
+    public int size(final int query) {
+        return this.offsets[query + 1] - this.offsets[query];
+    }
+
+    /**
+     * Returns a hit of a query.
+     *
+     * @param query index of the query in the batch
+     * @param index index of the hit, must be less than {@link #size(int)}
+     * @return the element
+     * @throws IndexOutOfBoundsException if query or index is not a valid index
+     */
+    @SuppressWarnings("unchecked")
+    public T get(final int query, final int index) {
+        if (index < 0 || index >= size(query)) {
+            throw new IndexOutOfBoundsException("index " + index + " for query " + query);
+        }
+        return (T) this.elements[this.offsets[query] + index];
+    }
+
+    /**
+     * Passes the hits of a query to the visitor until it returns false.
+     *
+     * @param query   index of the query in the batch
+     * @param visitor receives the hits, must be != null
+     * @return true if all hits were visited
+     * @throws IndexOutOfBoundsException if query is not a valid index
+     */
+    @SuppressWarnings("unchecked")
+    public boolean forEach(final int query, final QuadTreeVisitor<? super T> visitor) {
+        for (int i = this.offsets[query]; i < this.offsets[query + 1]; ++i) {
+            if (!visitor.visit((T) this.elements[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,16 @@
+package de.unistuttgart.vis.dsass2021.ex05.p1;
+
+/**
+ * An element with a spatial extent, indexed by its bounding rectangle in an
+ * {@link RTree}.
+ */
+public interface BoundedElement {
+
+  /**
+   * Returns the bounding rectangle of the element. It must not change while
+   * the element is stored in a tree.
+   * 
+   * @return the bounding rectangle
+   */
+  public abstract Rectangle getBounds();
+}
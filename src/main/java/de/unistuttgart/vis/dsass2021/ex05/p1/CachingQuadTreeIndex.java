@@ -0,0 +1,451 @@
+package de.unistuttgart.vis.dsass2021.ex05.p1;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A cache of range query results in front of a point index that changes
+ * rarely. The bounds of a query are snapped outward to a grid of the given
+ * quantum, and the index is queried with the snapped area, so that queries
+ * which differ by less than a grid cell share one cached result. A query is
+ * answered from the cached result of its snapped area, or from any cached
+ * result whose area contains the query, by filtering the cached elements by
+ * the exact query bounds. Only the most recently used results are searched
+ * for one that contains the query, so a lookup takes constant time no matter
+ * how many results are cached.
+ *
+ * The cache holds at most the given number of elements over all results; the
+ * least recently used results are evicted first. After elements were added,
+ * removed or moved, {@link #invalidate(float, float, float, float)} drops the
+ * results whose area intersects the changed region (including the old and new
+ * position of a moved element); the other results stay valid.
+ *
+ * The cache itself is thread-safe. The underlying index must not be modified
+ * while it is queried.
+ *
+ * @param <T> type of the elements
+ */
+public class CachingQuadTreeIndex<T extends QuadTreeElement> implements SpatialIndex<T> {
+
+    /**
+     * Number of most recently used results that are searched for a result
+     * containing the query
+     */
+    private static final int CONTAINMENT_CANDIDATES = 16;
+
+    /**
+     * The area of a cached result, snapped to the grid
+     */
+    private static final class Area {
+
+        final float minX;
+        final float minY;
+        final float maxX;
+        final float maxY;
+
+        Area(final float minX, final float minY, final float maxX, final float maxY) {
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+        }
+
+        boolean contains(final float minX, final float minY, final float maxX, final float maxY) {
+            return this.minX <= minX && this.minY <= minY && this.maxX >= maxX && this.maxY >= maxY;
+        }
+
+        boolean intersects(final float minX, final float minY, final float maxX, final float maxY) {
+            return this.minX <= maxX && this.maxX >= minX && this.minY <= maxY && this.maxY >= minY;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof Area)) {
+                return false;
+            }
+            final Area area = (Area) other;
+            return Float.floatToIntBits(this.minX) == Float.floatToIntBits(area.minX)
+                    && Float.floatToIntBits(this.minY) == Float.floatToIntBits(area.minY)
+                    && Float.floatToIntBits(this.maxX) == Float.floatToIntBits(area.maxX)
+                    && Float.floatToIntBits(this.maxY) == Float.floatToIntBits(area.maxY);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = Float.floatToIntBits(this.minX);
+            hash = 31 * hash + Float.floatToIntBits(this.minY);
+            hash = 31 * hash + Float.floatToIntBits(this.maxX);
+            return 31 * hash + Float.floatToIntBits(this.maxY);
+        }
+    }
+
+    /**
+     * The elements in an area together with their positions at the time of the
+     * query
+     */
+    private static final class Entry {
+
+        final Area area;
+        final Object[] elements;
+        final float[] xs;
+        final float[] ys;
+
+        /**
+         * False once the result was evicted or invalidated
+         */
+        boolean cached = false;
+
+        Entry(final Area area, final List<? extends QuadTreeElement> elements) {
+            this.area = area;
+            this.elements = elements.toArray();
+            this.xs = new float[this.elements.length];
+            this.ys = new float[this.elements.length];
+            for (int i = 0; i < this.elements.length; ++i) {
+                final Point position = elements.get(i).getPosition();
+                this.xs[i] = position.getXValue();
+                this.ys[i] = position.getYValue();
+            }
+        }
+
+        /**
+         * @return the number of elements charged against the capacity, an empty
+         *         result counts as one element
+         */
+        long cost() {
+            return this.elements.length + 1L;
+        }
+    }
+
+    private final SpatialIndex<T> index;
+    private final float quantum;
+    private final long maxCachedElements;
+
+    /**
+     * The cached results in access order, also the lock of the cache
+     */
+    private final LinkedHashMap<Area, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The most recently stored or used results, the candidates for a result
+     * that contains a query. The slot of the next result is recentNext.
+     */
+    private final Entry[] recent = new Entry[CONTAINMENT_CANDIDATES];
+    private int recentNext = 0;
+
+    /**
+     * Sum of {@link Entry#cost()} over all cached results
+     */
+    private long cachedElements = 0;
+
+    /**
+     * Incremented by every invalidation. A result is only cached if no
+     * invalidation happened while it was queried.
+     */
+    private long generation = 0;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder containedHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * Creates a cache in front of the given index.
+     *
+     * @param index             the index that answers the queries that miss the
+     *                          cache, must be != null
+     * @param quantum           the size of the grid the query bounds are snapped
+     *                          to, must be > 0 and finite
+     * @param maxCachedElements the maximum number of elements over all cached
+     *                          results, must be >= 1
+     * @throws IllegalArgumentException if any parameter is invalid
+     */
+    public CachingQuadTreeIndex(final SpatialIndex<T> index, final float quantum, final long maxCachedElements) {
+        if (index == null || !(quantum > 0) || Float.isInfinite(quantum) || maxCachedElements < 1) {
+            throw new IllegalArgumentException("index is null, quantum is not positive or maxCachedElements < 1");
+        }
+        this.index = index;
+        this.quantum = quantum;
+        this.maxCachedElements = maxCachedElements;
+    }
+
+    @Override
+    public void rangeQuery(final List<T> resultList, final Rectangle query) {
+        if (resultList == null || query == null) {
+            throw new IllegalArgumentException("resultList or query is null");
+        }
+        rangeQuery(query.getX(), query.getY(), query.getX() + query.getWidth(), query.getY() + query.getHeight(),
+                element -> resultList.add(element));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean rangeQuery(final float minX, final float minY, final float maxX, final float maxY,
+            final QuadTreeVisitor<? super T> visitor) {
+        if (visitor == null) {
+            throw new IllegalArgumentException("visitor is null");
+        }
+        if (!(minX <= maxX && minY <= maxY)) {
+            return true;
+        }
+        final Entry entry = entry(minX, minY, maxX, maxY);
+        for (int block = 0; block < entry.elements.length; block += Long.SIZE) {
+            long mask = Rectangle.containedPointsMask(minX, minY, maxX, maxY, entry.xs, entry.ys, block,
+                    Math.min(entry.elements.length, block + Long.SIZE));
+            for (; mask != 0; mask &= mask - 1) {
+                if (!visitor.visit((T) entry.elements[block + Long.numberOfTrailingZeros(mask)])) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Counts the elements in the area from a cached result if there is one.
+     * Otherwise the index counts them, and no result is cached.
+     */
+    @Override
+    public int count(final float minX, final float minY, final float maxX, final float maxY) {
+        if (!(minX <= maxX && minY <= maxY)) {
+            return 0;
+        }
+        final Entry entry = lookup(snap(minX, minY, maxX, maxY), minX, minY, maxX, maxY);
+        if (entry == null) {
+            return this.index.count(minX, minY, maxX, maxY);
+        }
+        return Rectangle.countContainedPoints(minX, minY, maxX, maxY, entry.xs, entry.ys, 0, entry.elements.length);
+    }
+
+    /**
+     * Drops the cached results whose area intersects the region [minX, maxX] x
+     * [minY, maxY] (edges included). Call this after changing the elements of
+     * the underlying index in that region.
+     *
+     * @param minX left bound of the changed region
+     * @param minY upper bound of the changed region
+     * @param maxX right bound of the changed region
+     * @param maxY lower bound of the changed region
+     */
+    public void invalidate(final float minX, final float minY, final float maxX, final float maxY) {
+        synchronized (this.entries) {
+            ++this.generation;
+            final Iterator<Entry> iterator = this.entries.values().iterator();
+            while (iterator.hasNext()) {
+                final Entry entry = iterator.next();
+                if (entry.area.intersects(minX, minY, maxX, maxY)) {
+                    iterator.remove();
+                    entry.cached = false;
+                    this.cachedElements -= entry.cost();
+                    this.invalidations.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops all cached results.
+     */
+    public void invalidateAll() {
+        synchronized (this.entries) {
+            ++this.generation;
+            this.invalidations.add(this.entries.size());
+            for (final Entry entry : this.entries.values()) {
+                entry.cached = false;
+            }
+            this.entries.clear();
+            Arrays.fill(this.recent, null);
+            this.cachedElements = 0;
+        }
+    }
+
+    /**
+     * Returns the cached result that answers the query, querying the index and
+     * caching the result of the snapped area on a miss.
+     */
+    private Entry entry(final float minX, final float minY, final float maxX, final float maxY) {
+        final Area area = snap(minX, minY, maxX, maxY);
+        final Entry cached = lookup(area, minX, minY, maxX, maxY);
+        if (cached != null) {
+            return cached;
+        }
+        final long generation;
+        synchronized (this.entries) {
+            generation = this.generation;
+        }
+        final List<T> elements = new ArrayList<>();
+        this.index.rangeQuery(area.minX, area.minY, area.maxX, area.maxY, element -> elements.add(element));
+        final Entry entry = new Entry(area, elements);
+        store(entry, generation);
+        return entry;
+    }
+
+    /**
+     * Finds the cached result of the snapped area, or else the smallest of the
+     * most recently used results whose area contains the query.
+     *
+     * @return the result or null on a miss
+     */
+    private Entry lookup(final Area area, final float minX, final float minY, final float maxX, final float maxY) {
+        synchronized (this.entries) {
+            final Entry entry = this.entries.get(area);
+            if (entry != null) {
+                this.hits.increment();
+                remember(entry);
+                return entry;
+            }
+            Entry best = null;
+            for (final Entry candidate : this.recent) {
+                if (candidate != null && candidate.cached && candidate.area.contains(minX, minY, maxX, maxY)
+                        && (best == null || candidate.elements.length < best.elements.length)) {
+                    best = candidate;
+                }
+            }
+            if (best == null) {
+                this.misses.increment();
+                return null;
+            }
+            // mark the result as recently used
+            this.entries.get(best.area);
+            this.containedHits.increment();
+            return best;
+        }
+    }
+
+    /**
+     * Adds a result to the most recently used results unless it is one of
+     * them already. Must be called with the lock held.
+     */
+    private void remember(final Entry entry) {
+        for (final Entry candidate : this.recent) {
+            if (candidate == entry) {
+                return;
+            }
+        }
+        this.recent[this.recentNext] = entry;
+        this.recentNext = (this.recentNext + 1) % CONTAINMENT_CANDIDATES;
+    }
+
+    /**
+     * Caches a result unless the cache was invalidated since it was queried or
+     * it is larger than the capacity, and evicts the least recently used
+     * results beyond the capacity.
+     */
+    private void store(final Entry entry, final long generation) {
+        if (entry.cost() > this.maxCachedElements) {
+            return;
+        }
+        synchronized (this.entries) {
+            if (generation != this.generation) {
+                return;
+            }
+            final Entry previous = this.entries.put(entry.area, entry);
+            if (previous != null) {
+                previous.cached = false;
+                this.cachedElements -= previous.cost();
+            }
+            entry.cached = true;
+            this.cachedElements += entry.cost();
+            remember(entry);
+            final Iterator<Entry> iterator = this.entries.values().iterator();
+            while (this.cachedElements > this.maxCachedElements) {
+                final Entry eldest = iterator.next();
+                iterator.remove();
+                eldest.cached = false;
+                this.cachedElements -= eldest.cost();
+                this.evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Snaps the bounds outward to the grid. Infinite bounds are kept.
+     */
+    private Area snap(final float minX, final float minY, final float maxX, final float maxY) {
+        return new Area(snapDown(minX), snapDown(minY), snapUp(maxX), snapUp(maxY));
+    }
+
+    private float snapDown(final float value) {
+        if (Float.isInfinite(value)) {
+            return value;
+        }
+        final float snapped = (float) (Math.floor(value / (double) this.quantum) * this.quantum);
+        return snapped > value ? Math.nextDown(snapped) : snapped;
+    }
+
+    private float snapUp(final float value) {
+        if (Float.isInfinite(value)) {
+            return value;
+        }
+        final float snapped = (float) (Math.ceil(value / (double) this.quantum) * this.quantum);
+        return snapped < value ? Math.nextUp(snapped) : snapped;
+    }
+
+    /**
+     * @return the number of queries answered from the result of their own
+     *         snapped area
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * @return the number of queries answered from the result of a larger area
+     */
+    public long getContainedHits() {
+        return this.containedHits.sum();
+    }
+
+    /**
+     * @return the number of queries answered by the underlying index
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * @return the fraction of the queries answered from the cache, 0 if there
+     *         was no query
+     */
+    public double getHitRate() {
+        final long hits = getHits() + getContainedHits();
+        final long total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return the number of results evicted to stay within the capacity
+     */
+    public long getEvictions() {
+        return this.evictions.sum();
+    }
+
+    /**
+     * @return the number of results dropped by an invalidation
+     */
+    public long getInvalidations() {
+        return this.invalidations.sum();
+    }
+
+    /**
+     * @return the number of cached results
+     */
+    public int getCachedResults() {
+        synchronized (this.entries) {
+            return this.entries.size();
+        }
+    }
+
+    /**
+     * @return the number of elements charged against the capacity
+     */
+    public long getCachedElements() {
+        synchronized (this.entries) {
+            return this.cachedElements;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package de.unistuttgart.vis.dsass2021.ex05.p1;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * A quad tree index that can be queried by any number of threads while a
+ * writer builds the next version of the tree. Readers always query the
+ * current snapshot without locking; a writer builds a new tree off to the
+ * side and publishes it with a single atomic reference swap, which also
+ * safely publishes all fields of the new tree to the readers.
+ *
+ * A tree must not be modified (e.g. by {@link SimpleQuadTree#insert}) once it
+ * has been published.
+ *
+ * @param <T> type of the elements
+ */
+public class ConcurrentQuadTreeIndex<T extends QuadTreeElement> {
+
+    /**
+     * An immutable published version of the index.
+     */
+    private static final class Snapshot<T extends QuadTreeElement> {
+
+        final QuadTree<T> tree;
+        final long version;
+        final long publishedNanos;
+
+        Snapshot(final QuadTree<T> tree, final long version) {
+            this.tree = tree;
+            this.version = version;
+            this.publishedNanos = System.nanoTime();
+        }
+    }
+
+    private final AtomicReference<Snapshot<T>> current;
+
+    /**
+     * Serializes writers, readers never take it
+     */
+    private final Object writeLock = new Object();
+
+    private volatile long lastBuildNanos = 0;
+    private volatile long lastWriteLockWaitNanos = 0;
+
+    /**
+     * Creates an index whose first snapshot is the given tree.
+     *
+     * @param tree the initial tree, must be != null
+     * @throws IllegalArgumentException if tree is null
+     */
+    public ConcurrentQuadTreeIndex(final QuadTree<T> tree) {
+        if (tree == null) {
+            throw new IllegalArgumentException("tree is null");
+        }
+        this.current = new AtomicReference<>(new Snapshot<>(tree, 0));
+    }
+
+    /**
+     * Returns the current tree. Callers that issue several queries which must
+     * see the same version should query the returned tree directly.
+     *
+     * @return the tree of the current snapshot
+     */
+    public QuadTree<T> snapshot() {
+        return this.current.get().tree;
+    }
+
+    /**
+     * Performs {@link QuadTree#rangeQuery(List, Rectangle)} on the current
+     * snapshot.
+     *
+     * @param resultList list that is used to store the elements, must be != null
+     * @param query      the searching area, must be != null
+     * @throws IllegalArgumentException if any parameter is null
+     */
+    public void rangeQuery(final List<T> resultList, final Rectangle query) {
+        snapshot().rangeQuery(resultList, query);
+    }
+
+    /**
+     * Performs
+     * {@link QuadTree#rangeQuery(float, float, float, float, QuadTreeVisitor)} on
+     * the current snapshot.
+     *
+     * @return true if all elements were visited, false if the visitor stopped
+     *         the query
+     * @throws IllegalArgumentException if visitor is null
+     */
+    public boolean rangeQuery(final float minX, final float minY, final float maxX, final float maxY,
+            final QuadTreeVisitor<? super T> visitor) {
+        return snapshot().rangeQuery(minX, minY, maxX, maxY, visitor);
+    }
+
+    /**
+     * Performs {@link QuadTree#count(float, float, float, float)} on the current
+     * snapshot.
+     *
+     * @return the number of elements in the area
+     */
+    public int count(final float minX, final float minY, final float maxX, final float maxY) {
+        return snapshot().count(minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Performs {@link QuadTree#nearestNeighbours(float, float, int, float)} on
+     * the current snapshot.
+     *
+     * @return at most k elements in ascending order of their distance
+     * @throws IllegalArgumentException if k < 1 or maxDistance is negative or
+     *                                  NaN
+     */
+    public List<T> nearestNeighbours(final float x, final float y, final int k, final float maxDistance) {
+        return snapshot().nearestNeighbours(x, y, k, maxDistance);
+    }
+
+    /**
+     * Makes the given tree the current snapshot. Queries that already run on
+     * the previous snapshot finish on it.
+     *
+     * @param tree the new tree, must be != null and must not be modified
+     *             afterwards
+     * @throws IllegalArgumentException if tree is null
+     */
+    public void publish(final QuadTree<T> tree) {
+        if (tree == null) {
+            throw new IllegalArgumentException("tree is null");
+        }
+        final long waitStart = System.nanoTime();
+        synchronized (this.writeLock) {
+            this.lastWriteLockWaitNanos = System.nanoTime() - waitStart;
+            swap(tree);
+        }
+    }
+
+    /**
+     * Replaces the current snapshot, the caller must hold the write lock.
+     */
+    private void swap(final QuadTree<T> tree) {
+        this.current.set(new Snapshot<>(tree, this.current.get().version + 1));
+    }
+
+    /**
+     * Builds a new tree from the given elements on the calling thread and
+     * publishes it. Readers keep querying the previous snapshot meanwhile.
+     *
+     * @param elements the elements of the new version, must be != null
+     * @param builder  creates the tree, e.g. <code>list -&gt; new
+     *                 PackedQuadTree&lt;&gt;(list, 8)</code>, must be != null
+     * @throws IllegalArgumentException if any parameter is null or the builder
+     *                                  rejects the elements
+     */
+    public void rebuild(final List<T> elements, final Function<List<T>, ? extends QuadTree<T>> builder) {
+        if (elements == null || builder == null) {
+            throw new IllegalArgumentException("elements or builder is null");
+        }
+        final long waitStart = System.nanoTime();
+        synchronized (this.writeLock) {
+            final long start = System.nanoTime();
+            this.lastWriteLockWaitNanos = start - waitStart;
+            final QuadTree<T> tree = builder.apply(elements);
+            this.lastBuildNanos = System.nanoTime() - start;
+            swap(tree);
+        }
+    }
+
+    /**
+     * Returns the version of the current snapshot, which starts at 0 and is
+     * incremented on every publication.
+     *
+     * @return the version of the current snapshot
+     */
+    public long getSnapshotVersion() {
+        return this.current.get().version;
+    }
+
+    /**
+     * Returns the time since the current snapshot was published.
+     *
+     * @return the age of the current snapshot in nanoseconds
+     */
+    public long getSnapshotAgeNanos() {
+        return System.nanoTime() - this.current.get().publishedNanos;
+    }
+
+    /**
+     * Returns how long the last {@link #rebuild} took to build its tree.
+     *
+     * @return the build time in nanoseconds, 0 if there was no rebuild yet
+     */
+    public long getLastBuildNanos() {
+        return this.lastBuildNanos;
+    }
+
+    /**
+     * Returns how long the last {@link #publish} or {@link #rebuild} waited for
+     * other writers before it could start. The swap itself is a single
+     * reference update, so this wait (mostly for a concurrent rebuild) is what
+     * delays a publication.
+     *
+     * @return the wait time in nanoseconds, 0 if nothing was published yet
+     */
+    public long getLastWriteLockWaitNanos() {
+        return this.lastWriteLockWaitNanos;
+    }
+}
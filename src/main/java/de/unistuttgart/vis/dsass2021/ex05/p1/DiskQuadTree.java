@@ -0,0 +1,254 @@
+package de.unistuttgart.vis.dsass2021.ex05.p1;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * A quad tree over more points than fit into memory, stored in a directory as
+ * a number of partition files in the format of {@link MappedQuadTree} and an
+ * index with the bounds of every partition. It is created by an
+ * {@link ExternalQuadTreeBuilder} and reopened with {@link #open(Path)}.
+ *
+ * The partitions are memory-mapped, so only the pages touched by a query are
+ * read from disk. The builder writes the partitions in the depth-first order
+ * of the quadrants they were split into, so consecutive partitions lie close
+ * to each other. A coarse index holds the bounds of every block of
+ * {@link #BLOCK_SIZE} consecutive partitions; a query tests the bounds of the
+ * blocks and only the partitions of the blocks it intersects. A query thus
+ * costs O(partitions / BLOCK_SIZE + BLOCK_SIZE * intersected blocks) bound
+ * tests before the intersected partitions are queried.
+ *
+ * The index file is little-endian:
+ *
+ * <pre>
+ * int  magic ("QTIX")
+ * int  version
+ * int  partitionCount
+ * partitionCount times: float minX, minY, maxX, maxY; int pointCount
+ * </pre>
+ */
+public final class DiskQuadTree {
+
+    static final int MAGIC = 0x51544958;
+    static final int VERSION = 1;
+    static final String INDEX_FILE = "index.qtree";
+
+    private static final int HEADER_BYTES = 3 * Integer.BYTES;
+    private static final int PARTITION_BYTES = 4 * Float.BYTES + Integer.BYTES;
+
+    /**
+     * Number of consecutive partitions that share one entry of the coarse
+     * index
+     */
+    static final int BLOCK_SIZE = 16;
+
+    private final float[] minX;
+    private final float[] minY;
+    private final float[] maxX;
+    private final float[] maxY;
+    private final MappedQuadTree[] partitions;
+    private final long size;
+
+    /**
+     * Bounds of the partitions [BLOCK_SIZE * block, BLOCK_SIZE * (block + 1))
+     */
+    private final float[] blockMinX;
+    private final float[] blockMinY;
+    private final float[] blockMaxX;
+    private final float[] blockMaxY;
+
+    private DiskQuadTree(final float[] minX, final float[] minY, final float[] maxX, final float[] maxY,
+            final MappedQuadTree[] partitions) {
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.partitions = partitions;
+        long size = 0;
+        for (final MappedQuadTree partition : partitions) {
+            size += partition.size();
+        }
+        this.size = size;
+        final int blocks = (partitions.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        this.blockMinX = new float[blocks];
+        this.blockMinY = new float[blocks];
+        this.blockMaxX = new float[blocks];
+        this.blockMaxY = new float[blocks];
+        for (int block = 0; block < blocks; ++block) {
+            this.blockMinX[block] = Float.POSITIVE_INFINITY;
+            this.blockMinY[block] = Float.POSITIVE_INFINITY;
+            this.blockMaxX[block] = Float.NEGATIVE_INFINITY;
+            this.blockMaxY[block] = Float.NEGATIVE_INFINITY;
+            for (int i = block * BLOCK_SIZE; i < Math.min(partitions.length, (block + 1) * BLOCK_SIZE); ++i) {
+                this.blockMinX[block] = Math.min(this.blockMinX[block], minX[i]);
+                this.blockMinY[block] = Math.min(this.blockMinY[block], minY[i]);
+                this.blockMaxX[block] = Math.max(this.blockMaxX[block], maxX[i]);
+                this.blockMaxY[block] = Math.max(this.blockMaxY[block], maxY[i]);
+            }
+        }
+    }
+
+    static Path partitionFile(final Path directory, final int index) {
+        return directory.resolve("partition-" + index + ".qtree");
+    }
+
+    static void writeIndex(final Path directory, final List<ExternalQuadTreeBuilder.Partition> partitions)
+            throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + PARTITION_BYTES * partitions.size())
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(partitions.size());
+        for (final ExternalQuadTreeBuilder.Partition partition : partitions) {
+            buffer.putFloat(partition.minX).putFloat(partition.minY).putFloat(partition.maxX)
+                    .putFloat(partition.maxY).putInt(partition.count);
+        }
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(directory.resolve(INDEX_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Opens a tree written by an {@link ExternalQuadTreeBuilder} and maps its
+     * partitions.
+     *
+     * @param directory the directory of the tree, must be != null
+     * @return the tree
+     * @throws IOException              if a file cannot be read or is corrupt
+     * @throws IllegalArgumentException if directory is null
+     */
+    public static DiskQuadTree open(final Path directory) throws IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("directory is null");
+        }
+        final Path indexFile = directory.resolve(INDEX_FILE);
+        final ByteBuffer index;
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("not a quad tree index: " + indexFile);
+            }
+            index = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            while (index.hasRemaining() && channel.read(index) >= 0) {
+                // read the complete index
+            }
+        }
+        final int count = index.getInt(8);
+        if (index.getInt(0) != MAGIC || index.getInt(4) != VERSION || count < 0
+                || index.capacity() != HEADER_BYTES + (long) PARTITION_BYTES * count) {
+            throw new IOException("not a quad tree index: " + indexFile);
+        }
+        final float[] minX = new float[count];
+        final float[] minY = new float[count];
+        final float[] maxX = new float[count];
+        final float[] maxY = new float[count];
+        final MappedQuadTree[] partitions = new MappedQuadTree[count];
+        index.position(HEADER_BYTES);
+        for (int i = 0; i < count; ++i) {
+            minX[i] = index.getFloat();
+            minY[i] = index.getFloat();
+            maxX[i] = index.getFloat();
+            maxY[i] = index.getFloat();
+            partitions[i] = MappedQuadTree.open(partitionFile(directory, i));
+            if (partitions[i].size() != index.getInt()) {
+                throw new IOException("partition " + i + " does not match the index: " + indexFile);
+            }
+        }
+        return new DiskQuadTree(minX, minY, maxX, maxY, partitions);
+    }
+
+    /**
+     * Returns the number of points stored in this tree.
+     *
+     * @return the number of points
+     */
+    public long size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the number of partition files.
+     *
+     * @return the number of partitions
+     */
+    public int getPartitionCount() {
+        return this.partitions.length;
+    }
+
+    /**
+     * Passes the id of every point in the area [minX, maxX] x [minY, maxY]
+     * (edges included) to the visitor until it returns false.
+     *
+     * @param minX    left bound of the area
+     * @param minY    upper bound of the area
+     * @param maxX    right bound of the area
+     * @param maxY    lower bound of the area
+     * @param visitor receives the ids, must be != null
+     * @return true if all points were visited, false if the visitor stopped the
+     *         query
+     * @throws IllegalArgumentException if visitor is null
+     */
+    public boolean rangeQuery(final float minX, final float minY, final float maxX, final float maxY,
+            final PointIdVisitor visitor) {
+        if (visitor == null) {
+            throw new IllegalArgumentException("visitor is null");
+        }
+        for (int block = 0; block < this.blockMinX.length; ++block) {
+            if (!blockIntersects(block, minX, minY, maxX, maxY)) {
+                continue;
+            }
+            final int end = Math.min(this.partitions.length, (block + 1) * BLOCK_SIZE);
+            for (int i = block * BLOCK_SIZE; i < end; ++i) {
+                if (intersects(i, minX, minY, maxX, maxY)
+                        && !this.partitions[i].rangeQuery(minX, minY, maxX, maxY, visitor)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Counts the points in the area [minX, maxX] x [minY, maxY] (edges
+     * included).
+     *
+     * @param minX left bound of the area
+     * @param minY upper bound of the area
+     * @param maxX right bound of the area
+     * @param maxY lower bound of the area
+     * @return the number of points in the area
+     */
+    public long count(final float minX, final float minY, final float maxX, final float maxY) {
+        long count = 0;
+        for (int block = 0; block < this.blockMinX.length; ++block) {
+            if (!blockIntersects(block, minX, minY, maxX, maxY)) {
+                continue;
+            }
+            final int end = Math.min(this.partitions.length, (block + 1) * BLOCK_SIZE);
+            for (int i = block * BLOCK_SIZE; i < end; ++i) {
+                if (intersects(i, minX, minY, maxX, maxY)) {
+                    count += this.partitions[i].count(minX, minY, maxX, maxY);
+                }
+            }
+        }
+        return count;
+    }
+
+    private boolean blockIntersects(final int block, final float queryMinX, final float queryMinY,
+            final float queryMaxX, final float queryMaxY) {
+        return queryMinX <= this.blockMaxX[block] && queryMaxX >= this.blockMinX[block]
+                && queryMinY <= this.blockMaxY[block] && queryMaxY >= this.blockMinY[block];
+    }
+
+    private boolean intersects(final int partition, final float queryMinX, final float queryMinY,
+            final float queryMaxX, final float queryMaxY) {
+        return queryMinX <= this.maxX[partition] && queryMaxX >= this.minX[partition]
+                && queryMinY <= this.maxY[partition] && queryMaxY >= this.minY[partition];
+    }
+}
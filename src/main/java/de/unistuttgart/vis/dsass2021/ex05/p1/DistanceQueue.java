@@ -0,0 +1,109 @@
+package de.unistuttgart.vis.dsass2021.ex05.p1;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of entries ordered by a distance key, used for best-first
+ * nearest neighbour searches. An entry consists of an object and an int, whose
+ * meaning (node or element) is up to the tree implementation.
+ */
+final class DistanceQueue {
+
+    private double[] keys = new double[16];
+    private Object[] items = new Object[16];
+    private int[] indices = new int[16];
+    private int size = 0;
+
+    boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    void add(final double key, final Object item, final int index) {
+        if (this.size == this.keys.length) {
+            this.keys = Arrays.copyOf(this.keys, 2 * this.size);
+            this.items = Arrays.copyOf(this.items, 2 * this.size);
+            this.indices = Arrays.copyOf(this.indices, 2 * this.size);
+        }
+        int position = this.size++;
+        while (position > 0) {
+            final int parent = (position - 1) >>> 1;
+            if (this.keys[parent] <= key) {
+                break;
+            }
+            move(parent, position);
+            position = parent;
+        }
+        set(position, key, item, index);
+    }
+
+    double topKey() {
+        return this.keys[0];
+    }
+
+    Object topItem() {
+        return this.items[0];
+    }
+
+    int topIndex() {
+        return this.indices[0];
+    }
+
+    void removeTop() {
+        final int last = --this.size;
+        final double key = this.keys[last];
+        final Object item = this.items[last];
+        final int index = this.indices[last];
+        this.items[last] = null;
+        if (last == 0) {
+            return;
+        }
+        int position = 0;
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= last) {
+                break;
+            }
+            if (child + 1 < last && this.keys[child + 1] < this.keys[child]) {
+                ++child;
+            }
+            if (key <= this.keys[child]) {
+                break;
+            }
+            move(child, position);
+            position = child;
+        }
+        set(position, key, item, index);
+    }
+
+    private void move(final int from, final int to) {
+        this.keys[to] = this.keys[from];
+        this.items[to] = this.items[from];
+        this.indices[to] = this.indices[from];
+    }
+
+    private void set(final int position, final double key, final Object item, final int index) {
+        this.keys[position] = key;
+        this.items[position] = item;
+        this.indices[position] = index;
+    }
+
+    /**
+     * Squared distance between a point and an axis-aligned box, 0 if the point
+     * is inside the box.
+     */
+    static double squaredDistance(final float x, final float y, final float minX, final float minY,
+            final float maxX, final float maxY) {
+        final double dx = Math.max(Math.max((double) minX - x, (double) x - maxX), 0);
+        final double dy = Math.max(Math.max((double) minY - y, (double) y - maxY), 0);
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Squared distance between two points.
+     */
+    static double squaredDistance(final float x, final float y, final float otherX, final float otherY) {
+        final double dx = (double) otherX - x;
+        final double dy = (double) otherY - y;
+        return dx * dx + dy * dy;
+    }
+}
@@ -0,0 +1,408 @@
+package de.unistuttgart.vis.dsass2021.ex05.p1;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Builds a {@link DiskQuadTree} from more points than fit into memory. The
+ * points are streamed in with {@link #add(float, float)}; a buffer of
+ * maxPointsInMemory points is held in memory, and the rest is spilled to
+ * temporary files.
+ *
+ * {@link #build()} splits the spilled points like the upper levels of a quad
+ * tree: a partition with too many points is read sequentially and distributed
+ * into four temporary files, one per quadrant of its bounds (a point on a
+ * split line belongs to the upper or left quadrant), and each quadrant is
+ * split again until it fits into memory. A partition that fits is loaded,
+ * built into a {@link PackedLayout} and written in the format of
+ * {@link MappedQuadTree}. Partitions that cannot be split any further (all
+ * points coincide) are written in chunks of maxPointsInMemory points.
+ *
+ * The memory used is proportional to maxPointsInMemory, but it is a multiple
+ * of the points themselves. Besides the buffer of added points (8 bytes per
+ * point), a loaded partition takes its coordinates and ids (12 bytes per
+ * point). The coordinates are partitioned in place into the layout; its slot
+ * order and the ids in slot order take 8 more bytes per point, and the nodes
+ * come on top. A build therefore needs about 28 * maxPointsInMemory bytes
+ * plus the nodes of one partition.
+ *
+ * The id of a point is the number of points added before it.
+ */
+public final class ExternalQuadTreeBuilder implements Closeable {
+
+    private static final int IO_BUFFER_BYTES = 1 << 16;
+
+    /**
+     * Size of a spilled point: the id and both coordinates
+     */
+    private static final int RECORD_BYTES = Integer.BYTES + 2 * Float.BYTES;
+
+    private final Path directory;
+    private final int maxPointsInMemory;
+    private final int maxElementsInLeaf;
+
+    /**
+     * The points added since the last spill
+     */
+    private final float[] xs;
+    private final float[] ys;
+    private int buffered;
+
+    /**
+     * Number of points added so far
+     */
+    private long size;
+
+    private Path spillDirectory;
+    private SpillWriter spill;
+    private int nextSpillFile;
+
+    private final List<Partition> partitions = new ArrayList<>();
+
+    /**
+     * True once the tree was built or the build was abandoned
+     */
+    private boolean closed;
+
+    /**
+     * Creates a builder that writes the tree into the given directory.
+     *
+     * @param directory         receives the files of the tree and, while
+     *                          building, a temporary directory with the spilled
+     *                          points; must be != null and exist
+     * @param maxPointsInMemory the number of added points buffered in memory,
+     *                          which is also the maximum number of points in
+     *                          one partition file, must be >= 1
+     * @param maxElementsInLeaf the maximum number of points in a leaf node of the
+     *                          partitions, must be >= 1
+     * @throws IllegalArgumentException if directory is null or a number is less
+     *                                  than 1
+     */
+    public ExternalQuadTreeBuilder(final Path directory, final int maxPointsInMemory, final int maxElementsInLeaf) {
+        if (directory == null || maxPointsInMemory < 1 || maxElementsInLeaf < 1) {
+            throw new IllegalArgumentException(
+                    "directory is null or maxPointsInMemory or maxElementsInLeaf is less than 1");
+        }
+        this.directory = directory;
+        this.maxPointsInMemory = maxPointsInMemory;
+        this.maxElementsInLeaf = maxElementsInLeaf;
+        this.xs = new float[maxPointsInMemory];
+        this.ys = new float[maxPointsInMemory];
+    }
+
+    /**
+     * Adds a point.
+     *
+     * @param x x coordinate of the point
+     * @param y y coordinate of the point
+     * @return the id of the point
+     * @throws IOException           if spilling the points fails
+     * @throws IllegalStateException if the builder was already built or if the
+     *                               ids are used up
+     */
+    public int add(final float x, final float y) throws IOException {
+        if (this.closed || this.size == Integer.MAX_VALUE) {
+            throw new IllegalStateException("builder is closed or full");
+        }
+        if (this.buffered == this.maxPointsInMemory) {
+            spillBuffer();
+        }
+        this.xs[this.buffered] = x;
+        this.ys[this.buffered] = y;
+        ++this.buffered;
+        return (int) this.size++;
+    }
+
+    /**
+     * Adds all remaining points of an iterator, see {@link #add(float, float)}.
+     *
+     * @param points the points to add, must be != null and must not return null
+     * @throws IOException              if spilling the points fails
+     * @throws IllegalArgumentException if points is null or returns null
+     */
+    public void addAll(final Iterator<? extends Point> points) throws IOException {
+        if (points == null) {
+            throw new IllegalArgumentException("points is null");
+        }
+        while (points.hasNext()) {
+            final Point point = points.next();
+            if (point == null) {
+                throw new IllegalArgumentException("points contains null");
+            }
+            add(point.getXValue(), point.getYValue());
+        }
+    }
+
+    private void spillBuffer() throws IOException {
+        if (this.spill == null) {
+            this.spillDirectory = Files.createTempDirectory(this.directory, "spill");
+            this.spill = new SpillWriter(nextSpillFile());
+        }
+        final long firstId = this.size - this.buffered;
+        for (int i = 0; i < this.buffered; ++i) {
+            this.spill.append((int) (firstId + i), this.xs[i], this.ys[i]);
+        }
+        this.buffered = 0;
+    }
+
+    private Path nextSpillFile() {
+        return this.spillDirectory.resolve("points-" + this.nextSpillFile++ + ".bin");
+    }
+
+    /**
+     * Partitions the points, writes the partition files and an index into the
+     * directory and opens the resulting tree. The builder cannot be used
+     * afterwards.
+     *
+     * @return the tree
+     * @throws IOException           if reading or writing a file fails
+     * @throws IllegalStateException if the builder was already built
+     */
+    public DiskQuadTree build() throws IOException {
+        if (this.closed) {
+            throw new IllegalStateException("builder is closed");
+        }
+        try {
+            if (this.spill == null) {
+                final int[] ids = new int[this.buffered];
+                Arrays.setAll(ids, i -> i);
+                writePartition(Arrays.copyOf(this.xs, this.buffered), Arrays.copyOf(this.ys, this.buffered), ids);
+            } else {
+                spillBuffer();
+                this.spill.close();
+                split(this.spill, 0);
+                this.spill = null;
+            }
+            DiskQuadTree.writeIndex(this.directory, this.partitions);
+        } finally {
+            close();
+        }
+        return DiskQuadTree.open(this.directory);
+    }
+
+    /**
+     * Loads a spilled partition that fits into memory and writes it, or
+     * distributes it into its quadrants and splits those.
+     */
+    private void split(final SpillWriter partition, final int depth) throws IOException {
+        if (partition.count <= this.maxPointsInMemory) {
+            load(partition, this.maxPointsInMemory);
+            return;
+        }
+        final float midX = partition.minX + (partition.maxX - partition.minX) / 2;
+        final float midY = partition.minY + (partition.maxY - partition.minY) / 2;
+        final SpillWriter[] quadrants = new SpillWriter[4];
+        try {
+            for (int quadrant = 0; quadrant < 4; ++quadrant) {
+                quadrants[quadrant] = new SpillWriter(nextSpillFile());
+            }
+            try (SpillReader reader = new SpillReader(partition.file)) {
+                while (reader.next()) {
+                    final int quadrant = (reader.x <= midX ? 0 : 1) + (reader.y <= midY ? 0 : 2);
+                    quadrants[quadrant].append(reader.id, reader.x, reader.y);
+                }
+            }
+        } finally {
+            for (final SpillWriter quadrant : quadrants) {
+                if (quadrant != null) {
+                    quadrant.close();
+                }
+            }
+        }
+        Files.delete(partition.file);
+        for (final SpillWriter quadrant : quadrants) {
+            if (quadrant.count == partition.count || depth >= PackedLayout.MAX_DEPTH) {
+                // the bounds cannot be halved any further
+                load(quadrant, this.maxPointsInMemory);
+            } else if (quadrant.count > 0) {
+                split(quadrant, depth + 1);
+            } else {
+                Files.delete(quadrant.file);
+            }
+        }
+    }
+
+    /**
+     * Reads a spilled partition in chunks of chunkSize points and writes every
+     * chunk as a partition file.
+     */
+    private void load(final SpillWriter partition, final int chunkSize) throws IOException {
+        try (SpillReader reader = new SpillReader(partition.file)) {
+            for (long remaining = partition.count; remaining > 0; remaining -= chunkSize) {
+                final int count = (int) Math.min(chunkSize, remaining);
+                final float[] chunkXs = new float[count];
+                final float[] chunkYs = new float[count];
+                final int[] ids = new int[count];
+                for (int i = 0; i < count && reader.next(); ++i) {
+                    ids[i] = reader.id;
+                    chunkXs[i] = reader.x;
+                    chunkYs[i] = reader.y;
+                }
+                writePartition(chunkXs, chunkYs, ids);
+            }
+        }
+        Files.delete(partition.file);
+    }
+
+    /**
+     * Builds the layout of a partition and writes it. The coordinate arrays
+     * are partitioned in place and must not be used afterwards.
+     */
+    private void writePartition(final float[] xs, final float[] ys, final int[] ids) throws IOException {
+        final PackedLayout layout = PackedLayout.buildInPlace(xs, ys, this.maxElementsInLeaf);
+        final int[] slotIds = new int[ids.length];
+        for (int slot = 0; slot < slotIds.length; ++slot) {
+            slotIds[slot] = ids[layout.order[slot]];
+        }
+        final int index = this.partitions.size();
+        MappedQuadTree.write(layout, slotIds, DiskQuadTree.partitionFile(this.directory, index));
+        this.partitions.add(new Partition(layout.minX[0], layout.minY[0], layout.maxX[0], layout.maxY[0],
+                ids.length));
+    }
+
+    /**
+     * Deletes the temporary files. Called by {@link #build()}; call it directly
+     * to abandon a build.
+     */
+    @Override
+    public void close() throws IOException {
+        this.closed = true;
+        if (this.spill != null) {
+            this.spill.close();
+            this.spill = null;
+        }
+        if (this.spillDirectory != null) {
+            try (Stream<Path> files = Files.list(this.spillDirectory)) {
+                for (final Iterator<Path> iterator = files.iterator(); iterator.hasNext();) {
+                    Files.delete(iterator.next());
+                }
+            }
+            Files.delete(this.spillDirectory);
+            this.spillDirectory = null;
+        }
+    }
+
+    /**
+     * Bounds and size of a partition file
+     */
+    static final class Partition {
+        final float minX;
+        final float minY;
+        final float maxX;
+        final float maxY;
+        final int count;
+
+        Partition(final float minX, final float minY, final float maxX, final float maxY, final int count) {
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            this.count = count;
+        }
+    }
+
+    /**
+     * Appends points to a temporary file and keeps track of their bounds.
+     */
+    private static final class SpillWriter implements Closeable {
+        final Path file;
+        private FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_BYTES).order(ByteOrder.nativeOrder());
+        long count;
+        float minX = Float.POSITIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+
+        SpillWriter(final Path file) throws IOException {
+            this.file = file;
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        }
+
+        void append(final int id, final float x, final float y) throws IOException {
+            if (this.buffer.remaining() < RECORD_BYTES) {
+                flush();
+            }
+            this.buffer.putInt(id).putFloat(x).putFloat(y);
+            ++this.count;
+            this.minX = Math.min(this.minX, x);
+            this.minY = Math.min(this.minY, y);
+            this.maxX = Math.max(this.maxX, x);
+            this.maxY = Math.max(this.maxY, y);
+        }
+
+        private void flush() throws IOException {
+            this.buffer.flip();
+            while (this.buffer.hasRemaining()) {
+                this.channel.write(this.buffer);
+            }
+            this.buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.channel != null) {
+                try {
+                    flush();
+                } finally {
+                    this.channel.close();
+                    this.channel = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the points of a temporary file one after another.
+     */
+    private static final class SpillReader implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_BYTES).order(ByteOrder.nativeOrder());
+        int id;
+        float x;
+        float y;
+
+        SpillReader(final Path file) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            this.buffer.limit(0);
+        }
+
+        /**
+         * Reads the next point into id, x and y.
+         *
+         * @return false if there are no more points
+         */
+        boolean next() throws IOException {
+            if (this.buffer.remaining() < RECORD_BYTES) {
+                this.buffer.compact();
+                while (this.buffer.position() < RECORD_BYTES && this.channel.read(this.buffer) >= 0) {
+                    // fill at least one record
+                }
+                this.buffer.flip();
+                if (this.buffer.remaining() < RECORD_BYTES) {
+                    return false;
+                }
+            }
+            this.id = this.buffer.getInt();
+            this.x = this.buffer.getFloat();
+            this.y = this.buffer.getFloat();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.channel.close();
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package de.unistuttgart.vis.dsass2021.ex05.p1;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read-only quad tree that is queried directly from a memory-mapped file.
+ * Opening the file only maps it, nothing is deserialized, so a tree is ready
+ * to use at once and processes that open the same file share its pages in the
+ * page cache.
+ *
+ * The file stores a {@link PackedLayout} and the ids of the points, written by
+ * {@link PointCloudQuadTree#write(Path)} or {@link PackedQuadTree#write(Path)}.
+ * All values are little-endian:
+ *
+ * <pre>
+ * int     magic ("QTRE")
+ * int     version
+ * int     nodeCount
+ * int     pointCount
+ * int[]   firstChild, start, end       (nodeCount entries each)
+ * float[] minX, minY, maxX, maxY       (nodeCount entries each)
+ * float[] xs, ys                       (pointCount entries each, slot order)
+ * int[]   ids                          (pointCount entries, slot order)
+ * </pre>
+ *
+ * A file up to 2 GB is mapped as a whole; in a larger file every array is
+ * mapped separately. As a mapping holds at most 2 GB, a tree with more than
+ * {@link #MAX_VALUES} nodes or points can neither be written nor opened.
+ *
+ * Opening a file checks that the child and slot indices of every node lie
+ * within the arrays, so a corrupt file is rejected instead of failing in a
+ * query. This reads the node arrays once, but not the points.
+ */
+public final class MappedQuadTree {
+
+    static final int MAGIC = 0x51545245;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 4 * Integer.BYTES;
+
+    /**
+     * The maximum number of nodes or points, the number of 4 byte values that
+     * fit into one mapping
+     */
+    static final int MAX_VALUES = Integer.MAX_VALUE / 4;
+
+    private static final int WRITE_BUFFER_BYTES = 1 << 16;
+
+    private final int pointCount;
+    private final IntBuffer firstChild;
+    private final IntBuffer start;
+    private final IntBuffer end;
+    private final FloatBuffer minX;
+    private final FloatBuffer minY;
+    private final FloatBuffer maxX;
+    private final FloatBuffer maxY;
+    private final FloatBuffer xs;
+    private final FloatBuffer ys;
+    private final IntBuffer ids;
+
+    private MappedQuadTree(final FileChannel channel, final int nodeCount, final int pointCount) throws IOException {
+        this.pointCount = pointCount;
+        final ByteBuffer file = channel.size() <= Integer.MAX_VALUE
+                ? channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                : null;
+        long offset = HEADER_BYTES;
+        this.firstChild = map(channel, file, offset, nodeCount).asIntBuffer();
+        this.start = map(channel, file, offset += 4L * nodeCount, nodeCount).asIntBuffer();
+        this.end = map(channel, file, offset += 4L * nodeCount, nodeCount).asIntBuffer();
+        this.minX = map(channel, file, offset += 4L * nodeCount, nodeCount).asFloatBuffer();
+        this.minY = map(channel, file, offset += 4L * nodeCount, nodeCount).asFloatBuffer();
+        this.maxX = map(channel, file, offset += 4L * nodeCount, nodeCount).asFloatBuffer();
+        this.maxY = map(channel, file, offset += 4L * nodeCount, nodeCount).asFloatBuffer();
+        this.xs = map(channel, file, offset += 4L * nodeCount, pointCount).asFloatBuffer();
+        this.ys = map(channel, file, offset += 4L * pointCount, pointCount).asFloatBuffer();
+        this.ids = map(channel, file, offset += 4L * pointCount, pointCount).asIntBuffer();
+    }
+
+    /**
+     * Returns the region of an array, as a slice of the mapped file or, if the
+     * file is too large to be mapped as a whole, as a mapping of its own.
+     */
+    private static ByteBuffer map(final FileChannel channel, final ByteBuffer file, final long offset,
+            final int values) throws IOException {
+        final ByteBuffer region;
+        if (file == null) {
+            region = channel.map(FileChannel.MapMode.READ_ONLY, offset, 4L * values);
+        } else {
+            final ByteBuffer view = file.duplicate();
+            view.position((int) offset).limit((int) offset + 4 * values);
+            region = view.slice();
+        }
+        return region.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Maps a quad tree file. The mapping stays valid until the tree is garbage
+     * collected; the file must not be changed meanwhile.
+     *
+     * @param file the file, must be != null
+     * @return the tree
+     * @throws IOException              if the file cannot be read, is not a
+     *                                  quad tree file, is corrupt or is too
+     *                                  large to be mapped
+     * @throws IllegalArgumentException if file is null
+     */
+    public static MappedQuadTree open(final Path file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file is null");
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // read the complete header
+            }
+            if (header.hasRemaining() || header.getInt(0) != MAGIC) {
+                throw new IOException("not a quad tree file: " + file);
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException("unsupported quad tree file version " + header.getInt(4) + ": " + file);
+            }
+            final int nodeCount = header.getInt(8);
+            final int pointCount = header.getInt(12);
+            if (nodeCount < 1 || pointCount < 0 || channel.size() != fileSize(nodeCount, pointCount)) {
+                throw new IOException("corrupt quad tree file: " + file);
+            }
+            if (nodeCount > MAX_VALUES || pointCount > MAX_VALUES) {
+                throw new IOException("quad tree file with " + nodeCount + " nodes and " + pointCount
+                        + " points exceeds the maximum of " + MAX_VALUES + " nodes or points: " + file);
+            }
+            final MappedQuadTree tree = new MappedQuadTree(channel, nodeCount, pointCount);
+            final int corruptNode = tree.findCorruptNode(nodeCount);
+            if (corruptNode >= 0) {
+                throw new IOException("corrupt quad tree file, invalid node " + corruptNode + ": " + file);
+            }
+            return tree;
+        }
+    }
+
+    /**
+     * Checks that the children of every inner node follow it within the node
+     * array, which also rules out cycles, and that the slot range of every
+     * node lies within the point arrays.
+     *
+     * @return the first invalid node, or -1 if all nodes are valid
+     */
+    private int findCorruptNode(final int nodeCount) {
+        for (int node = 0; node < nodeCount; ++node) {
+            final int children = this.firstChild.get(node);
+            final int start = this.start.get(node);
+            final int end = this.end.get(node);
+            if (children != PackedLayout.NO_CHILD && (children <= node || children > nodeCount - 4)) {
+                return node;
+            }
+            if (start < 0 || start > end || end > this.pointCount) {
+                return node;
+            }
+        }
+        return -1;
+    }
+
+    static long fileSize(final int nodeCount, final int pointCount) {
+        return HEADER_BYTES + 4L * (7L * nodeCount + 3L * pointCount);
+    }
+
+    /**
+     * Writes a layout in the format described above.
+     *
+     * @param layout the layout to write
+     * @param ids    the id of the point in each slot
+     * @param file   the file to create or overwrite
+     * @throws IOException if the file cannot be written
+     */
+    static void write(final PackedLayout layout, final int[] ids, final Path file) throws IOException {
+        if (layout.nodeCount > MAX_VALUES || layout.size() > MAX_VALUES) {
+            throw new IOException("a tree with " + layout.nodeCount + " nodes and " + layout.size()
+                    + " points exceeds the maximum of " + MAX_VALUES + " nodes or points: " + file);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(layout.nodeCount).putInt(layout.size());
+            writeInts(channel, buffer, layout.firstChild, layout.nodeCount);
+            writeInts(channel, buffer, layout.start, layout.nodeCount);
+            writeInts(channel, buffer, layout.end, layout.nodeCount);
+            writeFloats(channel, buffer, layout.minX, layout.nodeCount);
+            writeFloats(channel, buffer, layout.minY, layout.nodeCount);
+            writeFloats(channel, buffer, layout.maxX, layout.nodeCount);
+            writeFloats(channel, buffer, layout.maxY, layout.nodeCount);
+            writeFloats(channel, buffer, layout.xs, layout.size());
+            writeFloats(channel, buffer, layout.ys, layout.size());
+            writeInts(channel, buffer, ids, layout.size());
+            flush(channel, buffer);
+        }
+    }
+
+    private static void writeInts(final FileChannel channel, final ByteBuffer buffer, final int[] values,
+            final int count) throws IOException {
+        for (int i = 0; i < count;) {
+            if (buffer.remaining() < Integer.BYTES) {
+                flush(channel, buffer);
+            }
+            final int length = Math.min(count - i, buffer.remaining() / Integer.BYTES);
+            buffer.asIntBuffer().put(values, i, length);
+            buffer.position(buffer.position() + length * Integer.BYTES);
+            i += length;
+        }
+    }
+
+    private static void writeFloats(final FileChannel channel, final ByteBuffer buffer, final float[] values,
+            final int count) throws IOException {
+        for (int i = 0; i < count;) {
+            if (buffer.remaining() < Float.BYTES) {
+                flush(channel, buffer);
+            }
+            final int length = Math.min(count - i, buffer.remaining() / Float.BYTES);
+            buffer.asFloatBuffer().put(values, i, length);
+            buffer.position(buffer.position() + length * Float.BYTES);
+            i += length;
+        }
+    }
+
+    private static void flush(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Returns the number of points stored in this tree.
+     *
+     * @return the number of points
+     */
+    public int size() {
+        return this.pointCount;
+    }
+
+    /**
+     * Passes the id of every point in the area [minX, maxX] x [minY, maxY]
+     * (edges included) to the visitor until it returns false.
+     *
+     * @param minX    left bound of the area
+     * @param minY    upper bound of the area
+     * @param maxX    right bound of the area
+     * @param maxY    lower bound of the area
+     * @param visitor receives the ids, must be != null
+     * @return true if all points were visited, false if the visitor stopped the
+     *         query
+     * @throws IllegalArgumentException if visitor is null
+     */
+    public boolean rangeQuery(final float minX, final float minY, final float maxX, final float maxY,
+            final PointIdVisitor visitor) {
+        if (visitor == null) {
+            throw new IllegalArgumentException("visitor is null");
+        }
+        return visit(0, minX, minY, maxX, maxY, visitor);
+    }
+
+    private boolean visit(final int node, final float minX, final float minY, final float maxX, final float maxY,
+            final PointIdVisitor visitor) {
+        if (!intersects(node, minX, minY, maxX, maxY)) {
+            return true;
+        }
+        if (within(node, minX, minY, maxX, maxY)) {
+            // every point of the subtree is a hit
+            for (int slot = this.start.get(node); slot < this.end.get(node); ++slot) {
+                if (!visitor.visit(this.ids.get(slot))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        final int children = this.firstChild.get(node);
+        if (children == PackedLayout.NO_CHILD) {
+            for (int slot = this.start.get(node); slot < this.end.get(node); ++slot) {
+                if (contains(slot, minX, minY, maxX, maxY) && !visitor.visit(this.ids.get(slot))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        for (int child = children; child < children + 4; ++child) {
+            if (!visit(child, minX, minY, maxX, maxY, visitor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the ids of the points in the area [minX, maxX] x [minY, maxY]
+     * (edges included) into the given array. If there are more points than
+     * fit into the array, the remaining ones are only counted.
+     *
+     * @param minX   left bound of the area
+     * @param minY   upper bound of the area
+     * @param maxX   right bound of the area
+     * @param maxY   lower bound of the area
+     * @param result receives the ids, must be != null
+     * @return the number of points in the area, which may exceed
+     *         result.length
+     * @throws IllegalArgumentException if result is null
+     */
+    public int rangeQuery(final float minX, final float minY, final float maxX, final float maxY,
+            final int[] result) {
+        if (result == null) {
+            throw new IllegalArgumentException("result is null");
+        }
+        return collect(0, minX, minY, maxX, maxY, result, 0);
+    }
+
+    private int collect(final int node, final float minX, final float minY, final float maxX, final float maxY,
+            final int[] result, int count) {
+        if (!intersects(node, minX, minY, maxX, maxY)) {
+            return count;
+        }
+        if (within(node, minX, minY, maxX, maxY)) {
+            // every point of the subtree is a hit, copy the ids that fit
+            final int start = this.start.get(node);
+            final int end = this.end.get(node);
+            for (int slot = start; slot < end && count + (slot - start) < result.length; ++slot) {
+                result[count + (slot - start)] = this.ids.get(slot);
+            }
+            return count + (end - start);
+        }
+        final int children = this.firstChild.get(node);
+        if (children == PackedLayout.NO_CHILD) {
+            for (int slot = this.start.get(node); slot < this.end.get(node); ++slot) {
+                if (contains(slot, minX, minY, maxX, maxY)) {
+                    if (count < result.length) {
+                        result[count] = this.ids.get(slot);
+                    }
+                    ++count;
+                }
+            }
+            return count;
+        }
+        for (int child = children; child < children + 4; ++child) {
+            count = collect(child, minX, minY, maxX, maxY, result, count);
+        }
+        return count;
+    }
+
+    /**
+     * Counts the points in the area [minX, maxX] x [minY, maxY] (edges
+     * included).
+     *
+     * @param minX left bound of the area
+     * @param minY upper bound of the area
+     * @param maxX right bound of the area
+     * @param maxY lower bound of the area
+     * @return the number of points in the area
+     */
+    public int count(final float minX, final float minY, final float maxX, final float maxY) {
+        return count(0, minX, minY, maxX, maxY);
+    }
+
+    private int count(final int node, final float minX, final float minY, final float maxX, final float maxY) {
+        if (!intersects(node, minX, minY, maxX, maxY)) {
+            return 0;
+        }
+        if (within(node, minX, minY, maxX, maxY)) {
+            return this.end.get(node) - this.start.get(node);
+        }
+        int count = 0;
+        final int children = this.firstChild.get(node);
+        if (children == PackedLayout.NO_CHILD) {
+            for (int slot = this.start.get(node); slot < this.end.get(node); ++slot) {
+                if (contains(slot, minX, minY, maxX, maxY)) {
+                    ++count;
+                }
+            }
+            return count;
+        }
+        for (int child = children; child < children + 4; ++child) {
+            count += count(child, minX, minY, maxX, maxY);
+        }
+        return count;
+    }
+
+    private boolean intersects(final int node, final float queryMinX, final float queryMinY, final float queryMaxX,
+            final float queryMaxY) {
+        return queryMinX <= this.maxX.get(node) && queryMaxX >= this.minX.get(node)
+                && queryMinY <= this.maxY.get(node) && queryMaxY >= this.minY.get(node);
+    }
+
+    private boolean within(final int node, final float queryMinX, final float queryMinY, final float queryMaxX,
+            final float queryMaxY) {
+        return Rectangle.containsBox(queryMinX, queryMinY, queryMaxX, queryMaxY, this.minX.get(node),
+                this.minY.get(node), this.maxX.get(node), this.maxY.get(node));
+    }
+
+    private boolean contains(final int slot, final float queryMinX, final float queryMinY, final float queryMaxX,
+            final float queryMaxY) {
+        final float x = this.xs.get(slot);
+        final float y = this.ys.get(slot);
+        return x >= queryMinX && x <= queryMaxX && y >= queryMinY && y <= queryMaxY;
+    }
+}
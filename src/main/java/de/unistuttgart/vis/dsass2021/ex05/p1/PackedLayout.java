@@ -0,0 +1,569 @@
+package de.unistuttgart.vis.dsass2021.ex05.p1;
+
+import java.util.Arrays;
+
+/**
+ * The node structure of a quad tree stored in flat primitive arrays.
+ *
+ * Node <code>n</code> is described by the n-th entry of every node array. The
+ * four children of an inner node are stored consecutively starting at
+ * <code>firstChild[n]</code> in the order top left, top right, bottom left,
+ * bottom right; leaves have <code>firstChild[n] == -1</code>. The elements of
+ * every node (inner nodes included) form the contiguous slot range
+ * <code>[start[n], end[n])</code> of the permuted coordinate arrays. The node
+ * bounds are the tight bounds of the contained points, empty nodes have
+ * inverted (infinite) bounds so that no query ever intersects them.
+ *
+ * The root node is always node 0.
+ */
+final class PackedLayout {
+
+    /**
+     * Maximum depth of the tree. Below this depth the cells of a float
+     * coordinate range cannot be halved any further, so clusters of coincident
+     * points end up in a single (oversized) leaf.
+     */
+    static final int MAX_DEPTH = 24;
+
+    static final int NO_CHILD = -1;
+
+    final int nodeCount;
+    final int[] firstChild;
+    final int[] start;
+    final int[] end;
+    final float[] minX;
+    final float[] minY;
+    final float[] maxX;
+    final float[] maxY;
+
+    /**
+     * x coordinates of the points in slot order
+     */
+    final float[] xs;
+
+    /**
+     * y coordinates of the points in slot order
+     */
+    final float[] ys;
+
+    /**
+     * order[slot] is the index of the point in the input arrays
+     */
+    final int[] order;
+
+    PackedLayout(final int nodeCount, final int[] firstChild, final int[] start, final int[] end,
+            final float[] minX, final float[] minY, final float[] maxX, final float[] maxY, final float[] xs,
+            final float[] ys, final int[] order) {
+        this.nodeCount = nodeCount;
+        this.firstChild = firstChild;
+        this.start = start;
+        this.end = end;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.xs = xs;
+        this.ys = ys;
+        this.order = order;
+    }
+
+    /**
+     * Number of points in the layout.
+     *
+     * @return the number of points
+     */
+    int size() {
+        return this.order.length;
+    }
+
+    /**
+     * Checks whether node n is a leaf.
+     *
+     * @param n node index
+     * @return true if node n has no children
+     */
+    boolean isLeaf(final int n) {
+        return this.firstChild[n] == NO_CHILD;
+    }
+
+    /**
+     * Checks whether the bounds of node n intersect the given query bounds.
+     *
+     * @return true if the node may contain points inside the query bounds
+     */
+    boolean intersects(final int n, final float queryMinX, final float queryMinY, final float queryMaxX,
+            final float queryMaxY) {
+        return queryMinX <= this.maxX[n] && queryMaxX >= this.minX[n] && queryMinY <= this.maxY[n]
+                && queryMaxY >= this.minY[n];
+    }
+
+    /**
+     * Checks whether the bounds of node n lie inside the given query bounds, in
+     * which case every point of the subtree is inside the query bounds.
+     *
+     * @return true if the node is contained in the query bounds
+     */
+    boolean within(final int n, final float queryMinX, final float queryMinY, final float queryMaxX,
+            final float queryMaxY) {
+        return Rectangle.containsBox(queryMinX, queryMinY, queryMaxX, queryMaxY, this.minX[n], this.minY[n],
+                this.maxX[n], this.maxY[n]);
+    }
+
+    /**
+     * Checks whether the point in the given slot lies inside the query bounds
+     * (edges included).
+     *
+     * @return true if the point is inside the query bounds
+     */
+    boolean contains(final int slot, final float queryMinX, final float queryMinY, final float queryMaxX,
+            final float queryMaxY) {
+        final float x = this.xs[slot];
+        final float y = this.ys[slot];
+        return x >= queryMinX && x <= queryMaxX && y >= queryMinY && y <= queryMaxY;
+    }
+
+    /**
+     * Counts the points of the subtree of node n within the query bounds (edges
+     * included). A subtree that lies inside the query bounds is counted by the
+     * length of its slot range.
+     *
+     * @return the number of points within the query bounds
+     */
+    int count(final int n, final float queryMinX, final float queryMinY, final float queryMaxX,
+            final float queryMaxY) {
+        if (!intersects(n, queryMinX, queryMinY, queryMaxX, queryMaxY)) {
+            return 0;
+        }
+        if (within(n, queryMinX, queryMinY, queryMaxX, queryMaxY)) {
+            return this.end[n] - this.start[n];
+        }
+        int count = 0;
+        if (isLeaf(n)) {
+            return Rectangle.countContainedPoints(queryMinX, queryMinY, queryMaxX, queryMaxY, this.xs, this.ys,
+                    this.start[n], this.end[n]);
+        }
+        final int children = this.firstChild[n];
+        for (int child = children; child < children + 4; ++child) {
+            count += count(child, queryMinX, queryMinY, queryMaxX, queryMaxY);
+        }
+        return count;
+    }
+
+    /**
+     * Builds the layout for the given points by recursively partitioning them
+     * in place. The input arrays are not modified.
+     *
+     * @param xs              x coordinates of the points, must be != null
+     * @param ys              y coordinates of the points, must be != null and
+     *                        of the same length as xs
+     * @param maxLeafElements the maximum number of elements in a leaf, must be
+     *                        >= 1
+     * @return the layout
+     */
+    static PackedLayout build(final float[] xs, final float[] ys, final int maxLeafElements) {
+        assert xs != null && ys != null && xs.length == ys.length : "invalid coordinate arrays";
+        assert maxLeafElements >= 1 : "maxLeafElements is less than 1";
+
+        return new PartitionBuilder(xs.clone(), ys.clone(), maxLeafElements).build();
+    }
+
+    /**
+     * Builds the layout like {@link #build(float[], float[], int)}, but
+     * partitions the given arrays themselves instead of copies. The layout
+     * takes them over as its coordinate arrays, so the caller must not use
+     * them afterwards.
+     *
+     * @param xs              x coordinates of the points, must be != null
+     * @param ys              y coordinates of the points, must be != null and
+     *                        of the same length as xs
+     * @param maxLeafElements the maximum number of elements in a leaf, must be
+     *                        >= 1
+     * @return the layout
+     */
+    static PackedLayout buildInPlace(final float[] xs, final float[] ys, final int maxLeafElements) {
+        assert xs != null && ys != null && xs.length == ys.length : "invalid coordinate arrays";
+        assert maxLeafElements >= 1 : "maxLeafElements is less than 1";
+
+        return new PartitionBuilder(xs, ys, maxLeafElements).build();
+    }
+
+    /**
+     * Builds the layout for the given points from their Morton (Z-order) codes.
+     * The points are sorted by code with a radix sort, after which the points
+     * of every node form a contiguous range of codes sharing a common prefix,
+     * so the tree structure follows from the sorted codes alone. The input
+     * arrays are not modified.
+     *
+     * @param xs              x coordinates of the points, must be != null
+     * @param ys              y coordinates of the points, must be != null and
+     *                        of the same length as xs
+     * @param maxLeafElements the maximum number of elements in a leaf, must be
+     *                        >= 1
+     * @return the layout
+     */
+    static PackedLayout buildMorton(final float[] xs, final float[] ys, final int maxLeafElements) {
+        assert xs != null && ys != null && xs.length == ys.length : "invalid coordinate arrays";
+        assert maxLeafElements >= 1 : "maxLeafElements is less than 1";
+
+        return new MortonBuilder(xs, ys, maxLeafElements).build();
+    }
+
+    /**
+     * Growable node arrays shared by the builders.
+     */
+    private static class NodeBuffer {
+
+        final int maxLeafElements;
+
+        int nodeCount = 0;
+        int[] firstChild;
+        int[] start;
+        int[] end;
+        float[] minX;
+        float[] minY;
+        float[] maxX;
+        float[] maxY;
+
+        NodeBuffer(final int pointCount, final int maxLeafElements) {
+            this.maxLeafElements = maxLeafElements;
+            final int capacity = Math.max(4, 1 + 8 * (pointCount / maxLeafElements + 1) / 3);
+            this.firstChild = new int[capacity];
+            this.start = new int[capacity];
+            this.end = new int[capacity];
+            this.minX = new float[capacity];
+            this.minY = new float[capacity];
+            this.maxX = new float[capacity];
+            this.maxY = new float[capacity];
+        }
+
+        final int allocate(final int count) {
+            final int first = this.nodeCount;
+            this.nodeCount += count;
+            if (this.nodeCount > this.firstChild.length) {
+                final int capacity = Math.max(this.nodeCount, this.firstChild.length * 2);
+                this.firstChild = Arrays.copyOf(this.firstChild, capacity);
+                this.start = Arrays.copyOf(this.start, capacity);
+                this.end = Arrays.copyOf(this.end, capacity);
+                this.minX = Arrays.copyOf(this.minX, capacity);
+                this.minY = Arrays.copyOf(this.minY, capacity);
+                this.maxX = Arrays.copyOf(this.maxX, capacity);
+                this.maxY = Arrays.copyOf(this.maxY, capacity);
+            }
+            return first;
+        }
+
+        /**
+         * Makes the node a leaf holding the slots [from, to) and computes its
+         * bounds from the coordinates.
+         */
+        final void setLeaf(final int node, final int from, final int to, final float[] xs, final float[] ys) {
+            float leafMinX = Float.POSITIVE_INFINITY;
+            float leafMinY = Float.POSITIVE_INFINITY;
+            float leafMaxX = Float.NEGATIVE_INFINITY;
+            float leafMaxY = Float.NEGATIVE_INFINITY;
+            for (int slot = from; slot < to; ++slot) {
+                leafMinX = Math.min(leafMinX, xs[slot]);
+                leafMinY = Math.min(leafMinY, ys[slot]);
+                leafMaxX = Math.max(leafMaxX, xs[slot]);
+                leafMaxY = Math.max(leafMaxY, ys[slot]);
+            }
+            this.firstChild[node] = NO_CHILD;
+            this.start[node] = from;
+            this.end[node] = to;
+            this.minX[node] = leafMinX;
+            this.minY[node] = leafMinY;
+            this.maxX[node] = leafMaxX;
+            this.maxY[node] = leafMaxY;
+        }
+
+        /**
+         * Makes the node an inner node holding the slots [from, to) whose
+         * (already built) children start at children. The bounds are the union
+         * of the bounds of the children.
+         */
+        final void setInner(final int node, final int from, final int to, final int children) {
+            this.firstChild[node] = children;
+            this.start[node] = from;
+            this.end[node] = to;
+            this.minX[node] = Float.POSITIVE_INFINITY;
+            this.minY[node] = Float.POSITIVE_INFINITY;
+            this.maxX[node] = Float.NEGATIVE_INFINITY;
+            this.maxY[node] = Float.NEGATIVE_INFINITY;
+            for (int child = children; child < children + 4; ++child) {
+                this.minX[node] = Math.min(this.minX[node], this.minX[child]);
+                this.minY[node] = Math.min(this.minY[node], this.minY[child]);
+                this.maxX[node] = Math.max(this.maxX[node], this.maxX[child]);
+                this.maxY[node] = Math.max(this.maxY[node], this.maxY[child]);
+            }
+        }
+
+        final PackedLayout toLayout(final float[] xs, final float[] ys, final int[] order) {
+            return new PackedLayout(this.nodeCount, Arrays.copyOf(this.firstChild, this.nodeCount),
+                    Arrays.copyOf(this.start, this.nodeCount), Arrays.copyOf(this.end, this.nodeCount),
+                    Arrays.copyOf(this.minX, this.nodeCount), Arrays.copyOf(this.minY, this.nodeCount),
+                    Arrays.copyOf(this.maxX, this.nodeCount), Arrays.copyOf(this.maxY, this.nodeCount), xs, ys,
+                    order);
+        }
+    }
+
+    /**
+     * Top-down builder that partitions the slot range of each node into its four
+     * quadrants. A point on a split line belongs to the upper or left quadrant,
+     * so every point is stored exactly once.
+     */
+    private static final class PartitionBuilder extends NodeBuffer {
+
+        private final float[] xs;
+        private final float[] ys;
+        private final int[] order;
+
+        /**
+         * Creates a builder that partitions the given arrays in place.
+         */
+        PartitionBuilder(final float[] xs, final float[] ys, final int maxLeafElements) {
+            super(xs.length, maxLeafElements);
+            this.xs = xs;
+            this.ys = ys;
+            this.order = new int[xs.length];
+            for (int i = 0; i < this.order.length; ++i) {
+                this.order[i] = i;
+            }
+        }
+
+        PackedLayout build() {
+            float cellMinX = Float.POSITIVE_INFINITY;
+            float cellMinY = Float.POSITIVE_INFINITY;
+            float cellMaxX = Float.NEGATIVE_INFINITY;
+            float cellMaxY = Float.NEGATIVE_INFINITY;
+            for (int i = 0; i < this.xs.length; ++i) {
+                cellMinX = Math.min(cellMinX, this.xs[i]);
+                cellMinY = Math.min(cellMinY, this.ys[i]);
+                cellMaxX = Math.max(cellMaxX, this.xs[i]);
+                cellMaxY = Math.max(cellMaxY, this.ys[i]);
+            }
+            final int root = allocate(1);
+            buildNode(root, 0, this.xs.length, cellMinX, cellMinY, cellMaxX, cellMaxY, 0);
+            return toLayout(this.xs, this.ys, this.order);
+        }
+
+        private void buildNode(final int node, final int from, final int to, final float cellMinX,
+                final float cellMinY, final float cellMaxX, final float cellMaxY, final int depth) {
+            if (to - from <= this.maxLeafElements || depth >= MAX_DEPTH) {
+                setLeaf(node, from, to, this.xs, this.ys);
+                return;
+            }
+            final float midX = cellMinX + (cellMaxX - cellMinX) / 2;
+            final float midY = cellMinY + (cellMaxY - cellMinY) / 2;
+
+            final int bottomFrom = partition(this.ys, from, to, midY);
+            final int topRightFrom = partition(this.xs, from, bottomFrom, midX);
+            final int bottomRightFrom = partition(this.xs, bottomFrom, to, midX);
+
+            final int children = allocate(4);
+            buildNode(children, from, topRightFrom, cellMinX, cellMinY, midX, midY, depth + 1);
+            buildNode(children + 1, topRightFrom, bottomFrom, midX, cellMinY, cellMaxX, midY, depth + 1);
+            buildNode(children + 2, bottomFrom, bottomRightFrom, cellMinX, midY, midX, cellMaxY, depth + 1);
+            buildNode(children + 3, bottomRightFrom, to, midX, midY, cellMaxX, cellMaxY, depth + 1);
+            setInner(node, from, to, children);
+        }
+
+        /**
+         * Reorders the slots in [from, to) so that all points whose coordinate in
+         * keys is less than or equal to split come first.
+         *
+         * @return the first slot whose coordinate is greater than split
+         */
+        private int partition(final float[] keys, final int from, final int to, final float split) {
+            int low = from;
+            int high = to - 1;
+            while (true) {
+                while (low <= high && keys[low] <= split) {
+                    ++low;
+                }
+                while (low <= high && keys[high] > split) {
+                    --high;
+                }
+                if (low >= high) {
+                    return low;
+                }
+                swap(low, high);
+                ++low;
+                --high;
+            }
+        }
+
+        private void swap(final int a, final int b) {
+            final float x = this.xs[a];
+            this.xs[a] = this.xs[b];
+            this.xs[b] = x;
+            final float y = this.ys[a];
+            this.ys[a] = this.ys[b];
+            this.ys[b] = y;
+            final int index = this.order[a];
+            this.order[a] = this.order[b];
+            this.order[b] = index;
+        }
+    }
+
+    /**
+     * Bottom-up builder based on Morton codes. Each coordinate is quantized to
+     * {@link PackedLayout#MAX_DEPTH} bits relative to the bounding box, and the
+     * bits of both coordinates are interleaved (y bit above x bit) so that the
+     * two code bits of level d select the quadrant in the order top left, top
+     * right, bottom left, bottom right.
+     */
+    private static final class MortonBuilder extends NodeBuffer {
+
+        private static final int RADIX_BITS = 8;
+        private static final int CODE_BITS = 2 * MAX_DEPTH;
+
+        private final float[] inputXs;
+        private final float[] inputYs;
+
+        private long[] codes;
+        private int[] order;
+        private float[] xs;
+        private float[] ys;
+
+        MortonBuilder(final float[] xs, final float[] ys, final int maxLeafElements) {
+            super(xs.length, maxLeafElements);
+            this.inputXs = xs;
+            this.inputYs = ys;
+        }
+
+        PackedLayout build() {
+            computeCodes();
+            sortByCode();
+            this.xs = new float[this.order.length];
+            this.ys = new float[this.order.length];
+            for (int slot = 0; slot < this.order.length; ++slot) {
+                this.xs[slot] = this.inputXs[this.order[slot]];
+                this.ys[slot] = this.inputYs[this.order[slot]];
+            }
+            final int root = allocate(1);
+            buildNode(root, 0, this.order.length, 0);
+            return toLayout(this.xs, this.ys, this.order);
+        }
+
+        private void computeCodes() {
+            float boundsMinX = Float.POSITIVE_INFINITY;
+            float boundsMinY = Float.POSITIVE_INFINITY;
+            float boundsMaxX = Float.NEGATIVE_INFINITY;
+            float boundsMaxY = Float.NEGATIVE_INFINITY;
+            for (int i = 0; i < this.inputXs.length; ++i) {
+                boundsMinX = Math.min(boundsMinX, this.inputXs[i]);
+                boundsMinY = Math.min(boundsMinY, this.inputYs[i]);
+                boundsMaxX = Math.max(boundsMaxX, this.inputXs[i]);
+                boundsMaxY = Math.max(boundsMaxY, this.inputYs[i]);
+            }
+            final double cells = 1 << MAX_DEPTH;
+            final double scaleX = boundsMaxX > boundsMinX ? cells / ((double) boundsMaxX - boundsMinX) : 0;
+            final double scaleY = boundsMaxY > boundsMinY ? cells / ((double) boundsMaxY - boundsMinY) : 0;
+            this.codes = new long[this.inputXs.length];
+            for (int i = 0; i < this.codes.length; ++i) {
+                final int cellX = quantize(this.inputXs[i], boundsMinX, scaleX);
+                final int cellY = quantize(this.inputYs[i], boundsMinY, scaleY);
+                this.codes[i] = (spreadBits(cellY) << 1) | spreadBits(cellX);
+            }
+        }
+
+        private static int quantize(final float value, final float min, final double scale) {
+            final int cell = (int) ((value - (double) min) * scale);
+            return Math.min(cell, (1 << MAX_DEPTH) - 1);
+        }
+
+        /**
+         * Moves the lower 32 bits of value to the even bit positions of the result.
+         */
+        private static long spreadBits(final int value) {
+            long bits = value & 0xFFFFFFFFL;
+            bits = (bits | (bits << 16)) & 0x0000FFFF0000FFFFL;
+            bits = (bits | (bits << 8)) & 0x00FF00FF00FF00FFL;
+            bits = (bits | (bits << 4)) & 0x0F0F0F0F0F0F0F0FL;
+            bits = (bits | (bits << 2)) & 0x3333333333333333L;
+            bits = (bits | (bits << 1)) & 0x5555555555555555L;
+            return bits;
+        }
+
+        /**
+         * Stable LSD radix sort of the codes that permutes the point indices
+         * along. Digits in which all codes agree are skipped.
+         */
+        private void sortByCode() {
+            final int n = this.codes.length;
+            this.order = new int[n];
+            for (int i = 0; i < n; ++i) {
+                this.order[i] = i;
+            }
+            long[] sourceCodes = this.codes;
+            int[] sourceOrder = this.order;
+            long[] targetCodes = new long[n];
+            int[] targetOrder = new int[n];
+            final int[] counts = new int[1 << RADIX_BITS];
+            for (int shift = 0; shift < CODE_BITS; shift += RADIX_BITS) {
+                Arrays.fill(counts, 0);
+                for (int i = 0; i < n; ++i) {
+                    ++counts[(int) (sourceCodes[i] >>> shift) & (counts.length - 1)];
+                }
+                if (n == 0 || counts[(int) (sourceCodes[0] >>> shift) & (counts.length - 1)] == n) {
+                    continue;
+                }
+                int offset = 0;
+                for (int digit = 0; digit < counts.length; ++digit) {
+                    final int count = counts[digit];
+                    counts[digit] = offset;
+                    offset += count;
+                }
+                for (int i = 0; i < n; ++i) {
+                    final int target = counts[(int) (sourceCodes[i] >>> shift) & (counts.length - 1)]++;
+                    targetCodes[target] = sourceCodes[i];
+                    targetOrder[target] = sourceOrder[i];
+                }
+                final long[] swapCodes = sourceCodes;
+                sourceCodes = targetCodes;
+                targetCodes = swapCodes;
+                final int[] swapOrder = sourceOrder;
+                sourceOrder = targetOrder;
+                targetOrder = swapOrder;
+            }
+            this.codes = sourceCodes;
+            this.order = sourceOrder;
+        }
+
+        private void buildNode(final int node, final int from, final int to, final int depth) {
+            if (to - from <= this.maxLeafElements || depth >= MAX_DEPTH) {
+                setLeaf(node, from, to, this.xs, this.ys);
+                return;
+            }
+            final int shift = CODE_BITS - 2 * (depth + 1);
+            final long prefix = this.codes[from] >>> (shift + 2);
+            final int children = allocate(4);
+            int childFrom = from;
+            for (int quadrant = 0; quadrant < 4; ++quadrant) {
+                final long childEnd = (((prefix << 2) | quadrant) + 1) << shift;
+                final int childTo = quadrant == 3 ? to : firstCodeAtLeast(childFrom, to, childEnd);
+                buildNode(children + quadrant, childFrom, childTo, depth + 1);
+                childFrom = childTo;
+            }
+            setInner(node, from, to, children);
+        }
+
+        /**
+         * Binary search for the first slot in [from, to) whose code is at least
+         * the given code.
+         */
+        private int firstCodeAtLeast(final int from, final int to, final long code) {
+            int low = from;
+            int high = to;
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                if (this.codes[middle] < code) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package de.unistuttgart.vis.dsass2021.ex05.p1;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A quad tree whose nodes are stored in contiguous primitive arrays instead of
+ * one object per node (see {@link PackedLayout}). The elements are permuted
+ * into a single array so that every leaf references a contiguous range, and
+ * the coordinates of the elements are copied into float arrays so that leaf
+ * scans do not have to dereference the {@link Point} of each element.
+ *
+ * The tree is built once from a list of elements and cannot be changed
+ * afterwards. It answers the same queries as {@link SimpleQuadTree}.
+ */
+public class PackedQuadTree<T extends QuadTreeElement> extends QuadTree<T> {
+
+    private PackedLayout layout;
+
+    /**
+     * The elements in slot order of the layout
+     */
+    private Object[] elements;
+
+    /**
+     * Creates a packed quad tree from a list of elements.
+     *
+     * @param elements          a list of elements to be saved in the quadtree,
+     *                          must be != null and must not contain null
+     * @param maxElementsInLeaf the maximum number of elements a leaf node can
+     *                          save, must be >= 1
+     * @throws IllegalArgumentException if elements is null or contains null, or
+     *                                  maxElementsInLeaf < 1
+     */
+    public PackedQuadTree(final List<T> elements, final int maxElementsInLeaf) throws IllegalArgumentException {
+        if (elements == null || maxElementsInLeaf < 1) {
+            throw new IllegalArgumentException("elements is null or maxElementsInLeaf is less than 1");
+        }
+        this.maxLeafElements = maxElementsInLeaf;
+        createQuadTree(elements);
+    }
+
+    private PackedQuadTree(final int maxElementsInLeaf) {
+        this.maxLeafElements = maxElementsInLeaf;
+    }
+
+    /**
+     * Bulk-loads a packed quad tree by sorting the elements along the Morton
+     * (Z-order) curve with a radix sort and deriving the nodes from the sorted
+     * code ranges. This avoids the repeated partitioning passes of the
+     * constructor and accesses memory sequentially, which pays off for large
+     * data sets. The tree answers queries exactly like a tree created by the
+     * constructor, although the nodes may differ for points close to a split
+     * line.
+     *
+     * @param elements          a list of elements to be saved in the quadtree,
+     *                          must be != null and must not contain null
+     * @param maxElementsInLeaf the maximum number of elements a leaf node can
+     *                          save, must be >= 1
+     * @return the quad tree
+     * @throws IllegalArgumentException if elements is null or contains null, or
+     *                                  maxElementsInLeaf < 1
+     */
+    public static <T extends QuadTreeElement> PackedQuadTree<T> bulkLoad(final List<T> elements,
+            final int maxElementsInLeaf) throws IllegalArgumentException {
+        if (elements == null || maxElementsInLeaf < 1) {
+            throw new IllegalArgumentException("elements is null or maxElementsInLeaf is less than 1");
+        }
+        final PackedQuadTree<T> tree = new PackedQuadTree<>(maxElementsInLeaf);
+        tree.build(elements, true);
+        return tree;
+    }
+
+    /**
+     * Extracts the coordinates of the elements and builds the packed layout.
+     *
+     * @param list of elements to be stored in the quad tree
+     * @throws IllegalArgumentException if the list is null or contains null
+     */
+    @Override
+    void createQuadTree(final List<T> list) throws IllegalArgumentException {
+        build(list, false);
+    }
+
+    private void build(final List<T> list, final boolean morton) {
+        if (list == null) {
+            throw new IllegalArgumentException("list is null");
+        }
+        final Object[] input = list.toArray();
+        final float[] xs = new float[input.length];
+        final float[] ys = new float[input.length];
+        for (int i = 0; i < input.length; ++i) {
+            if (input[i] == null) {
+                throw new IllegalArgumentException("list contains null");
+            }
+            final Point position = ((QuadTreeElement) input[i]).getPosition();
+            xs[i] = position.getXValue();
+            ys[i] = position.getYValue();
+        }
+
+        this.layout = morton ? PackedLayout.buildMorton(xs, ys, this.maxLeafElements)
+                : PackedLayout.build(xs, ys, this.maxLeafElements);
+        this.elements = new Object[input.length];
+        for (int slot = 0; slot < input.length; ++slot) {
+            this.elements[slot] = input[this.layout.order[slot]];
+        }
+        this.boundingBox = enclosingRectangle(this.layout.minX[0], this.layout.minY[0], this.layout.maxX[0],
+                this.layout.maxY[0]);
+    }
+
+    /**
+     * Returns the number of elements stored in this tree.
+     *
+     * @return the number of elements
+     */
+    public int size() {
+        return this.elements.length;
+    }
+
+    /**
+     * Writes this tree to a file that can be opened with
+     * {@link MappedQuadTree#open(Path)}. The file refers to the points by their
+     * index in the list the tree was created from.
+     *
+     * @param file the file to create or overwrite, must be != null
+     * @throws IOException              if the file cannot be written
+     * @throws IllegalArgumentException if file is null
+     */
+    public void write(final Path file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file is null");
+        }
+        MappedQuadTree.write(this.layout, this.layout.order, file);
+    }
+
+    /**
+     * Adds all elements located in the query rectangle (edges included) to the
+     * result list. Every element is added exactly once.
+     *
+     * @param resultList list that is used to store the elements, must be != null
+     * @param query      the searching area, must be != null
+     * @throws IllegalArgumentException if any parameter is null
+     */
+    @Override
+    public void rangeQuery(final List<T> resultList, final Rectangle query) {
+        if (resultList == null || query == null) {
+            throw new IllegalArgumentException("resultList or query is null");
+        }
+        rangeQuery(query.getX(), query.getY(), query.getX() + query.getWidth(), query.getY() + query.getHeight(),
+                element -> resultList.add(element));
+    }
+
+    @Override
+    public boolean rangeQuery(final float minX, final float minY, final float maxX, final float maxY,
+            final QuadTreeVisitor<? super T> visitor) {
+        if (visitor == null) {
+            throw new IllegalArgumentException("visitor is null");
+        }
+        return visit(0, minX, minY, maxX, maxY, visitor);
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean visit(final int node, final float minX, final float minY, final float maxX, final float maxY,
+            final QuadTreeVisitor<? super T> visitor) {
+        if (!this.layout.intersects(node, minX, minY, maxX, maxY)) {
+            return true;
+        }
+        if (this.layout.within(node, minX, minY, maxX, maxY)) {
+            // every element of the subtree is a hit
+            for (int slot = this.layout.start[node]; slot < this.layout.end[node]; ++slot) {
+                if (!visitor.visit((T) this.elements[slot])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (this.layout.isLeaf(node)) {
+            final int end = this.layout.end[node];
+            for (int block = this.layout.start[node]; block < end; block += Long.SIZE) {
+                long mask = Rectangle.containedPointsMask(minX, minY, maxX, maxY, this.layout.xs, this.layout.ys,
+                        block, Math.min(end, block + Long.SIZE));
+                for (; mask != 0; mask &= mask - 1) {
+                    if (!visitor.visit((T) this.elements[block + Long.numberOfTrailingZeros(mask)])) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        final int children = this.layout.firstChild[node];
+        for (int child = children; child < children + 4; ++child) {
+            if (!visit(child, minX, minY, maxX, maxY, visitor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int count(final float minX, final float minY, final float maxX, final float maxY) {
+        return this.layout.count(0, minX, minY, maxX, maxY);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<T> nearestNeighbours(final float x, final float y, final int k, final float maxDistance) {
+        if (k < 1 || !(maxDistance >= 0)) {
+            throw new IllegalArgumentException("k is less than 1 or maxDistance is negative");
+        }
+        final double limit = (double) maxDistance * maxDistance;
+        final List<T> result = new ArrayList<>(Math.min(k, this.elements.length));
+        // non-negative indices are nodes, negative indices -(slot + 1) are elements
+        final DistanceQueue queue = new DistanceQueue();
+        queue.add(nodeDistance(0, x, y), null, 0);
+        while (!queue.isEmpty() && result.size() < k && queue.topKey() <= limit) {
+            final int index = queue.topIndex();
+            queue.removeTop();
+            if (index < 0) {
+                result.add((T) this.elements[-index - 1]);
+            } else if (this.layout.isLeaf(index)) {
+                for (int slot = this.layout.start[index]; slot < this.layout.end[index]; ++slot) {
+                    final double distance = DistanceQueue.squaredDistance(x, y, this.layout.xs[slot],
+                            this.layout.ys[slot]);
+                    if (distance <= limit) {
+                        queue.add(distance, null, -slot - 1);
+                    }
+                }
+            } else {
+                final int children = this.layout.firstChild[index];
+                for (int child = children; child < children + 4; ++child) {
+                    if (this.layout.start[child] < this.layout.end[child]) {
+                        queue.add(nodeDistance(child, x, y), null, child);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T nearestNeighbour(final float x, final float y, final float maxDistance) {
+        if (!(maxDistance >= 0)) {
+            throw new IllegalArgumentException("maxDistance is negative");
+        }
+        final double limit = Math.nextUp((double) maxDistance * maxDistance);
+        final int slot = nearest(0, x, y, -1, limit);
+        return slot < 0 ? null : (T) this.elements[slot];
+    }
+
+    /**
+     * Depth-first search for the slot nearest to (x, y) that is closer than
+     * bestDistance. The children are visited starting with the closest one,
+     * followed by its neighbours and the opposite child.
+     *
+     * @return the nearest slot found so far, or bestSlot if there is none closer
+     */
+    private int nearest(final int node, final float x, final float y, int bestSlot, double bestDistance) {
+        if (this.layout.isLeaf(node)) {
+            for (int slot = this.layout.start[node]; slot < this.layout.end[node]; ++slot) {
+                final double distance = DistanceQueue.squaredDistance(x, y, this.layout.xs[slot],
+                        this.layout.ys[slot]);
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    bestSlot = slot;
+                }
+            }
+            return bestSlot;
+        }
+        final int children = this.layout.firstChild[node];
+        int closest = 0;
+        double closestDistance = Double.POSITIVE_INFINITY;
+        for (int quadrant = 0; quadrant < 4; ++quadrant) {
+            final double distance = nodeDistance(children + quadrant, x, y);
+            if (distance < closestDistance) {
+                closestDistance = distance;
+                closest = quadrant;
+            }
+        }
+        for (int i = 0; i < 4; ++i) {
+            final int child = children + (closest ^ i);
+            if (nodeDistance(child, x, y) < bestDistance) {
+                final int slot = nearest(child, x, y, bestSlot, bestDistance);
+                if (slot != bestSlot) {
+                    bestSlot = slot;
+                    bestDistance = DistanceQueue.squaredDistance(x, y, this.layout.xs[slot], this.layout.ys[slot]);
+                }
+            }
+        }
+        return bestSlot;
+    }
+
+    private double nodeDistance(final int node, final float x, final float y) {
+        return DistanceQueue.squaredDistance(x, y, this.layout.minX[node], this.layout.minY[node],
+                this.layout.maxX[node], this.layout.maxY[node]);
+    }
+
+    @Override
+    public boolean equals(final Object object) {
+        if (!(object instanceof PackedQuadTree)) {
+            return false;
+        }
+        final PackedLayout other = ((PackedQuadTree<?>) object).layout;
+        return Arrays.equals(this.elements, ((PackedQuadTree<?>) object).elements)
+                && Arrays.equals(this.layout.firstChild, other.firstChild)
+                && Arrays.equals(this.layout.start, other.start);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(this.elements);
+    }
+}
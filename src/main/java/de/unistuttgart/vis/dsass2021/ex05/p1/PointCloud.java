@@ -0,0 +1,68 @@
+package de.unistuttgart.vis.dsass2021.ex05.p1;
+
+/**
+ * A set of two-dimensional points stored as two primitive float arrays
+ * (structure of arrays). A point is identified by its index, its id, so no
+ * {@link Point} object and no global id counter is involved.
+ */
+public final class PointCloud {
+
+    private final float[] xs;
+    private final float[] ys;
+
+    /**
+     * Creates a point cloud from the coordinates of its points. The point with
+     * id i is (xs[i], ys[i]). The arrays are not copied and must not be
+     * modified afterwards.
+     *
+     * @param xs x coordinates, must be != null
+     * @param ys y coordinates, must be != null and of the same length as xs
+     * @throws IllegalArgumentException if an array is null or the lengths differ
+     */
+    public PointCloud(final float[] xs, final float[] ys) {
+        if (xs == null || ys == null || xs.length != ys.length) {
+            throw new IllegalArgumentException("xs or ys is null or the lengths differ");
+        }
+        this.xs = xs;
+        this.ys = ys;
+    }
+
+    /**
+     * Returns the number of points.
+     *
+     * @return the number of points
+     */
+    public int size() {
+        return this.xs.length;
+    }
+
+    /**
+     * Returns the x coordinate of a point.
+     *
+     * @param id the id of the point
+     * @return the x coordinate
+     * @throws IndexOutOfBoundsException if there is no point with this id
+     */
+    public float getXValue(final int id) {
+        return this.xs[id];
+    }
+
+    /**
+     * Returns the y coordinate of a point.
+     *
+     * @param id the id of the point
+     * @return the y coordinate
+     * @throws IndexOutOfBoundsException if there is no point with this id
+     */
+    public float getYValue(final int id) {
+        return this.ys[id];
+    }
+
+    float[] xs() {
+        return this.xs;
+    }
+
+    float[] ys() {
+        return this.ys;
+    }
+}
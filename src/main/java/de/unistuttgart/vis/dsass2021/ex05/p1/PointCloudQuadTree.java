@@ -0,0 +1,196 @@
+package de.unistuttgart.vis.dsass2021.ex05.p1;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A packed quad tree over the points of a {@link PointCloud}. The tree stores
+ * the ids of the points instead of element objects, so indexing a point costs
+ * a few primitive array entries (a copy of its coordinates in leaf order and
+ * its id) and queries report ids.
+ *
+ * The tree is built once and cannot be changed afterwards.
+ */
+public class PointCloudQuadTree {
+
+    private final PointCloud points;
+
+    private final PackedLayout layout;
+
+    /**
+     * Creates a quad tree over all points of a point cloud.
+     *
+     * @param points            the points to index, must be != null
+     * @param maxElementsInLeaf the maximum number of points a leaf node can
+     *                          save, must be >= 1
+     * @throws IllegalArgumentException if points is null or maxElementsInLeaf <
+     *                                  1
+     */
+    public PointCloudQuadTree(final PointCloud points, final int maxElementsInLeaf) {
+        if (points == null || maxElementsInLeaf < 1) {
+            throw new IllegalArgumentException("points is null or maxElementsInLeaf is less than 1");
+        }
+        this.points = points;
+        this.layout = PackedLayout.build(points.xs(), points.ys(), maxElementsInLeaf);
+    }
+
+    /**
+     * Returns the indexed point cloud.
+     *
+     * @return the point cloud
+     */
+    public PointCloud getPoints() {
+        return this.points;
+    }
+
+    /**
+     * Writes this tree to a file that can be opened with
+     * {@link MappedQuadTree#open(Path)}. The file refers to the points by their ids.
+     *
+     * @param file the file to create or overwrite, must be != null
+     * @throws IOException              if the file cannot be written
+     * @throws IllegalArgumentException if file is null
+     */
+    public void write(final Path file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file is null");
+        }
+        MappedQuadTree.write(this.layout, this.layout.order, file);
+    }
+
+    /**
+     * Passes the id of every point in the area [minX, maxX] x [minY, maxY]
+     * (edges included) to the visitor until it returns false.
+     *
+     * @param minX    left bound of the area
+     * @param minY    upper bound of the area
+     * @param maxX    right bound of the area
+     * @param maxY    lower bound of the area
+     * @param visitor receives the ids, must be != null
+     * @return true if all points were visited, false if the visitor stopped the
+     *         query
+     * @throws IllegalArgumentException if visitor is null
+     */
+    public boolean rangeQuery(final float minX, final float minY, final float maxX, final float maxY,
+            final PointIdVisitor visitor) {
+        if (visitor == null) {
+            throw new IllegalArgumentException("visitor is null");
+        }
+        return visit(0, minX, minY, maxX, maxY, visitor);
+    }
+
+    private boolean visit(final int node, final float minX, final float minY, final float maxX, final float maxY,
+            final PointIdVisitor visitor) {
+        if (!this.layout.intersects(node, minX, minY, maxX, maxY)) {
+            return true;
+        }
+        if (this.layout.within(node, minX, minY, maxX, maxY)) {
+            // every point of the subtree is a hit
+            for (int slot = this.layout.start[node]; slot < this.layout.end[node]; ++slot) {
+                if (!visitor.visit(this.layout.order[slot])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (this.layout.isLeaf(node)) {
+            final int end = this.layout.end[node];
+            for (int block = this.layout.start[node]; block < end; block += Long.SIZE) {
+                long mask = Rectangle.containedPointsMask(minX, minY, maxX, maxY, this.layout.xs, this.layout.ys,
+                        block, Math.min(end, block + Long.SIZE));
+                for (; mask != 0; mask &= mask - 1) {
+                    if (!visitor.visit(this.layout.order[block + Long.numberOfTrailingZeros(mask)])) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        final int children = this.layout.firstChild[node];
+        for (int child = children; child < children + 4; ++child) {
+            if (!visit(child, minX, minY, maxX, maxY, visitor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the ids of the points in the area [minX, maxX] x [minY, maxY]
+     * (edges included) into the given array. If there are more points than
+     * fit into the array, the remaining ones are only counted.
+     *
+     * @param minX   left bound of the area
+     * @param minY   upper bound of the area
+     * @param maxX   right bound of the area
+     * @param maxY   lower bound of the area
+     * @param result receives the ids, must be != null
+     * @return the number of points in the area, which may exceed
+     *         result.length
+     * @throws IllegalArgumentException if result is null
+     */
+    public int rangeQuery(final float minX, final float minY, final float maxX, final float maxY,
+            final int[] result) {
+        if (result == null) {
+            throw new IllegalArgumentException("result is null");
+        }
+        return collect(0, minX, minY, maxX, maxY, result, 0);
+    }
+
+    private int collect(final int node, final float minX, final float minY, final float maxX, final float maxY,
+            final int[] result, int count) {
+        if (!this.layout.intersects(node, minX, minY, maxX, maxY)) {
+            return count;
+        }
+        if (this.layout.within(node, minX, minY, maxX, maxY)) {
+            // every point of the subtree is a hit, copy the ids that fit
+            final int start = this.layout.start[node];
+            final int length = this.layout.end[node] - start;
+            if (count < result.length) {
+                System.arraycopy(this.layout.order, start, result, count, Math.min(length, result.length - count));
+            }
+            return count + length;
+        }
+        if (this.layout.isLeaf(node)) {
+            final int start = this.layout.start[node];
+            final int end = this.layout.end[node];
+            if (count + (end - start) <= result.length) {
+                // enough room to select the slots branch-free and map them to ids afterwards
+                final int selected = Rectangle.selectContainedPoints(minX, minY, maxX, maxY, this.layout.xs,
+                        this.layout.ys, start, end, result, count);
+                for (int i = count; i < count + selected; ++i) {
+                    result[i] = this.layout.order[result[i]];
+                }
+                return count + selected;
+            }
+            for (int slot = start; slot < end; ++slot) {
+                if (this.layout.contains(slot, minX, minY, maxX, maxY)) {
+                    if (count < result.length) {
+                        result[count] = this.layout.order[slot];
+                    }
+                    ++count;
+                }
+            }
+            return count;
+        }
+        final int children = this.layout.firstChild[node];
+        for (int child = children; child < children + 4; ++child) {
+            count = collect(child, minX, minY, maxX, maxY, result, count);
+        }
+        return count;
+    }
+
+    /**
+     * Counts the points in the area [minX, maxX] x [minY, maxY] (edges
+     * included).
+     *
+     * @param minX left bound of the area
+     * @param minY upper bound of the area
+     * @param maxX right bound of the area
+     * @param maxY lower bound of the area
+     * @return the number of points in the area
+     */
+    public int count(final float minX, final float minY, final float maxX, final float maxY) {
+        return this.layout.count(0, minX, minY, maxX, maxY);
+    }
+}
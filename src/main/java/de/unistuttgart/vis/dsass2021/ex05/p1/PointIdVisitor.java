@@ -0,0 +1,16 @@
+package de.unistuttgart.vis.dsass2021.ex05.p1;
+
+/**
+ * Receives the ids of the points found by a query on a {@link PointCloudQuadTree}.
+ */
+@FunctionalInterface
+public interface PointIdVisitor {
+
+  /**
+   * Called once for every point found by the query.
+   * 
+   * @param id the id of the point, i.e. its index in the {@link PointCloud}
+   * @return true to continue the query, false to stop it
+   */
+  public abstract boolean visit(int id);
+}
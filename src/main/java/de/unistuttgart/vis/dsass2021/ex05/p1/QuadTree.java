@@ -2,7 +2,7 @@ package de.unistuttgart.vis.dsass2021.ex05.p1;
 
 import java.util.List;
 
-public abstract class QuadTree<T extends QuadTreeElement> {
+public abstract class QuadTree<T extends QuadTreeElement> implements SpatialIndex<T> {
 
 
 
@@ -41,6 +41,11 @@ public abstract class QuadTree<T extends QuadTreeElement> {
    */
   int maxLeafElements = 4;
 
+  /**
+   * Visitor that stops a query at the first element
+   */
+  private static final QuadTreeVisitor<Object> STOP_AT_FIRST = element -> false;
+
   /**
    * Performs a two-dimensional range query and adds all elements in the
    * selected area to the result list.
@@ -57,6 +62,118 @@ public abstract class QuadTree<T extends QuadTreeElement> {
   public abstract void rangeQuery(final List<T> resultList,
       final Rectangle searchArea);
 
+  /**
+   * Performs a two-dimensional range query on the area [minX, maxX] x [minY,
+   * maxY] (edges included) and passes every element in the area to the
+   * visitor, each element exactly once and in no particular order. The
+   * traversal stops as soon as the visitor returns false.
+   * 
+   * Unlike {@link #rangeQuery(List, Rectangle)} this method neither allocates
+   * nor validates the bounds; an empty area (min greater than max) simply
+   * selects nothing.
+   * 
+   * @param minX left bound of the area
+   * @param minY upper bound of the area
+   * @param maxX right bound of the area
+   * @param maxY lower bound of the area
+   * @param visitor receives the elements in the area, must be != null
+   * @return true if all elements were visited, false if the visitor stopped
+   *         the query
+   * @throws IllegalArgumentException if visitor is null
+   */
+  public abstract boolean rangeQuery(final float minX, final float minY,
+      final float maxX, final float maxY,
+      final QuadTreeVisitor<? super T> visitor);
+
+  /**
+   * Counts the elements in the area [minX, maxX] x [minY, maxY] (edges
+   * included) without allocating a result.
+   * 
+   * @param minX left bound of the area
+   * @param minY upper bound of the area
+   * @param maxX right bound of the area
+   * @param maxY lower bound of the area
+   * @return the number of elements in the area
+   */
+  public abstract int count(final float minX, final float minY,
+      final float maxX, final float maxY);
+
+  /**
+   * Checks whether there is at least one element in the area [minX, maxX] x
+   * [minY, maxY] (edges included). The query stops at the first hit.
+   * 
+   * @param minX left bound of the area
+   * @param minY upper bound of the area
+   * @param maxX right bound of the area
+   * @param maxY lower bound of the area
+   * @return true if the area contains an element
+   */
+  public boolean any(final float minX, final float minY, final float maxX,
+      final float maxY) {
+    return !rangeQuery(minX, minY, maxX, maxY, STOP_AT_FIRST);
+  }
+
+  /**
+   * Finds the k elements closest (in euclidean distance) to the given
+   * position, ignoring elements farther away than maxDistance. The search is
+   * best-first: nodes are expanded in the order of their distance to the
+   * position, so only nodes that can contain one of the k nearest elements
+   * are visited.
+   * 
+   * @param x x coordinate of the position
+   * @param y y coordinate of the position
+   * @param k the maximum number of elements to return, must be >= 1
+   * @param maxDistance elements farther away are ignored, must be >= 0 (may be
+   *        infinite)
+   * @return at most k elements in ascending order of their distance
+   * @throws IllegalArgumentException if k < 1 or maxDistance is negative or
+   *         NaN
+   */
+  public abstract List<T> nearestNeighbours(final float x, final float y,
+      final int k, final float maxDistance);
+
+  /**
+   * Finds the k elements closest to the given position, see
+   * {@link #nearestNeighbours(float, float, int, float)}.
+   * 
+   * @param x x coordinate of the position
+   * @param y y coordinate of the position
+   * @param k the maximum number of elements to return, must be >= 1
+   * @return at most k elements in ascending order of their distance
+   * @throws IllegalArgumentException if k < 1
+   */
+  public List<T> nearestNeighbours(final float x, final float y, final int k) {
+    return nearestNeighbours(x, y, k, Float.POSITIVE_INFINITY);
+  }
+
+  /**
+   * Finds the element closest to the given position. Unlike
+   * {@link #nearestNeighbours(float, float, int, float)} this is a depth-first
+   * branch and bound search that does not allocate.
+   * 
+   * @param x x coordinate of the position
+   * @param y y coordinate of the position
+   * @param maxDistance elements farther away are ignored, must be >= 0 (may be
+   *        infinite)
+   * @return the nearest element or null if there is no element within
+   *         maxDistance
+   * @throws IllegalArgumentException if maxDistance is negative or NaN
+   */
+  public abstract T nearestNeighbour(final float x, final float y,
+      final float maxDistance);
+
+  /**
+   * Finds the element closest to the given position, see
+   * {@link #nearestNeighbour(float, float, float)}.
+   * 
+   * @param x x coordinate of the position
+   * @param y y coordinate of the position
+   * @return the nearest element or null if the tree is empty
+   */
+  public T nearestNeighbour(final float x, final float y) {
+    return nearestNeighbour(x, y, Float.POSITIVE_INFINITY);
+  }
+
   /**
    * This method recursively creates the quad tree.
    * 
@@ -75,6 +192,36 @@ public abstract class QuadTree<T extends QuadTreeElement> {
     return this.boundingBox;
   }
 
+  /**
+   * Creates the smallest rectangle that contains the given bounds. The size is
+   * widened by single ulps where necessary so that the rectangle is never empty
+   * and <code>x + width</code> really reaches <code>maxX</code> (likewise for y)
+   * despite float rounding. A degenerate axis (all points on one vertical or
+   * horizontal line) gets the extent of the other axis, so that the rectangle
+   * can still be subdivided. If the bounds are empty (min greater than max), a
+   * unit rectangle at the origin is returned.
+   *
+   * @param minX left bound
+   * @param minY upper bound
+   * @param maxX right bound
+   * @param maxY lower bound
+   * @return a rectangle that contains all points within the bounds
+   */
+  static Rectangle enclosingRectangle(final float minX, final float minY,
+      final float maxX, final float maxY) {
+    if (!(minX <= maxX) || !(minY <= maxY)) {
+      return new Rectangle(0, 0, 1, 1);
+    }
+    final float width = Rectangle.enclosingExtent(minX, maxX);
+    final float height = Rectangle.enclosingExtent(minY, maxY);
+    if (maxX == minX) {
+      return new Rectangle(minX, minY, height, height);
+    } else if (maxY == minY) {
+      return new Rectangle(minX, minY, width, width);
+    }
+    return new Rectangle(minX, minY, width, height);
+  }
+
   @Override
   public boolean equals(Object object) {
     if (!(object instanceof QuadTree)) {
@@ -0,0 +1,115 @@
+package de.unistuttgart.vis.dsass2021.ex05.p1;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the work done by the queries of a quad tree, see
+ * {@link SimpleQuadTree#setMetrics(QuadTreeMetrics)}. A query collects its
+ * counts in a {@link Trace} of its own and adds them to the metrics once it is
+ * done, so concurrent queries only contend on the striped counters and not on
+ * every node. A tree without metrics does not allocate a trace at all.
+ *
+ * The ratio of elements tested to elements returned and the number of leaves
+ * scanned per query show whether the maximum number of elements in a leaf
+ * fits the queries; {@link SimpleQuadTree#getStatistics()} shows how full the
+ * leaves are.
+ */
+public final class QuadTreeMetrics implements QuadTreeMetricsMXBean {
+
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder nodesVisited = new LongAdder();
+    private final LongAdder leavesScanned = new LongAdder();
+    private final LongAdder elementsTested = new LongAdder();
+    private final LongAdder elementsReturned = new LongAdder();
+    private final LongAccumulator maxNodesVisited = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator maxElementsTested = new LongAccumulator(Math::max, 0);
+
+    /**
+     * The counts of a single query. A trace is used by one thread only.
+     */
+    static final class Trace {
+
+        int nodesVisited;
+        int leavesScanned;
+        int elementsTested;
+        int elementsReturned;
+    }
+
+    /**
+     * Adds the counts of a finished query.
+     *
+     * @param trace the counts of the query
+     */
+    void record(final Trace trace) {
+        this.queries.increment();
+        this.nodesVisited.add(trace.nodesVisited);
+        this.leavesScanned.add(trace.leavesScanned);
+        this.elementsTested.add(trace.elementsTested);
+        this.elementsReturned.add(trace.elementsReturned);
+        this.maxNodesVisited.accumulate(trace.nodesVisited);
+        this.maxElementsTested.accumulate(trace.elementsTested);
+    }
+
+    @Override
+    public long getQueries() {
+        return this.queries.sum();
+    }
+
+    @Override
+    public long getNodesVisited() {
+        return this.nodesVisited.sum();
+    }
+
+    @Override
+    public long getLeavesScanned() {
+        return this.leavesScanned.sum();
+    }
+
+    @Override
+    public long getElementsTested() {
+        return this.elementsTested.sum();
+    }
+
+    @Override
+    public long getElementsReturned() {
+        return this.elementsReturned.sum();
+    }
+
+    @Override
+    public long getMaxNodesVisited() {
+        return this.maxNodesVisited.get();
+    }
+
+    @Override
+    public long getMaxElementsTested() {
+        return this.maxElementsTested.get();
+    }
+
+    /**
+     * Reads all counters. Queries that finish while the snapshot is taken may be
+     * counted in some counters only.
+     *
+     * @return the current values of the counters
+     */
+    public QuadTreeMetricsSnapshot snapshot() {
+        return new QuadTreeMetricsSnapshot(getQueries(), getNodesVisited(), getLeavesScanned(),
+                getElementsTested(), getElementsReturned(), getMaxNodesVisited(), getMaxElementsTested());
+    }
+
+    @Override
+    public void reset() {
+        this.queries.reset();
+        this.nodesVisited.reset();
+        this.leavesScanned.reset();
+        this.elementsTested.reset();
+        this.elementsReturned.reset();
+        this.maxNodesVisited.reset();
+        this.maxElementsTested.reset();
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+}
@@ -0,0 +1,49 @@
+package de.unistuttgart.vis.dsass2021.ex05.p1;
+
+/**
+ * Management interface of {@link QuadTreeMetrics}. Register a metrics object
+ * with the platform MBean server to watch the queries of a tree in a JMX
+ * console.
+ */
+public interface QuadTreeMetricsMXBean {
+
+    /**
+     * @return the number of range queries and counts
+     */
+    long getQueries();
+
+    /**
+     * @return the number of nodes whose bounding box was tested
+     */
+    long getNodesVisited();
+
+    /**
+     * @return the number of leaves that intersected a query
+     */
+    long getLeavesScanned();
+
+    /**
+     * @return the number of elements tested against a query
+     */
+    long getElementsTested();
+
+    /**
+     * @return the number of elements within a query
+     */
+    long getElementsReturned();
+
+    /**
+     * @return the largest number of nodes visited by a single query
+     */
+    long getMaxNodesVisited();
+
+    /**
+     * @return the largest number of elements tested by a single query
+     */
+    long getMaxElementsTested();
+
+    /**
+     * Sets all counters to zero.
+     */
+    void reset();
+}
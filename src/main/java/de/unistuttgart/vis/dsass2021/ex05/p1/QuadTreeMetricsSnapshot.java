@@ -0,0 +1,78 @@
+package de.unistuttgart.vis.dsass2021.ex05.p1;
+
+/**
+ * The counters of a {@link QuadTreeMetrics} at one point in time.
+ */
+public final class QuadTreeMetricsSnapshot {
+
+    private final long queries;
+    private final long nodesVisited;
+    private final long leavesScanned;
+    private final long elementsTested;
+    private final long elementsReturned;
+    private final long maxNodesVisited;
+    private final long maxElementsTested;
+
+    QuadTreeMetricsSnapshot(final long queries, final long nodesVisited, final long leavesScanned,
+            final long elementsTested, final long elementsReturned, final long maxNodesVisited,
+            final long maxElementsTested) {
+        this.queries = queries;
+        this.nodesVisited = nodesVisited;
+        this.leavesScanned = leavesScanned;
+        this.elementsTested = elementsTested;
+        this.elementsReturned = elementsReturned;
+        this.maxNodesVisited = maxNodesVisited;
+        this.maxElementsTested = maxElementsTested;
+    }
+
+    public long getQueries() {
+        return this.queries;
+    }
+
+    public long getNodesVisited() {
+        return this.nodesVisited;
+    }
+
+    public long getLeavesScanned() {
+        return this.leavesScanned;
+    }
+
+    public long getElementsTested() {
+        return this.elementsTested;
+    }
+
+    public long getElementsReturned() {
+        return this.elementsReturned;
+    }
+
+    public long getMaxNodesVisited() {
+        return this.maxNodesVisited;
+    }
+
+    public long getMaxElementsTested() {
+        return this.maxElementsTested;
+    }
+
+    /**
+     * @return the average number of nodes visited by a query
+     */
+    public double getMeanNodesVisited() {
+        return this.queries == 0 ? 0 : (double) this.nodesVisited / this.queries;
+    }
+
+    /**
+     * @return the fraction of the tested elements that were within the query,
+     *         1 if no element was tested
+     */
+    public double getSelectivity() {
+        return this.elementsTested == 0 ? 1 : (double) this.elementsReturned / this.elementsTested;
+    }
+
+    @Override
+    public String toString() {
+        return "QuadTreeMetrics[queries=" + this.queries + ", nodesVisited=" + this.nodesVisited
+                + ", leavesScanned=" + this.leavesScanned + ", elementsTested=" + this.elementsTested
+                + ", elementsReturned=" + this.elementsReturned + ", maxNodesVisited=" + this.maxNodesVisited
+                + ", maxElementsTested=" + this.maxElementsTested + "]";
+    }
+}
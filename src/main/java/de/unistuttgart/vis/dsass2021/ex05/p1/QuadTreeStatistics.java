@@ -0,0 +1,103 @@
+package de.unistuttgart.vis.dsass2021.ex05.p1;
+
+import java.util.Arrays;
+
+/**
+ * Structural statistics of a quad tree, used to judge whether the maximum
+ * number of elements in a leaf fits the data.
+ *
+ * The leaf fill histogram has {@link #FILL_BUCKETS} buckets for the leaves
+ * holding up to the maximum number of elements: bucket i counts the leaves
+ * filled to at least i / FILL_BUCKETS and less than (i + 1) / FILL_BUCKETS of
+ * the maximum, the last of these buckets also counts the full leaves. An
+ * additional last bucket counts the leaves holding more elements than the
+ * maximum, which only happens if a leaf is too small to be split.
+ */
+public final class QuadTreeStatistics {
+
+    /**
+     * Number of histogram buckets for the leaves that are not overfull
+     */
+    public static final int FILL_BUCKETS = 10;
+
+    private final int maxLeafElements;
+    private final int depth;
+    private final int nodeCount;
+    private final int leafCount;
+    private final long storedElements;
+    private final int[] leafFillHistogram;
+
+    QuadTreeStatistics(final int maxLeafElements, final int depth, final int nodeCount, final int leafCount,
+            final long storedElements, final int[] leafFillHistogram) {
+        this.maxLeafElements = maxLeafElements;
+        this.depth = depth;
+        this.nodeCount = nodeCount;
+        this.leafCount = leafCount;
+        this.storedElements = storedElements;
+        this.leafFillHistogram = leafFillHistogram;
+    }
+
+    /**
+     * Returns the histogram bucket of a leaf.
+     *
+     * @param elements        the number of elements in the leaf
+     * @param maxLeafElements the maximum number of elements in a leaf
+     * @return the bucket of the leaf
+     */
+    static int fillBucket(final int elements, final int maxLeafElements) {
+        if (elements > maxLeafElements) {
+            return FILL_BUCKETS;
+        }
+        return Math.min(FILL_BUCKETS - 1, (int) ((long) elements * FILL_BUCKETS / maxLeafElements));
+    }
+
+    public int getMaxLeafElements() {
+        return this.maxLeafElements;
+    }
+
+    /**
+     * @return the number of edges on the longest path from the root to a leaf
+     */
+    public int getDepth() {
+        return this.depth;
+    }
+
+    public int getNodeCount() {
+        return this.nodeCount;
+    }
+
+    public int getLeafCount() {
+        return this.leafCount;
+    }
+
+    /**
+     * @return the number of elements over all leaves, elements on a split line
+     *         are counted once for every leaf they are stored in
+     */
+    public long getStoredElements() {
+        return this.storedElements;
+    }
+
+    /**
+     * @return the leaf fill histogram, a new array of {@link #FILL_BUCKETS} + 1
+     *         entries
+     */
+    public int[] getLeafFillHistogram() {
+        return this.leafFillHistogram.clone();
+    }
+
+    /**
+     * @return the average number of elements in a leaf relative to the maximum
+     */
+    public double getMeanLeafFill() {
+        return this.leafCount == 0 ? 0 : (double) this.storedElements / this.leafCount / this.maxLeafElements;
+    }
+
+    @Override
+    public String toString() {
+        return "QuadTreeStatistics[maxLeafElements=" + this.maxLeafElements + ", depth=" + this.depth
+                + ", nodes=" + this.nodeCount + ", leaves=" + this.leafCount + ", storedElements="
+                + this.storedElements + ", meanLeafFill=" + getMeanLeafFill() + ", leafFillHistogram="
+                + Arrays.toString(this.leafFillHistogram) + "]";
+    }
+}
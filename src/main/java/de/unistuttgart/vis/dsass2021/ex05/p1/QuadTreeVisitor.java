@@ -0,0 +1,18 @@
+package de.unistuttgart.vis.dsass2021.ex05.p1;
+
+/**
+ * Receives the elements found by a query on a {@link QuadTree}.
+ *
+ * @param <T> type of the visited elements
+ */
+@FunctionalInterface
+public interface QuadTreeVisitor<T> {
+
+  /**
+   * Called once for every element found by the query.
+   * 
+   * @param element the element
+   * @return true to continue the query, false to stop it
+   */
+  public abstract boolean visit(T element);
+}
@@ -0,0 +1,343 @@
+package de.unistuttgart.vis.dsass2021.ex05.p1;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An R-tree that indexes elements by their bounding rectangle. Unlike the
+ * quad trees it stores extended elements: every element is stored exactly once
+ * and the nodes may overlap, so large and tiny rectangles can be mixed without
+ * replicating an element into every cell it covers.
+ *
+ * The tree is bulk-loaded with the Sort-Tile-Recursive (STR) algorithm: the
+ * elements are sorted by the x coordinate of their center and cut into
+ * vertical slices, each slice is sorted by the y coordinate of the centers and
+ * cut into leaves of maxNodeEntries elements. The leaves are then packed into
+ * parent nodes the same way, level by level up to the root. The result has
+ * nearly full nodes with little overlap.
+ *
+ * Like {@link PackedLayout} the nodes are stored in flat arrays, level by
+ * level starting with the root at node 0. The children of an inner node are
+ * the consecutive nodes <code>[start[n], end[n])</code>, the elements of a leaf
+ * the consecutive slots <code>[start[n], end[n])</code>. Nodes from
+ * <code>firstLeaf</code> on are leaves. The bounds of the elements are copied
+ * into float arrays in slot order.
+ *
+ * The tree is built once and cannot be changed afterwards.
+ */
+public class RTree<T extends BoundedElement> implements SpatialIndex<T> {
+
+    private final int maxNodeEntries;
+
+    private int firstLeaf;
+    private int[] start;
+    private int[] end;
+    private float[] nodeMinX;
+    private float[] nodeMinY;
+    private float[] nodeMaxX;
+    private float[] nodeMaxY;
+
+    /**
+     * The elements and their bounds in slot order
+     */
+    private Object[] elements;
+    private float[] minX;
+    private float[] minY;
+    private float[] maxX;
+    private float[] maxY;
+
+    /**
+     * Bulk-loads an R-tree from a list of elements.
+     *
+     * @param elements       a list of elements to be saved in the tree, must be
+     *                       != null and must not contain null
+     * @param maxNodeEntries the maximum number of children of a node and of
+     *                       elements in a leaf, must be >= 2
+     * @throws IllegalArgumentException if elements is null or contains null, or
+     *                                  maxNodeEntries < 2
+     */
+    public RTree(final List<T> elements, final int maxNodeEntries) throws IllegalArgumentException {
+        if (elements == null || maxNodeEntries < 2) {
+            throw new IllegalArgumentException("elements is null or maxNodeEntries is less than 2");
+        }
+        this.maxNodeEntries = maxNodeEntries;
+        build(elements);
+    }
+
+    private void build(final List<T> list) {
+        final Object[] input = list.toArray();
+        final int count = input.length;
+        float[] levelMinX = new float[count];
+        float[] levelMinY = new float[count];
+        float[] levelMaxX = new float[count];
+        float[] levelMaxY = new float[count];
+        for (int i = 0; i < count; ++i) {
+            if (input[i] == null) {
+                throw new IllegalArgumentException("list contains null");
+            }
+            final Rectangle bounds = ((BoundedElement) input[i]).getBounds();
+            levelMinX[i] = bounds.getX();
+            levelMinY[i] = bounds.getY();
+            levelMaxX[i] = bounds.getX() + bounds.getWidth();
+            levelMaxY[i] = bounds.getY() + bounds.getHeight();
+        }
+
+        // sort the elements into slot order and group them into leaves
+        final int[] order = strOrder(levelMinX, levelMinY, levelMaxX, levelMaxY, count);
+        this.elements = new Object[count];
+        for (int slot = 0; slot < count; ++slot) {
+            this.elements[slot] = input[order[slot]];
+        }
+        this.minX = permute(levelMinX, order);
+        this.minY = permute(levelMinY, order);
+        this.maxX = permute(levelMaxX, order);
+        this.maxY = permute(levelMaxY, order);
+
+        // build the levels bottom-up, levels.get(0) are the leaves
+        final List<Level> levels = new ArrayList<>();
+        Level level = group(this.minX, this.minY, this.maxX, this.maxY, count);
+        levels.add(level);
+        while (level.count > 1) {
+            final int[] nodeOrder = strOrder(level.minX, level.minY, level.maxX, level.maxY, level.count);
+            level.permute(nodeOrder);
+            level = group(level.minX, level.minY, level.maxX, level.maxY, level.count);
+            levels.add(level);
+        }
+
+        // store the levels top-down, the root first
+        int nodeCount = 0;
+        for (final Level stored : levels) {
+            nodeCount += stored.count;
+        }
+        this.start = new int[nodeCount];
+        this.end = new int[nodeCount];
+        this.nodeMinX = new float[nodeCount];
+        this.nodeMinY = new float[nodeCount];
+        this.nodeMaxX = new float[nodeCount];
+        this.nodeMaxY = new float[nodeCount];
+        int offset = 0;
+        for (int index = levels.size() - 1; index >= 0; --index) {
+            final Level stored = levels.get(index);
+            final int childOffset = index == 0 ? 0 : offset + stored.count;
+            for (int node = 0; node < stored.count; ++node) {
+                this.start[offset + node] = stored.start[node] + childOffset;
+                this.end[offset + node] = stored.end[node] + childOffset;
+            }
+            System.arraycopy(stored.minX, 0, this.nodeMinX, offset, stored.count);
+            System.arraycopy(stored.minY, 0, this.nodeMinY, offset, stored.count);
+            System.arraycopy(stored.maxX, 0, this.nodeMaxX, offset, stored.count);
+            System.arraycopy(stored.maxY, 0, this.nodeMaxY, offset, stored.count);
+            if (index == 0) {
+                this.firstLeaf = offset;
+            }
+            offset += stored.count;
+        }
+    }
+
+    /**
+     * One level of nodes during the bulk load. The child ranges refer to the
+     * entries of the level below.
+     */
+    private static final class Level {
+        final int count;
+        int[] start;
+        int[] end;
+        float[] minX;
+        float[] minY;
+        float[] maxX;
+        float[] maxY;
+
+        Level(final int count) {
+            this.count = count;
+            this.start = new int[count];
+            this.end = new int[count];
+            this.minX = new float[count];
+            this.minY = new float[count];
+            this.maxX = new float[count];
+            this.maxY = new float[count];
+        }
+
+        void permute(final int[] order) {
+            this.start = RTree.permute(this.start, order);
+            this.end = RTree.permute(this.end, order);
+            this.minX = RTree.permute(this.minX, order);
+            this.minY = RTree.permute(this.minY, order);
+            this.maxX = RTree.permute(this.maxX, order);
+            this.maxY = RTree.permute(this.maxY, order);
+        }
+    }
+
+    /**
+     * Packs consecutive runs of maxNodeEntries entries into nodes. An empty
+     * level results in a single empty node with inverted bounds.
+     */
+    private Level group(final float[] minX, final float[] minY, final float[] maxX, final float[] maxY,
+            final int count) {
+        final Level level = new Level(Math.max(1, (count + this.maxNodeEntries - 1) / this.maxNodeEntries));
+        for (int node = 0; node < level.count; ++node) {
+            level.start[node] = node * this.maxNodeEntries;
+            level.end[node] = Math.min(count, level.start[node] + this.maxNodeEntries);
+            float left = Float.POSITIVE_INFINITY;
+            float top = Float.POSITIVE_INFINITY;
+            float right = Float.NEGATIVE_INFINITY;
+            float bottom = Float.NEGATIVE_INFINITY;
+            for (int entry = level.start[node]; entry < level.end[node]; ++entry) {
+                left = Math.min(left, minX[entry]);
+                top = Math.min(top, minY[entry]);
+                right = Math.max(right, maxX[entry]);
+                bottom = Math.max(bottom, maxY[entry]);
+            }
+            level.minX[node] = left;
+            level.minY[node] = top;
+            level.maxX[node] = right;
+            level.maxY[node] = bottom;
+        }
+        return level;
+    }
+
+    /**
+     * Computes the STR order of the given boxes: sorted by the center x into
+     * vertical slices of sqrt(count / maxNodeEntries) nodes each, every slice
+     * sorted by the center y.
+     *
+     * @return order[i] is the index of the box that goes to position i
+     */
+    private int[] strOrder(final float[] minX, final float[] minY, final float[] maxX, final float[] maxY,
+            final int count) {
+        final int nodes = (count + this.maxNodeEntries - 1) / this.maxNodeEntries;
+        final int slices = Math.max(1, (int) Math.ceil(Math.sqrt(nodes)));
+        final int sliceSize = (nodes + slices - 1) / slices * this.maxNodeEntries;
+        final long[] keys = new long[count];
+        for (int i = 0; i < count; ++i) {
+            keys[i] = sortKey(minX[i] / 2 + maxX[i] / 2, i);
+        }
+        Arrays.sort(keys);
+        for (int sliceStart = 0; sliceStart < count; sliceStart += sliceSize) {
+            final int sliceEnd = Math.min(count, sliceStart + sliceSize);
+            for (int i = sliceStart; i < sliceEnd; ++i) {
+                final int index = (int) keys[i];
+                keys[i] = sortKey(minY[index] / 2 + maxY[index] / 2, index);
+            }
+            Arrays.sort(keys, sliceStart, sliceEnd);
+        }
+        final int[] order = new int[count];
+        for (int i = 0; i < count; ++i) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    /**
+     * Combines a float key and an index into a long whose natural order is the
+     * order of the keys. The index is stored in the lower 32 bits.
+     */
+    private static long sortKey(final float key, final int index) {
+        final int bits = Float.floatToIntBits(key);
+        return (long) (bits ^ ((bits >> 31) & 0x7fffffff)) << 32 | (index & 0xffffffffL);
+    }
+
+    private static float[] permute(final float[] values, final int[] order) {
+        final float[] permuted = new float[order.length];
+        for (int i = 0; i < order.length; ++i) {
+            permuted[i] = values[order[i]];
+        }
+        return permuted;
+    }
+
+    private static int[] permute(final int[] values, final int[] order) {
+        final int[] permuted = new int[order.length];
+        for (int i = 0; i < order.length; ++i) {
+            permuted[i] = values[order[i]];
+        }
+        return permuted;
+    }
+
+    /**
+     * Returns the number of elements stored in this tree.
+     *
+     * @return the number of elements
+     */
+    public int size() {
+        return this.elements.length;
+    }
+
+    /**
+     * Adds all elements whose bounding rectangle intersects the query rectangle
+     * (edges included) to the result list. Every element is added exactly once.
+     *
+     * @param resultList list that is used to store the elements, must be != null
+     * @param query      the searching area, must be != null
+     * @throws IllegalArgumentException if any parameter is null
+     */
+    @Override
+    public void rangeQuery(final List<T> resultList, final Rectangle query) {
+        if (resultList == null || query == null) {
+            throw new IllegalArgumentException("resultList or query is null");
+        }
+        rangeQuery(query.getX(), query.getY(), query.getX() + query.getWidth(), query.getY() + query.getHeight(),
+                element -> resultList.add(element));
+    }
+
+    @Override
+    public boolean rangeQuery(final float minX, final float minY, final float maxX, final float maxY,
+            final QuadTreeVisitor<? super T> visitor) {
+        if (visitor == null) {
+            throw new IllegalArgumentException("visitor is null");
+        }
+        return visit(0, minX, minY, maxX, maxY, visitor);
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean visit(final int node, final float minX, final float minY, final float maxX, final float maxY,
+            final QuadTreeVisitor<? super T> visitor) {
+        if (this.nodeMinX[node] > maxX || this.nodeMaxX[node] < minX || this.nodeMinY[node] > maxY
+                || this.nodeMaxY[node] < minY) {
+            return true;
+        }
+        if (node >= this.firstLeaf) {
+            final int end = this.end[node];
+            for (int block = this.start[node]; block < end; block += Long.SIZE) {
+                long mask = Rectangle.intersectingBoxesMask(minX, minY, maxX, maxY, this.minX, this.minY, this.maxX,
+                        this.maxY, block, Math.min(end, block + Long.SIZE));
+                for (; mask != 0; mask &= mask - 1) {
+                    if (!visitor.visit((T) this.elements[block + Long.numberOfTrailingZeros(mask)])) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        for (int child = this.start[node]; child < this.end[node]; ++child) {
+            if (!visit(child, minX, minY, maxX, maxY, visitor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int count(final float minX, final float minY, final float maxX, final float maxY) {
+        return count(0, minX, minY, maxX, maxY);
+    }
+
+    private int count(final int node, final float minX, final float minY, final float maxX, final float maxY) {
+        if (this.nodeMinX[node] > maxX || this.nodeMaxX[node] < minX || this.nodeMinY[node] > maxY
+                || this.nodeMaxY[node] < minY) {
+            return 0;
+        }
+        int count = 0;
+        if (node >= this.firstLeaf) {
+            final int end = this.end[node];
+            for (int block = this.start[node]; block < end; block += Long.SIZE) {
+                count += Long.bitCount(Rectangle.intersectingBoxesMask(minX, minY, maxX, maxY, this.minX, this.minY,
+                        this.maxX, this.maxY, block, Math.min(end, block + Long.SIZE)));
+            }
+            return count;
+        }
+        for (int child = this.start[node]; child < this.end[node]; ++child) {
+            count += count(child, minX, minY, maxX, maxY);
+        }
+        return count;
+    }
+}
@@ -5,7 +5,7 @@ import java.util.Collection;
 /**
  * This class represents a quadrilateral, where the angles are 90 degrees.
  */
-public class Rectangle {
+public class Rectangle implements BoundedElement {
 
     // Upper left corner of the rectangle
     private final float x;
@@ -52,6 +52,16 @@ public class Rectangle {
         return height;
     }
 
+    /**
+     * A rectangle is its own bounding rectangle.
+     *
+     * @return this rectangle
+     */
+    @Override
+    public Rectangle getBounds() {
+        return this;
+    }
+
     /**
      * Checks whether a given point is inside this rectangle.
      * 
@@ -103,6 +113,35 @@ public class Rectangle {
         }
     }
 
+    /**
+     * Checks whether a given rectangle lies completely inside this rectangle.
+     * Shared edges count as inside, so a rectangle contains itself.
+     * 
+     * @param rectangle the rectangle to check
+     * @return true if every point of the rectangle is inside this rectangle
+     * @throws IllegalArgumentException if the rectangle is null
+     */
+    public boolean contains(final Rectangle rectangle) {
+        if (rectangle == null) {
+            throw new IllegalArgumentException("rectangle is null");
+        }
+        return containsBox(this.x, this.y, this.x + this.width, this.y + this.height, rectangle.x, rectangle.y,
+                rectangle.x + rectangle.width, rectangle.y + rectangle.height);
+    }
+
+    /**
+     * Checks whether the box [boxMinX, boxMaxX] x [boxMinY, boxMaxY] lies
+     * completely inside the box [minX, maxX] x [minY, maxY] (edges included).
+     * An inverted (empty) inner box is contained in every box.
+     *
+     * @return true if the inner box is contained in the outer box
+     */
+    public static boolean containsBox(final float minX, final float minY, final float maxX, final float maxY,
+            final float boxMinX, final float boxMinY, final float boxMaxX, final float boxMaxY) {
+        return (minX <= boxMinX && boxMaxX <= maxX && minY <= boxMinY && boxMaxY <= maxY)
+                || boxMinX > boxMaxX || boxMinY > boxMaxY;
+    }
+
     /**
      * @param intervalLeftThisRectanlge   First interval left
      * @param intervalRightThisRectangle  First interval right
@@ -112,13 +151,169 @@ public class Rectangle {
      */
     private boolean intervalIntersection(float intervalLeftThisRectanlge, float intervalRightThisRectangle,
             float intervalLeftOtherRectangle, float intervalRightOtherRectangle) {
-        if ((intervalLeftOtherRectangle >= intervalLeftThisRectanlge)
-                && (intervalLeftOtherRectangle <= intervalRightThisRectangle))
-            return true;
-        if ((intervalLeftThisRectanlge >= intervalLeftOtherRectangle)
-                && (intervalLeftThisRectanlge <= intervalRightOtherRectangle))
-            return true;
-        return false;
+        return intervalLeftOtherRectangle <= intervalRightThisRectangle
+                && intervalLeftThisRectanlge <= intervalRightOtherRectangle;
+    }
+
+    /**
+     * Tests the points <code>(xs[i], ys[i])</code> for
+     * <code>from <= i < to</code> against the box [minX, maxX] x [minY, maxY]
+     * (edges included) and returns the result as a bitmask. The loop has no
+     * branches depending on the data, so the JIT compiler can unroll and
+     * vectorize it.
+     *
+     * @param minX left bound of the box
+     * @param minY upper bound of the box
+     * @param maxX right bound of the box
+     * @param maxY lower bound of the box
+     * @param xs   x coordinates of the points
+     * @param ys   y coordinates of the points
+     * @param from first index to test
+     * @param to   end of the indices to test, at most from + 64
+     * @return a mask whose bit <code>i - from</code> is set if point i is
+     *         inside the box
+     * @throws IllegalArgumentException if more than 64 points are to be tested
+     */
+    public static long containedPointsMask(final float minX, final float minY, final float maxX, final float maxY,
+            final float[] xs, final float[] ys, final int from, final int to) {
+        if (to - from > Long.SIZE) {
+            throw new IllegalArgumentException("more than 64 points");
+        }
+        long mask = 0;
+        for (int i = from; i < to; ++i) {
+            final float x = xs[i];
+            final float y = ys[i];
+            final boolean inside = x >= minX & x <= maxX & y >= minY & y <= maxY;
+            mask |= (inside ? 1L : 0L) << (i - from);
+        }
+        return mask;
+    }
+
+    /**
+     * Writes the indices of the points <code>(xs[i], ys[i])</code> for
+     * <code>from <= i < to</code> that are inside the box [minX, maxX] x [minY,
+     * maxY] (edges included) to <code>result[offset]</code> onwards. Every index
+     * is written and the write position only advances for points inside, so the
+     * loop has no branches depending on the data; the result array therefore
+     * needs room for <code>to - from</code> indices after offset.
+     *
+     * @param minX   left bound of the box
+     * @param minY   upper bound of the box
+     * @param maxX   right bound of the box
+     * @param maxY   lower bound of the box
+     * @param xs     x coordinates of the points
+     * @param ys     y coordinates of the points
+     * @param from   first index to test
+     * @param to     end of the indices to test
+     * @param result receives the indices of the points inside
+     * @param offset position in result of the first index
+     * @return the number of points inside
+     */
+    public static int selectContainedPoints(final float minX, final float minY, final float maxX, final float maxY,
+            final float[] xs, final float[] ys, final int from, final int to, final int[] result, final int offset) {
+        int count = 0;
+        for (int i = from; i < to; ++i) {
+            final float x = xs[i];
+            final float y = ys[i];
+            result[offset + count] = i;
+            count += x >= minX & x <= maxX & y >= minY & y <= maxY ? 1 : 0;
+        }
+        return count;
+    }
+
+    /**
+     * Counts the points <code>(xs[i], ys[i])</code> for
+     * <code>from <= i < to</code> inside the box [minX, maxX] x [minY, maxY]
+     * (edges included).
+     *
+     * @param minX left bound of the box
+     * @param minY upper bound of the box
+     * @param maxX right bound of the box
+     * @param maxY lower bound of the box
+     * @param xs   x coordinates of the points
+     * @param ys   y coordinates of the points
+     * @param from first index to test
+     * @param to   end of the indices to test
+     * @return the number of points inside
+     */
+    public static int countContainedPoints(final float minX, final float minY, final float maxX, final float maxY,
+            final float[] xs, final float[] ys, final int from, final int to) {
+        int count = 0;
+        for (int i = from; i < to; ++i) {
+            final float x = xs[i];
+            final float y = ys[i];
+            count += x >= minX & x <= maxX & y >= minY & y <= maxY ? 1 : 0;
+        }
+        return count;
+    }
+
+    /**
+     * Tests the boxes [boxMinX[i], boxMaxX[i]] x [boxMinY[i], boxMaxY[i]] for
+     * <code>from <= i < to</code> for intersection (edges included) with the
+     * box [minX, maxX] x [minY, maxY], like
+     * {@link #containedPointsMask(float, float, float, float, float[], float[], int, int)}.
+     *
+     * @param minX    left bound of the box
+     * @param minY    upper bound of the box
+     * @param maxX    right bound of the box
+     * @param maxY    lower bound of the box
+     * @param boxMinX left bounds of the boxes to test
+     * @param boxMinY upper bounds of the boxes to test
+     * @param boxMaxX right bounds of the boxes to test
+     * @param boxMaxY lower bounds of the boxes to test
+     * @param from    first index to test
+     * @param to      end of the indices to test, at most from + 64
+     * @return a mask whose bit <code>i - from</code> is set if box i intersects
+     *         the box
+     * @throws IllegalArgumentException if more than 64 boxes are to be tested
+     */
+    public static long intersectingBoxesMask(final float minX, final float minY, final float maxX, final float maxY,
+            final float[] boxMinX, final float[] boxMinY, final float[] boxMaxX, final float[] boxMaxY,
+            final int from, final int to) {
+        if (to - from > Long.SIZE) {
+            throw new IllegalArgumentException("more than 64 boxes");
+        }
+        long mask = 0;
+        for (int i = from; i < to; ++i) {
+            final boolean intersects = boxMinX[i] <= maxX & boxMaxX[i] >= minX & boxMinY[i] <= maxY
+                    & boxMaxY[i] >= minY;
+            mask |= (intersects ? 1L : 0L) << (i - from);
+        }
+        return mask;
+    }
+
+    /**
+     * Writes the indices of the boxes [boxMinX[i], boxMaxX[i]] x [boxMinY[i],
+     * boxMaxY[i]] for <code>from <= i < to</code> that intersect the box [minX,
+     * maxX] x [minY, maxY] (edges included) to <code>result[offset]</code>
+     * onwards, like
+     * {@link #selectContainedPoints(float, float, float, float, float[], float[], int, int, int[], int)}.
+     * The result array needs room for <code>to - from</code> indices after
+     * offset.
+     *
+     * @param minX    left bound of the box
+     * @param minY    upper bound of the box
+     * @param maxX    right bound of the box
+     * @param maxY    lower bound of the box
+     * @param boxMinX left bounds of the boxes to test
+     * @param boxMinY upper bounds of the boxes to test
+     * @param boxMaxX right bounds of the boxes to test
+     * @param boxMaxY lower bounds of the boxes to test
+     * @param from    first index to test
+     * @param to      end of the indices to test
+     * @param result  receives the indices of the intersecting boxes
+     * @param offset  position in result of the first index
+     * @return the number of intersecting boxes
+     */
+    public static int selectIntersectingBoxes(final float minX, final float minY, final float maxX,
+            final float maxY, final float[] boxMinX, final float[] boxMinY, final float[] boxMaxX,
+            final float[] boxMaxY, final int from, final int to, final int[] result, final int offset) {
+        int count = 0;
+        for (int i = from; i < to; ++i) {
+            result[offset + count] = i;
+            count += boxMinX[i] <= maxX & boxMaxX[i] >= minX & boxMinY[i] <= maxY & boxMaxY[i] >= minY ? 1 : 0;
+        }
+        return count;
     }
 
     /**
@@ -152,7 +347,25 @@ public class Rectangle {
                 maxY = rectangle.y + rectangle.height;
             }
         }
-        return new Rectangle(minX, minY, maxX - minX, maxY - minY);
+        return new Rectangle(minX, minY, enclosingExtent(minX, maxX), enclosingExtent(minY, maxY));
+    }
+
+    /**
+     * Computes the smallest positive extent such that
+     * <code>min + extent >= max</code> holds in float arithmetic. Plain
+     * <code>max - min</code> may be rounded down so that the right (lower) edge
+     * of a rectangle would end before max.
+     *
+     * @param min lower bound
+     * @param max upper bound, must be >= min
+     * @return the extent
+     */
+    static float enclosingExtent(final float min, final float max) {
+        float extent = Math.max(max - min, Float.MIN_VALUE);
+        while (min + extent < max) {
+            extent = Math.nextUp(extent);
+        }
+        return extent;
     }
 
     /**
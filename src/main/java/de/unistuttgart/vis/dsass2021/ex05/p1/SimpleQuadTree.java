@@ -1,7 +1,19 @@
 package de.unistuttgart.vis.dsass2021.ex05.p1;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * The class SimpleQuad
@@ -9,6 +21,63 @@ import java.util.List;
 
 public class SimpleQuadTree<T extends QuadTreeElement> extends QuadTree<T> {
 
+    /**
+     * Nodes with at least this many elements build their subtrees in parallel
+     * when the tree is created by {@link #createParallel}.
+     */
+    private static final int PARALLEL_THRESHOLD = 8192;
+
+    /**
+     * Minimum number of queries per parallel partition of a batch range query
+     */
+    private static final int MIN_BATCH_PARTITION = 64;
+
+    /**
+     * Default depth limit of {@link #createBounded(List, int)}, the same as the
+     * one of the packed trees
+     */
+    private static final int DEFAULT_MAX_DEPTH = PackedLayout.MAX_DEPTH;
+
+    /**
+     * Kinds of the entries in the queue of a nearest neighbour search
+     */
+    private static final int NODE = 0;
+    private static final int ELEMENT = 1;
+
+    /**
+     * Receives the counts of the range queries and counts of this tree, or null
+     * if they are not recorded. Only set on the root.
+     */
+    private QuadTreeMetrics metrics = null;
+
+    /**
+     * The limits of a tree created by {@link #createBounded}, shared by all of
+     * its nodes, or null for a tree that splits until the leaves are small
+     * enough or cannot be halved in float precision.
+     */
+    private SplitLimits limits = null;
+
+    /**
+     * The number of elements of this subtree that are owned by one of its
+     * leaves (see {@link #owns}), i.e. the number of elements a query that
+     * contains this node counts. Maintained by every update.
+     */
+    private int ownedCount = 0;
+
+    /**
+     * Limits on splitting the nodes of a bounded tree.
+     */
+    private static final class SplitLimits {
+
+        final int maxDepth;
+        final float minCellSize;
+
+        SplitLimits(final int maxDepth, final float minCellSize) {
+            this.maxDepth = maxDepth;
+            this.minCellSize = minCellSize;
+        }
+    }
+
     /**
      * a constructor of a SimpleQuadTree with 2 parameters. A bounding box will be
      * computed by the algorithm.
@@ -26,7 +95,7 @@ public class SimpleQuadTree<T extends QuadTreeElement> extends QuadTree<T> {
         this.boundingBox = computeBoundingBox(elements);
         this.maxLeafElements = maxElementsInLeaf;
         createQuadTree(elements);
-
+        countOwned(this.boundingBox.getX(), this.boundingBox.getY());
     }
 
     /**
@@ -51,6 +120,193 @@ public class SimpleQuadTree<T extends QuadTreeElement> extends QuadTree<T> {
         createQuadTree(elements);
     }
 
+    /**
+     * a constructor for a node whose elements are distributed by the caller.
+     *
+     * @param maxElementsInLeaf, the maximum limit of elements, in which a leaf node
+     *                           can save.
+     * @param boundingBox,       the area of this node.
+     */
+    private SimpleQuadTree(final int maxElementsInLeaf, final Rectangle boundingBox) {
+        this.boundingBox = boundingBox;
+        this.maxLeafElements = maxElementsInLeaf;
+    }
+
+    /**
+     * Creates a SimpleQuadTree in the common fork/join pool. See
+     * {@link #createParallel(List, int, ForkJoinPool)}.
+     *
+     * @param elements,          a list of elements to be saved in the quadtree.
+     * @param maxElementsInLeaf, the maximum limit of elements, in which a leaf node
+     *                           can save.
+     * @return the quad tree
+     * @throws IllegalArgumentException, if parameter is missing, or element ==
+     *                                   null, or the maxElementsInLeaf < 1.
+     */
+    public static <T extends QuadTreeElement> SimpleQuadTree<T> createParallel(final List<T> elements,
+            final int maxElementsInLeaf) throws IllegalArgumentException {
+        return createParallel(elements, maxElementsInLeaf, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a SimpleQuadTree using fork/join parallelism. Each node distributes
+     * its elements to the four quadrants in a single pass, and the subtrees of
+     * nodes with many elements are built concurrently. The resulting tree is
+     * equal to the tree created by
+     * {@link #SimpleQuadTree(List, int) the constructor}.
+     *
+     * @param elements,          a list of elements to be saved in the quadtree.
+     * @param maxElementsInLeaf, the maximum limit of elements, in which a leaf node
+     *                           can save.
+     * @param pool,              the pool that executes the build.
+     * @return the quad tree
+     * @throws IllegalArgumentException, if parameter is missing, or element ==
+     *                                   null, or the maxElementsInLeaf < 1.
+     */
+    public static <T extends QuadTreeElement> SimpleQuadTree<T> createParallel(final List<T> elements,
+            final int maxElementsInLeaf, final ForkJoinPool pool) throws IllegalArgumentException {
+        if (elements == null || maxElementsInLeaf < 1 || pool == null) {
+            throw new IllegalArgumentException();
+        }
+        final SimpleQuadTree<T> tree = new SimpleQuadTree<>(maxElementsInLeaf, null);
+        tree.boundingBox = tree.computeBoundingBox(elements);
+        pool.invoke(new BuildTask<>(tree, new ArrayList<>(elements)));
+        tree.countOwned(tree.boundingBox.getX(), tree.boundingBox.getY());
+        return tree;
+    }
+
+    /**
+     * Creates a SimpleQuadTree with the default depth limit and no cell size
+     * limit. See {@link #createBounded(List, int, int, float)}.
+     *
+     * @param elements          a list of elements to be saved in the quadtree,
+     *                          must be != null and must not contain null
+     * @param maxElementsInLeaf the maximum number of elements in a leaf that
+     *                          can still be split, must be >= 1
+     * @return the quad tree
+     * @throws IllegalArgumentException if any parameter is invalid
+     */
+    public static <T extends QuadTreeElement> SimpleQuadTree<T> createBounded(final List<T> elements,
+            final int maxElementsInLeaf) throws IllegalArgumentException {
+        return createBounded(elements, maxElementsInLeaf, DEFAULT_MAX_DEPTH, 0);
+    }
+
+    /**
+     * Creates a SimpleQuadTree that is safe for degenerate input such as many
+     * coincident points. Unlike the constructor, an element is assigned to
+     * exactly one quadrant: an element on a split line goes to the left (upper)
+     * quadrant, the one that owns it in a query (see {@link #owns}). A node is
+     * not split beyond the given depth, if its quadrants would be smaller than
+     * the given size along both axes, or if all of its elements lie at the same
+     * position; such a node becomes a leaf with more elements than the maximum.
+     * As every level of the tree stores every element once, the tree is built
+     * in O(n * maxDepth) time and stores O(n) elements for any input.
+     *
+     * Elements that are inserted later are added to a single leaf as well, and
+     * a leaf is split within the same limits.
+     *
+     * @param elements          a list of elements to be saved in the quadtree,
+     *                          must be != null and must not contain null
+     * @param maxElementsInLeaf the maximum number of elements in a leaf that
+     *                          can still be split, must be >= 1
+     * @param maxDepth          the maximum depth of a leaf, must be >= 0
+     * @param minCellSize       the minimum width or height of a quadrant, must
+     *                          be >= 0
+     * @return the quad tree
+     * @throws IllegalArgumentException if any parameter is invalid
+     */
+    public static <T extends QuadTreeElement> SimpleQuadTree<T> createBounded(final List<T> elements,
+            final int maxElementsInLeaf, final int maxDepth, final float minCellSize)
+            throws IllegalArgumentException {
+        if (elements == null || maxElementsInLeaf < 1 || maxDepth < 0 || !(minCellSize >= 0)) {
+            throw new IllegalArgumentException();
+        }
+        final SimpleQuadTree<T> tree = new SimpleQuadTree<>(maxElementsInLeaf, null);
+        tree.boundingBox = tree.computeBoundingBox(elements);
+        tree.limits = new SplitLimits(maxDepth, minCellSize);
+        tree.createBoundedTree(new ArrayList<>(elements), 0);
+        tree.countOwned(tree.boundingBox.getX(), tree.boundingBox.getY());
+        return tree;
+    }
+
+    /**
+     * Fills a node with its elements, splitting it like
+     * {@link SimpleQuadTree#createQuadTree(List)}. The elements are assigned to
+     * the quadrants by comparing them with the center of the node once. Since
+     * all elements lie in the bounding box of the node, this is the same as
+     * testing them against the (edge-inclusive) bounding boxes of the quadrants.
+     */
+    private static final class BuildTask<T extends QuadTreeElement> extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final SimpleQuadTree<T> node;
+        private final ArrayList<T> elements;
+
+        BuildTask(final SimpleQuadTree<T> node, final ArrayList<T> elements) {
+            this.node = node;
+            this.elements = elements;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.elements.size() <= this.node.maxLeafElements || !this.node.canSplit()) {
+                this.node.leafElements = this.elements;
+                return;
+            }
+            final Rectangle boundingBox = this.node.boundingBox;
+            final float midX = boundingBox.getX() + boundingBox.getWidth() / 2;
+            final float midY = boundingBox.getY() + boundingBox.getHeight() / 2;
+            final ArrayList<T> topLeftElements = new ArrayList<>();
+            final ArrayList<T> topRightElements = new ArrayList<>();
+            final ArrayList<T> bottomLeftElements = new ArrayList<>();
+            final ArrayList<T> bottomRightElements = new ArrayList<>();
+            for (final T element : this.elements) {
+                final Point position = element.getPosition();
+                final float x = position.getXValue();
+                final float y = position.getYValue();
+                if (y <= midY) {
+                    if (x <= midX) {
+                        topLeftElements.add(element);
+                    }
+                    if (x >= midX) {
+                        topRightElements.add(element);
+                    }
+                }
+                if (y >= midY) {
+                    if (x <= midX) {
+                        bottomLeftElements.add(element);
+                    }
+                    if (x >= midX) {
+                        bottomRightElements.add(element);
+                    }
+                }
+            }
+            final BuildTask<T> topLeft = subTask(topLeftElements, false, false);
+            final BuildTask<T> topRight = subTask(topRightElements, true, false);
+            final BuildTask<T> bottomLeft = subTask(bottomLeftElements, false, true);
+            final BuildTask<T> bottomRight = subTask(bottomRightElements, true, true);
+            this.node.topLeft = topLeft.node;
+            this.node.topRight = topRight.node;
+            this.node.bottomLeft = bottomLeft.node;
+            this.node.bottomRight = bottomRight.node;
+            if (this.elements.size() >= PARALLEL_THRESHOLD) {
+                invokeAll(topLeft, topRight, bottomLeft, bottomRight);
+            } else {
+                topLeft.compute();
+                topRight.compute();
+                bottomLeft.compute();
+                bottomRight.compute();
+            }
+        }
+
+        private BuildTask<T> subTask(final ArrayList<T> elements, final boolean right, final boolean bottom) {
+            final SimpleQuadTree<T> child = new SimpleQuadTree<>(this.node.maxLeafElements,
+                    this.node.quadrant(right, bottom));
+            return new BuildTask<>(child, elements);
+        }
+    }
+
     /**
      * This returns a bounding box, which is smallest of all possible bounding boxes
      * that include all elements of the list.
@@ -60,8 +316,21 @@ public class SimpleQuadTree<T extends QuadTreeElement> extends QuadTree<T> {
      * @return a bounding box in type Rectangle
      */
     private Rectangle computeBoundingBox(final List<T> elements) {
-        // TODO Insert code for assignment 5.1.b
-        return null;
+        float minX = Float.POSITIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+        for (final T element : elements) {
+            if (element == null) {
+                throw new IllegalArgumentException("elements contains null");
+            }
+            final Point position = element.getPosition();
+            minX = Math.min(minX, position.getXValue());
+            minY = Math.min(minY, position.getYValue());
+            maxX = Math.max(maxX, position.getXValue());
+            maxY = Math.max(maxY, position.getYValue());
+        }
+        return enclosingRectangle(minX, minY, maxX, maxY);
     }
 
     /**
@@ -76,11 +345,130 @@ public class SimpleQuadTree<T extends QuadTreeElement> extends QuadTree<T> {
      * SimpleQuadTree. This again includes the createQuadTree() function, which will
      * be called recursively.
      *
+     * Elements on a split line are contained in the bounding boxes of several
+     * subnodes and are therefore stored in each of them. A node whose bounding box
+     * is too small to be halved in float precision stays a leaf.
+     *
      * @param list, a list of elements in type T
      * @throws IllegalArgumentException, when parameter is missing.
      */
     void createQuadTree(final List<T> list) throws IllegalArgumentException {
-        // TODO Insert code for assignment 5.1.c
+        if (list == null) {
+            throw new IllegalArgumentException("list is null");
+        }
+        if (this.limits != null) {
+            createBoundedTree(new ArrayList<>(list), 0);
+            return;
+        }
+        if (list.size() <= this.maxLeafElements || !canSplit()) {
+            this.leafElements = new ArrayList<>(list);
+            return;
+        }
+        this.topLeft = createSubTree(list, quadrant(false, false));
+        this.topRight = createSubTree(list, quadrant(true, false));
+        this.bottomLeft = createSubTree(list, quadrant(false, true));
+        this.bottomRight = createSubTree(list, quadrant(true, true));
+    }
+
+    /**
+     * Fills a node of a bounded tree with its elements, see
+     * {@link #createBounded(List, int, int, float)}. The elements are
+     * distributed to the quadrants in a single pass.
+     *
+     * @param elements the elements of this node, the list is kept as the leaf
+     *                 list if the node is not split
+     * @param depth    the depth of this node
+     */
+    private void createBoundedTree(final ArrayList<T> elements, final int depth) {
+        if (elements.size() <= this.maxLeafElements || depth >= this.limits.maxDepth || !canSplit()
+                || coincident(elements)) {
+            this.leafElements = elements;
+            return;
+        }
+        final float midX = this.boundingBox.getX() + this.boundingBox.getWidth() / 2;
+        final float midY = this.boundingBox.getY() + this.boundingBox.getHeight() / 2;
+        final ArrayList<T> topLeftElements = new ArrayList<>();
+        final ArrayList<T> topRightElements = new ArrayList<>();
+        final ArrayList<T> bottomLeftElements = new ArrayList<>();
+        final ArrayList<T> bottomRightElements = new ArrayList<>();
+        for (final T element : elements) {
+            final Point position = element.getPosition();
+            if (position.getYValue() <= midY) {
+                (position.getXValue() <= midX ? topLeftElements : topRightElements).add(element);
+            } else {
+                (position.getXValue() <= midX ? bottomLeftElements : bottomRightElements).add(element);
+            }
+        }
+        this.topLeft = createBoundedSubTree(topLeftElements, false, false, depth + 1);
+        this.topRight = createBoundedSubTree(topRightElements, true, false, depth + 1);
+        this.bottomLeft = createBoundedSubTree(bottomLeftElements, false, true, depth + 1);
+        this.bottomRight = createBoundedSubTree(bottomRightElements, true, true, depth + 1);
+    }
+
+    private SimpleQuadTree<T> createBoundedSubTree(final ArrayList<T> elements, final boolean right,
+            final boolean bottom, final int depth) {
+        final SimpleQuadTree<T> child = new SimpleQuadTree<>(this.maxLeafElements, quadrant(right, bottom));
+        child.limits = this.limits;
+        child.createBoundedTree(elements, depth);
+        return child;
+    }
+
+    /**
+     * Checks whether all elements lie at the same position.
+     */
+    private static <T extends QuadTreeElement> boolean coincident(final List<T> elements) {
+        final Point first = elements.get(0).getPosition();
+        for (final T element : elements) {
+            final Point position = element.getPosition();
+            if (position.getXValue() != first.getXValue() || position.getYValue() != first.getYValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the bounding box can be halved in both directions, i.e.
+     * whether the center lies strictly inside the bounding box in float precision.
+     * In a bounded tree the quadrants must also reach the minimum cell size
+     * along at least one axis.
+     *
+     * @return true if the node can be split into four quadrants
+     */
+    private boolean canSplit() {
+        final float x = this.boundingBox.getX();
+        final float y = this.boundingBox.getY();
+        final float midX = x + this.boundingBox.getWidth() / 2;
+        final float midY = y + this.boundingBox.getHeight() / 2;
+        if (this.limits != null
+                && Math.max(this.boundingBox.getWidth(), this.boundingBox.getHeight()) / 2 < this.limits.minCellSize) {
+            return false;
+        }
+        return midX > x && midX < x + this.boundingBox.getWidth() && midY > y
+                && midY < y + this.boundingBox.getHeight();
+    }
+
+    /**
+     * Computes the bounding box of a quadrant of this node. The left and upper
+     * quadrants end exactly at the center of this node, the right and lower
+     * quadrants start exactly there and reach at least the edge of this node.
+     *
+     * @param right  true for a right quadrant
+     * @param bottom true for a lower quadrant
+     * @return the bounding box of the quadrant
+     */
+    private Rectangle quadrant(final boolean right, final boolean bottom) {
+        final float x = this.boundingBox.getX();
+        final float y = this.boundingBox.getY();
+        final float halfWidth = this.boundingBox.getWidth() / 2;
+        final float halfHeight = this.boundingBox.getHeight() / 2;
+        final float midX = x + halfWidth;
+        final float midY = y + halfHeight;
+        final float quadrantX = right ? midX : x;
+        final float quadrantY = bottom ? midY : y;
+        final float width = right ? Rectangle.enclosingExtent(midX, x + this.boundingBox.getWidth()) : halfWidth;
+        final float height = bottom ? Rectangle.enclosingExtent(midY, y + this.boundingBox.getHeight()) : halfHeight;
+        return new Rectangle(quadrantX, quadrantY, width, height);
     }
 
     /**
@@ -107,13 +495,250 @@ public class SimpleQuadTree<T extends QuadTreeElement> extends QuadTree<T> {
         return new SimpleQuadTree<>(elements, this.maxLeafElements, boundingBox);
     }
 
+    /**
+     * Inserts an element into this quad tree. The element is added to every leaf
+     * whose bounding box contains its position, and a leaf that exceeds the
+     * maximum number of elements is split. If the position lies outside of the
+     * bounding box of this tree, the tree is rebuilt once with a bounding box that
+     * is twice as large as needed, so that a growing data set only causes a
+     * logarithmic number of rebuilds.
+     *
+     * @param element the element to insert, must be != null
+     * @throws IllegalArgumentException if element is null
+     */
+    public void insert(final T element) {
+        if (element == null) {
+            throw new IllegalArgumentException("element is null");
+        }
+        final Point position = element.getPosition();
+        if (!this.boundingBox.containsPoint(position)) {
+            grow(element);
+            return;
+        }
+        insert(element, position, 0, this.boundingBox.getX(), this.boundingBox.getY());
+    }
+
+    private void insert(final T element, final Point position, final int depth, final float rootX,
+            final float rootY) {
+        if (owns(position.getXValue(), position.getYValue(), rootX, rootY)) {
+            ++this.ownedCount;
+        }
+        if (this.leafElements != null) {
+            this.leafElements.add(element);
+            if (this.leafElements.size() > this.maxLeafElements && canSplit()) {
+                if (this.limits == null) {
+                    final List<T> elements = this.leafElements;
+                    this.leafElements = null;
+                    createQuadTree(elements);
+                    countOwned(rootX, rootY);
+                } else if (depth < this.limits.maxDepth && !joinsCoincidentLeaf(position)) {
+                    final List<T> elements = this.leafElements;
+                    this.leafElements = null;
+                    createBoundedTree(new ArrayList<>(elements), depth);
+                    countOwned(rootX, rootY);
+                }
+            }
+            return;
+        }
+        if (this.limits != null) {
+            final boolean right = position.getXValue() > this.topRight.boundingBox.getX();
+            final boolean bottom = position.getYValue() > this.bottomLeft.boundingBox.getY();
+            child((bottom ? 2 : 0) + (right ? 1 : 0)).insert(element, position, depth + 1, rootX, rootY);
+            return;
+        }
+        for (int quadrant = 0; quadrant < 4; ++quadrant) {
+            final SimpleQuadTree<T> child = child(quadrant);
+            if (child.boundingBox.containsPoint(position)) {
+                child.insert(element, position, depth + 1, rootX, rootY);
+            }
+        }
+    }
+
+    /**
+     * Checks whether an element inserted at the given position only enlarged a
+     * leaf of a bounded tree that was already too large because all of its
+     * elements lie at the same position, so that the leaf need not be checked
+     * for a split again.
+     */
+    private boolean joinsCoincidentLeaf(final Point position) {
+        final Point first = this.leafElements.get(0).getPosition();
+        return this.leafElements.size() > this.maxLeafElements + 1 && position.getXValue() == first.getXValue()
+                && position.getYValue() == first.getYValue();
+    }
+
+    /**
+     * Removes an element from this quad tree. The element is located by its
+     * current position and compared by identity. Four sibling leaves that hold no
+     * more than the maximum number of elements after the removal are merged
+     * into their parent.
+     *
+     * @param element the element to remove, must be != null
+     * @return true if the element was stored in this tree
+     * @throws IllegalArgumentException if element is null
+     */
+    public boolean remove(final T element) {
+        if (element == null) {
+            throw new IllegalArgumentException("element is null");
+        }
+        return remove(element, element.getPosition(), this.boundingBox.getX(), this.boundingBox.getY());
+    }
+
+    /**
+     * Moves an element whose position has changed. The element is removed from
+     * the leaves of its old position and inserted at its current position
+     * {@link QuadTreeElement#getPosition()}.
+     *
+     * @param element     the moved element, must be != null
+     * @param oldPosition the position at which the element was stored in this
+     *                    tree, must be != null
+     * @return true if the element was stored at the old position, false if it was
+     *         not found (it is inserted nevertheless)
+     * @throws IllegalArgumentException if any parameter is null
+     */
+    public boolean update(final T element, final Point oldPosition) {
+        if (element == null || oldPosition == null) {
+            throw new IllegalArgumentException("element or oldPosition is null");
+        }
+        final boolean removed = remove(element, oldPosition, this.boundingBox.getX(), this.boundingBox.getY());
+        insert(element);
+        return removed;
+    }
+
+    private boolean remove(final T element, final Point position, final float rootX, final float rootY) {
+        if (!this.boundingBox.containsPoint(position)) {
+            return false;
+        }
+        boolean removed = false;
+        if (this.leafElements != null) {
+            for (int i = 0; i < this.leafElements.size() && !removed; ++i) {
+                if (this.leafElements.get(i) == element) {
+                    this.leafElements.remove(i);
+                    removed = true;
+                }
+            }
+        } else {
+            for (int quadrant = 0; quadrant < 4; ++quadrant) {
+                removed |= child(quadrant).remove(element, position, rootX, rootY);
+            }
+            if (removed) {
+                mergeChildren();
+            }
+        }
+        if (removed && owns(position.getXValue(), position.getYValue(), rootX, rootY)) {
+            --this.ownedCount;
+        }
+        return removed;
+    }
+
+    /**
+     * Turns this node into a leaf if all children are leaves that together hold
+     * no more than the maximum number of (distinct) elements. The owned count
+     * stays the same, since the leaf owns the elements its children owned.
+     */
+    private void mergeChildren() {
+        final List<T> topLeftElements = this.topLeft.leafElements;
+        final List<T> topRightElements = this.topRight.leafElements;
+        final List<T> bottomLeftElements = this.bottomLeft.leafElements;
+        final List<T> bottomRightElements = this.bottomRight.leafElements;
+        if (topLeftElements == null || topRightElements == null || bottomLeftElements == null
+                || bottomRightElements == null) {
+            return;
+        }
+        final int total = topLeftElements.size() + topRightElements.size() + bottomLeftElements.size()
+                + bottomRightElements.size();
+        if (total > this.maxLeafElements) {
+            return;
+        }
+        final List<T> elements = new ArrayList<>(total);
+        addDistinct(elements, topLeftElements);
+        addDistinct(elements, topRightElements);
+        addDistinct(elements, bottomLeftElements);
+        addDistinct(elements, bottomRightElements);
+        this.topLeft = null;
+        this.topRight = null;
+        this.bottomLeft = null;
+        this.bottomRight = null;
+        this.leafElements = elements;
+    }
+
+    /**
+     * Adds the elements that are not yet contained (by identity) in the target
+     * list. Elements on a split line are stored in several leaves.
+     */
+    private static <T> void addDistinct(final List<T> target, final List<T> elements) {
+        for (final T element : elements) {
+            if (!containsIdentical(target, element)) {
+                target.add(element);
+            }
+        }
+    }
+
+    private static <T> boolean containsIdentical(final List<T> elements, final T element) {
+        for (final T candidate : elements) {
+            if (candidate == element) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Rebuilds this tree with all of its elements and the new element, using a
+     * bounding box twice as large as the bounding box of the elements.
+     *
+     * @param element the element that lies outside of the bounding box
+     */
+    private void grow(final T element) {
+        final List<T> elements = new ArrayList<>();
+        visit(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+                this.boundingBox.getX(), this.boundingBox.getY(), stored -> elements.add(stored), null);
+        elements.add(element);
+        final Rectangle bounds = computeBoundingBox(elements);
+        final float marginX = bounds.getWidth() / 2;
+        final float marginY = bounds.getHeight() / 2;
+        this.boundingBox = enclosingRectangle(bounds.getX() - marginX, bounds.getY() - marginY,
+                bounds.getX() + bounds.getWidth() + marginX, bounds.getY() + bounds.getHeight() + marginY);
+        this.topLeft = null;
+        this.topRight = null;
+        this.bottomLeft = null;
+        this.bottomRight = null;
+        this.leafElements = null;
+        createQuadTree(elements);
+        countOwned(this.boundingBox.getX(), this.boundingBox.getY());
+    }
+
+    /**
+     * Computes the owned count of every node of this subtree after it was built.
+     *
+     * @param rootX left edge of the root node, see {@link #owns}
+     * @param rootY upper edge of the root node, see {@link #owns}
+     * @return the owned count of this node
+     */
+    private int countOwned(final float rootX, final float rootY) {
+        int owned = 0;
+        if (this.leafElements != null) {
+            for (final T element : this.leafElements) {
+                final Point position = element.getPosition();
+                if (owns(position.getXValue(), position.getYValue(), rootX, rootY)) {
+                    ++owned;
+                }
+            }
+        } else {
+            for (int quadrant = 0; quadrant < 4; ++quadrant) {
+                owned += child(quadrant).countOwned(rootX, rootY);
+            }
+        }
+        this.ownedCount = owned;
+        return owned;
+    }
+
     /**
      * This inserts all elements located in the requested range in resultList. It
      * first checks whether the query intersects the whole quadtree. After that, the
      * elements will be directly saved in resultList if this is a leaf node. Else it
      * needs to go down to the subnodes recursively until the leaf node and then get
-     * the elements. The resultList only save the element, when it locates inside
-     * the requested range and is not already part of the list.
+     * the elements. Elements that are stored in several leaves because they lie on
+     * a split line are only added once.
      *
      * @param resultList: List that is used to store the elements that are contained
      *                    in the searching area, must be != null it is allowed that
@@ -124,6 +749,726 @@ public class SimpleQuadTree<T extends QuadTreeElement> extends QuadTree<T> {
      */
     @Override
     public void rangeQuery(final List<T> resultList, final Rectangle query) {
-        // TODO Insert code for assignment 5.1.d
+        if (resultList == null || query == null) {
+            throw new IllegalArgumentException("resultList or query is null");
+        }
+        rangeQuery(query.getX(), query.getY(), query.getX() + query.getWidth(), query.getY() + query.getHeight(),
+                element -> resultList.add(element));
+    }
+
+    @Override
+    public boolean rangeQuery(final float minX, final float minY, final float maxX, final float maxY,
+            final QuadTreeVisitor<? super T> visitor) {
+        if (visitor == null) {
+            throw new IllegalArgumentException("visitor is null");
+        }
+        final QuadTreeMetrics metrics = this.metrics;
+        if (metrics == null) {
+            return visit(minX, minY, maxX, maxY, this.boundingBox.getX(), this.boundingBox.getY(), visitor, null);
+        }
+        final QuadTreeMetrics.Trace trace = new QuadTreeMetrics.Trace();
+        final boolean complete = visit(minX, minY, maxX, maxY, this.boundingBox.getX(), this.boundingBox.getY(),
+                visitor, trace);
+        metrics.record(trace);
+        return complete;
+    }
+
+    @Override
+    public int count(final float minX, final float minY, final float maxX, final float maxY) {
+        final QuadTreeMetrics metrics = this.metrics;
+        if (metrics == null) {
+            return count(minX, minY, maxX, maxY, this.boundingBox.getX(), this.boundingBox.getY(), null);
+        }
+        final QuadTreeMetrics.Trace trace = new QuadTreeMetrics.Trace();
+        final int count = count(minX, minY, maxX, maxY, this.boundingBox.getX(), this.boundingBox.getY(), trace);
+        metrics.record(trace);
+        return count;
+    }
+
+    /**
+     * Passes all elements of this subtree, which lies inside the query bounds,
+     * to the visitor. The elements need not be tested against the query, only
+     * their ownership is checked.
+     *
+     * @return false if the visitor stopped the query
+     */
+    private boolean visitSubtree(final float rootX, final float rootY, final QuadTreeVisitor<? super T> visitor,
+            final QuadTreeMetrics.Trace trace) {
+        if (this.leafElements != null) {
+            if (trace != null) {
+                ++trace.leavesScanned;
+            }
+            for (final T element : this.leafElements) {
+                final Point position = element.getPosition();
+                if (trace != null) {
+                    ++trace.elementsTested;
+                }
+                if (owns(position.getXValue(), position.getYValue(), rootX, rootY)) {
+                    if (trace != null) {
+                        ++trace.elementsReturned;
+                    }
+                    if (!visitor.visit(element)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        for (int quadrant = 0; quadrant < 4; ++quadrant) {
+            if (trace != null) {
+                ++trace.nodesVisited;
+            }
+            if (!child(quadrant).visitSubtree(rootX, rootY, visitor, trace)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records the work of the range queries and counts on this tree in the given
+     * metrics from now on. The other queries are not recorded. Without metrics
+     * a query only pays for a null check per node and element.
+     *
+     * @param metrics receives the counts, or null to stop recording
+     */
+    public void setMetrics(final QuadTreeMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the metrics that record the queries on this tree.
+     *
+     * @return the metrics, or null if the queries are not recorded
+     */
+    public QuadTreeMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Computes structural statistics of this tree by visiting every node.
+     *
+     * @return the statistics
+     */
+    public QuadTreeStatistics getStatistics() {
+        final int[] counts = new int[3];
+        final long[] storedElements = new long[1];
+        final int[] histogram = new int[QuadTreeStatistics.FILL_BUCKETS + 1];
+        final int depth = collectStatistics(counts, storedElements, histogram);
+        return new QuadTreeStatistics(this.maxLeafElements, depth, counts[0], counts[1], storedElements[0],
+                histogram);
+    }
+
+    /**
+     * Adds this subtree to the statistics.
+     *
+     * @param counts         the number of nodes and leaves at index 0 and 1
+     * @param storedElements the number of elements in the leaves at index 0
+     * @param histogram      the leaf fill histogram
+     * @return the depth of this subtree
+     */
+    private int collectStatistics(final int[] counts, final long[] storedElements, final int[] histogram) {
+        ++counts[0];
+        if (this.leafElements != null) {
+            ++counts[1];
+            storedElements[0] += this.leafElements.size();
+            ++histogram[QuadTreeStatistics.fillBucket(this.leafElements.size(), this.maxLeafElements)];
+            return 0;
+        }
+        int depth = ((SimpleQuadTree<T>) this.topLeft).collectStatistics(counts, storedElements, histogram);
+        depth = Math.max(depth,
+                ((SimpleQuadTree<T>) this.topRight).collectStatistics(counts, storedElements, histogram));
+        depth = Math.max(depth,
+                ((SimpleQuadTree<T>) this.bottomLeft).collectStatistics(counts, storedElements, histogram));
+        depth = Math.max(depth,
+                ((SimpleQuadTree<T>) this.bottomRight).collectStatistics(counts, storedElements, histogram));
+        return depth + 1;
+    }
+
+    /**
+     * Recursively passes all elements of this subtree within the query bounds to
+     * the visitor.
+     *
+     * @param rootX left edge of the root node, see {@link #owns}
+     * @param rootY upper edge of the root node, see {@link #owns}
+     * @param trace receives the counts of the query, or null
+     * @return false if the visitor stopped the query
+     */
+    private boolean visit(final float minX, final float minY, final float maxX, final float maxY,
+            final float rootX, final float rootY, final QuadTreeVisitor<? super T> visitor,
+            final QuadTreeMetrics.Trace trace) {
+        if (trace != null) {
+            ++trace.nodesVisited;
+        }
+        if (!intersectsBoundingBox(minX, minY, maxX, maxY)) {
+            return true;
+        }
+        if (withinQuery(minX, minY, maxX, maxY)) {
+            return visitSubtree(rootX, rootY, visitor, trace);
+        }
+        if (this.leafElements != null) {
+            if (trace != null) {
+                ++trace.leavesScanned;
+            }
+            for (final T element : this.leafElements) {
+                final Point position = element.getPosition();
+                final float x = position.getXValue();
+                final float y = position.getYValue();
+                if (trace != null) {
+                    ++trace.elementsTested;
+                }
+                if (x >= minX && x <= maxX && y >= minY && y <= maxY && owns(x, y, rootX, rootY)) {
+                    if (trace != null) {
+                        ++trace.elementsReturned;
+                    }
+                    if (!visitor.visit(element)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return ((SimpleQuadTree<T>) this.topLeft).visit(minX, minY, maxX, maxY, rootX, rootY, visitor, trace)
+                && ((SimpleQuadTree<T>) this.topRight).visit(minX, minY, maxX, maxY, rootX, rootY, visitor, trace)
+                && ((SimpleQuadTree<T>) this.bottomLeft).visit(minX, minY, maxX, maxY, rootX, rootY, visitor,
+                        trace)
+                && ((SimpleQuadTree<T>) this.bottomRight).visit(minX, minY, maxX, maxY, rootX, rootY, visitor,
+                        trace);
+    }
+
+    private int count(final float minX, final float minY, final float maxX, final float maxY, final float rootX,
+            final float rootY, final QuadTreeMetrics.Trace trace) {
+        if (trace != null) {
+            ++trace.nodesVisited;
+        }
+        if (!intersectsBoundingBox(minX, minY, maxX, maxY)) {
+            return 0;
+        }
+        if (withinQuery(minX, minY, maxX, maxY)) {
+            // every owned element of this subtree lies inside the query bounds
+            if (trace != null) {
+                trace.elementsReturned += this.ownedCount;
+            }
+            return this.ownedCount;
+        }
+        if (this.leafElements != null) {
+            int count = 0;
+            for (final T element : this.leafElements) {
+                final Point position = element.getPosition();
+                final float x = position.getXValue();
+                final float y = position.getYValue();
+                if (x >= minX && x <= maxX && y >= minY && y <= maxY && owns(x, y, rootX, rootY)) {
+                    ++count;
+                }
+            }
+            if (trace != null) {
+                ++trace.leavesScanned;
+                trace.elementsTested += this.leafElements.size();
+                trace.elementsReturned += count;
+            }
+            return count;
+        }
+        return ((SimpleQuadTree<T>) this.topLeft).count(minX, minY, maxX, maxY, rootX, rootY, trace)
+                + ((SimpleQuadTree<T>) this.topRight).count(minX, minY, maxX, maxY, rootX, rootY, trace)
+                + ((SimpleQuadTree<T>) this.bottomLeft).count(minX, minY, maxX, maxY, rootX, rootY, trace)
+                + ((SimpleQuadTree<T>) this.bottomRight).count(minX, minY, maxX, maxY, rootX, rootY, trace);
+    }
+
+    /**
+     * Returns a lazy stream of the elements in the area [minX, maxX] x [minY,
+     * maxY] (edges included), each element exactly once. The tree is traversed
+     * as the stream is consumed, so the first elements are available before the
+     * traversal is complete and the result is never materialized. A parallel
+     * stream splits the traversal at the subtrees that are still pending, so
+     * large results are collected by several threads of the fork/join pool.
+     *
+     * The tree must not be modified while the stream is consumed.
+     *
+     * @param minX left bound of the area
+     * @param minY upper bound of the area
+     * @param maxX right bound of the area
+     * @param maxY lower bound of the area
+     * @return a sequential stream of the elements in the area
+     */
+    public Stream<T> rangeQueryStream(final float minX, final float minY, final float maxX, final float maxY) {
+        return StreamSupport.stream(new RangeSpliterator<>(this, minX, minY, maxX, maxY), false);
+    }
+
+    /**
+     * Returns a lazy iterator over the elements in the area [minX, maxX] x
+     * [minY, maxY] (edges included), see
+     * {@link #rangeQueryStream(float, float, float, float)}.
+     *
+     * @param minX left bound of the area
+     * @param minY upper bound of the area
+     * @param maxX right bound of the area
+     * @param maxY lower bound of the area
+     * @return an iterator over the elements in the area
+     */
+    public Iterator<T> rangeQueryIterator(final float minX, final float minY, final float maxX, final float maxY) {
+        return Spliterators.iterator(new RangeSpliterator<>(this, minX, minY, maxX, maxY));
+    }
+
+    /**
+     * Traverses the tree depth-first for a range query. The nodes that are yet
+     * to be visited are kept on a stack; the nodes at the bottom of the stack
+     * are the largest pending subtrees, so a split hands the lower half of the
+     * stack to the new spliterator. The size is unknown and estimated like in
+     * {@link Spliterators.AbstractSpliterator}: halved on every split.
+     */
+    private static final class RangeSpliterator<T extends QuadTreeElement> implements Spliterator<T> {
+
+        private final float minX;
+        private final float minY;
+        private final float maxX;
+        private final float maxY;
+        private final float rootX;
+        private final float rootY;
+
+        /**
+         * The pending nodes, the next one at the end
+         */
+        private final ArrayDeque<SimpleQuadTree<T>> pending;
+
+        /**
+         * The leaf that is being scanned and the iterator over its elements, or
+         * null
+         */
+        private SimpleQuadTree<T> leaf = null;
+        private Iterator<T> leafElements = null;
+
+        private long estimatedSize;
+
+        RangeSpliterator(final SimpleQuadTree<T> root, final float minX, final float minY, final float maxX,
+                final float maxY) {
+            this(minX, minY, maxX, maxY, root.boundingBox.getX(), root.boundingBox.getY(), new ArrayDeque<>(),
+                    Long.MAX_VALUE);
+            this.pending.add(root);
+        }
+
+        private RangeSpliterator(final float minX, final float minY, final float maxX, final float maxY,
+                final float rootX, final float rootY, final ArrayDeque<SimpleQuadTree<T>> pending,
+                final long estimatedSize) {
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            this.rootX = rootX;
+            this.rootY = rootY;
+            this.pending = pending;
+            this.estimatedSize = estimatedSize;
+        }
+
+        @Override
+        public boolean tryAdvance(final Consumer<? super T> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            while (true) {
+                while (this.leafElements != null && this.leafElements.hasNext()) {
+                    final T element = this.leafElements.next();
+                    final Point position = element.getPosition();
+                    final float x = position.getXValue();
+                    final float y = position.getYValue();
+                    if (x >= this.minX && x <= this.maxX && y >= this.minY && y <= this.maxY
+                            && this.leaf.owns(x, y, this.rootX, this.rootY)) {
+                        action.accept(element);
+                        return true;
+                    }
+                }
+                this.leaf = null;
+                this.leafElements = null;
+                if (!advanceToLeaf()) {
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * Pops nodes until a leaf that intersects the query is found and makes
+         * it the current leaf.
+         *
+         * @return false if there are no more nodes
+         */
+        private boolean advanceToLeaf() {
+            while (!this.pending.isEmpty()) {
+                final SimpleQuadTree<T> node = this.pending.pollLast();
+                if (!node.intersectsBoundingBox(this.minX, this.minY, this.maxX, this.maxY)) {
+                    continue;
+                }
+                if (node.leafElements != null) {
+                    this.leaf = node;
+                    this.leafElements = node.leafElements.iterator();
+                    return true;
+                }
+                pushChildren(node);
+            }
+            return false;
+        }
+
+        private void pushChildren(final SimpleQuadTree<T> node) {
+            for (int quadrant = 3; quadrant >= 0; --quadrant) {
+                this.pending.addLast(node.child(quadrant));
+            }
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            // expand a single pending inner node so that there is something to
+            // split
+            while (this.pending.size() == 1 && this.pending.peekLast().leafElements == null) {
+                final SimpleQuadTree<T> node = this.pending.pollLast();
+                if (node.intersectsBoundingBox(this.minX, this.minY, this.maxX, this.maxY)) {
+                    pushChildren(node);
+                }
+            }
+            if (this.pending.size() < 2) {
+                return null;
+            }
+            final int count = this.pending.size() / 2;
+            final ArrayDeque<SimpleQuadTree<T>> prefix = new ArrayDeque<>(count);
+            for (int i = 0; i < count; ++i) {
+                prefix.addLast(this.pending.pollFirst());
+            }
+            this.estimatedSize >>>= 1;
+            return new RangeSpliterator<>(this.minX, this.minY, this.maxX, this.maxY, this.rootX, this.rootY,
+                    prefix, this.estimatedSize);
+        }
+
+        @Override
+        public long estimateSize() {
+            return this.estimatedSize;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.NONNULL;
+        }
+    }
+
+    /**
+     * Performs a batch of range queries in a single traversal of the tree. Each
+     * node is visited once for all queries that intersect it, so the upper
+     * levels of the tree are not traversed again for every query.
+     *
+     * @param queries the searching areas, must be != null and must not contain
+     *                null
+     * @return the elements within each query, indexed like queries
+     * @throws IllegalArgumentException if queries is null or contains null
+     */
+    public BatchQueryResult<T> batchRangeQuery(final Rectangle[] queries) {
+        return batchRangeQuery(queries, null);
+    }
+
+    /**
+     * Performs a batch of range queries like {@link #batchRangeQuery(Rectangle[])},
+     * but splits large batches into partitions that traverse the tree
+     * concurrently in the given pool.
+     *
+     * @param queries the searching areas, must be != null and must not contain
+     *                null
+     * @param pool    the pool that executes the partitions, or null to run the
+     *                batch on the calling thread
+     * @return the elements within each query, indexed like queries
+     * @throws IllegalArgumentException if queries is null or contains null
+     */
+    public BatchQueryResult<T> batchRangeQuery(final Rectangle[] queries, final ForkJoinPool pool) {
+        if (queries == null) {
+            throw new IllegalArgumentException("queries is null");
+        }
+        final float[] bounds = new float[4 * queries.length];
+        for (int query = 0; query < queries.length; ++query) {
+            final Rectangle rectangle = queries[query];
+            if (rectangle == null) {
+                throw new IllegalArgumentException("queries contains null");
+            }
+            bounds[4 * query] = rectangle.getX();
+            bounds[4 * query + 1] = rectangle.getY();
+            bounds[4 * query + 2] = rectangle.getX() + rectangle.getWidth();
+            bounds[4 * query + 3] = rectangle.getY() + rectangle.getHeight();
+        }
+
+        final int partitions = pool == null ? 1
+                : Math.max(1, Math.min(4 * pool.getParallelism(), queries.length / MIN_BATCH_PARTITION));
+        final BatchCollector[] collectors = new BatchCollector[partitions];
+        if (partitions == 1) {
+            collectors[0] = collectBatch(bounds, 0, queries.length);
+        } else {
+            final List<ForkJoinTask<BatchCollector>> tasks = new ArrayList<>(partitions);
+            for (int partition = 0; partition < partitions; ++partition) {
+                final int from = (int) ((long) queries.length * partition / partitions);
+                final int to = (int) ((long) queries.length * (partition + 1) / partitions);
+                tasks.add(pool.submit(() -> collectBatch(bounds, from, to)));
+            }
+            for (int partition = 0; partition < partitions; ++partition) {
+                collectors[partition] = tasks.get(partition).join();
+            }
+        }
+        return BatchCollector.toResult(collectors, queries.length);
+    }
+
+    private BatchCollector collectBatch(final float[] bounds, final int from, final int to) {
+        final BatchCollector collector = new BatchCollector();
+        final int[] active = new int[to - from];
+        for (int query = from; query < to; ++query) {
+            active[query - from] = query;
+        }
+        final List<int[]> levels = new ArrayList<>();
+        levels.add(active);
+        batchVisit(bounds, levels, 0, active.length, this.boundingBox.getX(), this.boundingBox.getY(), collector);
+        return collector;
+    }
+
+    /**
+     * Collects the hits of the active queries in this subtree.
+     *
+     * @param bounds      minX, minY, maxX and maxY of every query
+     * @param levels      levels.get(depth) holds the indices of the queries that
+     *                    intersect this node, deeper levels are scratch buffers
+     * @param depth       the depth of this node
+     * @param activeCount the number of active queries in levels.get(depth)
+     */
+    @SuppressWarnings("unchecked")
+    private void batchVisit(final float[] bounds, final List<int[]> levels, final int depth, final int activeCount,
+            final float rootX, final float rootY, final BatchCollector collector) {
+        final int[] active = levels.get(depth);
+        if (this.leafElements != null) {
+            for (final T element : this.leafElements) {
+                final Point position = element.getPosition();
+                final float x = position.getXValue();
+                final float y = position.getYValue();
+                if (!owns(x, y, rootX, rootY)) {
+                    continue;
+                }
+                for (int i = 0; i < activeCount; ++i) {
+                    final int query = active[i];
+                    if (x >= bounds[4 * query] && y >= bounds[4 * query + 1] && x <= bounds[4 * query + 2]
+                            && y <= bounds[4 * query + 3]) {
+                        collector.add(query, element);
+                    }
+                }
+            }
+            return;
+        }
+        if (levels.size() == depth + 1) {
+            levels.add(new int[levels.get(0).length]);
+        }
+        final int[] childActive = levels.get(depth + 1);
+        for (int quadrant = 0; quadrant < 4; ++quadrant) {
+            final SimpleQuadTree<T> child = child(quadrant);
+            int childCount = 0;
+            for (int i = 0; i < activeCount; ++i) {
+                final int query = active[i];
+                if (child.intersectsBoundingBox(bounds[4 * query], bounds[4 * query + 1], bounds[4 * query + 2],
+                        bounds[4 * query + 3])) {
+                    childActive[childCount++] = query;
+                }
+            }
+            if (childCount > 0) {
+                child.batchVisit(bounds, levels, depth + 1, childCount, rootX, rootY, collector);
+            }
+        }
+    }
+
+    /**
+     * Growable list of (query index, element) pairs found by one partition of a
+     * batch query.
+     */
+    private static final class BatchCollector {
+
+        private int[] queries = new int[64];
+        private Object[] elements = new Object[64];
+        private int size = 0;
+
+        void add(final int query, final Object element) {
+            if (this.size == this.queries.length) {
+                this.queries = Arrays.copyOf(this.queries, 2 * this.size);
+                this.elements = Arrays.copyOf(this.elements, 2 * this.size);
+            }
+            this.queries[this.size] = query;
+            this.elements[this.size] = element;
+            ++this.size;
+        }
+
+        /**
+         * Groups the pairs of all collectors by query index with a counting sort.
+         */
+        static <T> BatchQueryResult<T> toResult(final BatchCollector[] collectors, final int queryCount) {
+            final int[] offsets = new int[queryCount + 1];
+            for (final BatchCollector collector : collectors) {
+                for (int i = 0; i < collector.size; ++i) {
+                    ++offsets[collector.queries[i] + 1];
+                }
+            }
+            for (int query = 0; query < queryCount; ++query) {
+                offsets[query + 1] += offsets[query];
+            }
+            final int[] next = Arrays.copyOf(offsets, queryCount);
+            final Object[] elements = new Object[offsets[queryCount]];
+            for (final BatchCollector collector : collectors) {
+                for (int i = 0; i < collector.size; ++i) {
+                    elements[next[collector.queries[i]]++] = collector.elements[i];
+                }
+            }
+            return new BatchQueryResult<>(offsets, elements);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<T> nearestNeighbours(final float x, final float y, final int k, final float maxDistance) {
+        if (k < 1 || !(maxDistance >= 0)) {
+            throw new IllegalArgumentException("k is less than 1 or maxDistance is negative");
+        }
+        final double limit = (double) maxDistance * maxDistance;
+        final float rootX = this.boundingBox.getX();
+        final float rootY = this.boundingBox.getY();
+        final List<T> result = new ArrayList<>();
+        // the queue holds nodes (index NODE) and elements (index ELEMENT)
+        final DistanceQueue queue = new DistanceQueue();
+        queue.add(distanceToBoundingBox(x, y), this, NODE);
+        while (!queue.isEmpty() && result.size() < k && queue.topKey() <= limit) {
+            final Object item = queue.topItem();
+            final int kind = queue.topIndex();
+            queue.removeTop();
+            if (kind == ELEMENT) {
+                result.add((T) item);
+                continue;
+            }
+            final SimpleQuadTree<T> node = (SimpleQuadTree<T>) item;
+            if (node.leafElements != null) {
+                for (final T element : node.leafElements) {
+                    final Point position = element.getPosition();
+                    final float elementX = position.getXValue();
+                    final float elementY = position.getYValue();
+                    final double distance = DistanceQueue.squaredDistance(x, y, elementX, elementY);
+                    if (distance <= limit && node.owns(elementX, elementY, rootX, rootY)) {
+                        queue.add(distance, element, ELEMENT);
+                    }
+                }
+            } else {
+                queue.add(((SimpleQuadTree<T>) node.topLeft).distanceToBoundingBox(x, y), node.topLeft, NODE);
+                queue.add(((SimpleQuadTree<T>) node.topRight).distanceToBoundingBox(x, y), node.topRight, NODE);
+                queue.add(((SimpleQuadTree<T>) node.bottomLeft).distanceToBoundingBox(x, y), node.bottomLeft, NODE);
+                queue.add(((SimpleQuadTree<T>) node.bottomRight).distanceToBoundingBox(x, y), node.bottomRight,
+                        NODE);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public T nearestNeighbour(final float x, final float y, final float maxDistance) {
+        if (!(maxDistance >= 0)) {
+            throw new IllegalArgumentException("maxDistance is negative");
+        }
+        final double limit = Math.nextUp((double) maxDistance * maxDistance);
+        return nearest(x, y, null, limit);
+    }
+
+    /**
+     * Depth-first search for the element nearest to (x, y) that is closer than
+     * bestDistance. The children are visited starting with the closest one,
+     * followed by its neighbours and the opposite child. Elements on a split
+     * line may be found twice, which does not change the result.
+     *
+     * @return the nearest element found so far, or best if there is none closer
+     */
+    @SuppressWarnings("unchecked")
+    private T nearest(final float x, final float y, T best, double bestDistance) {
+        if (this.leafElements != null) {
+            for (final T element : this.leafElements) {
+                final Point position = element.getPosition();
+                final double distance = DistanceQueue.squaredDistance(x, y, position.getXValue(),
+                        position.getYValue());
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = element;
+                }
+            }
+            return best;
+        }
+        int closest = 0;
+        double closestDistance = Double.POSITIVE_INFINITY;
+        for (int quadrant = 0; quadrant < 4; ++quadrant) {
+            final double distance = child(quadrant).distanceToBoundingBox(x, y);
+            if (distance < closestDistance) {
+                closestDistance = distance;
+                closest = quadrant;
+            }
+        }
+        for (int i = 0; i < 4; ++i) {
+            final SimpleQuadTree<T> child = child(closest ^ i);
+            if (child.distanceToBoundingBox(x, y) < bestDistance) {
+                final T element = child.nearest(x, y, best, bestDistance);
+                if (element != best) {
+                    best = element;
+                    final Point position = element.getPosition();
+                    bestDistance = DistanceQueue.squaredDistance(x, y, position.getXValue(), position.getYValue());
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the child with the given quadrant index: 0 top left, 1 top right, 2
+     * bottom left, 3 bottom right.
+     */
+    @SuppressWarnings("unchecked")
+    private SimpleQuadTree<T> child(final int quadrant) {
+        switch (quadrant) {
+        case 0:
+            return (SimpleQuadTree<T>) this.topLeft;
+        case 1:
+            return (SimpleQuadTree<T>) this.topRight;
+        case 2:
+            return (SimpleQuadTree<T>) this.bottomLeft;
+        default:
+            return (SimpleQuadTree<T>) this.bottomRight;
+        }
+    }
+
+    private double distanceToBoundingBox(final float x, final float y) {
+        final float minX = this.boundingBox.getX();
+        final float minY = this.boundingBox.getY();
+        return DistanceQueue.squaredDistance(x, y, minX, minY, minX + this.boundingBox.getWidth(),
+                minY + this.boundingBox.getHeight());
+    }
+
+    private boolean intersectsBoundingBox(final float minX, final float minY, final float maxX, final float maxY) {
+        final float x = this.boundingBox.getX();
+        final float y = this.boundingBox.getY();
+        return minX <= x + this.boundingBox.getWidth() && maxX >= x && minY <= y + this.boundingBox.getHeight()
+                && maxY >= y;
+    }
+
+    /**
+     * Checks whether the bounding box lies inside the query bounds, in which
+     * case every element of this subtree is inside the query bounds.
+     */
+    private boolean withinQuery(final float minX, final float minY, final float maxX, final float maxY) {
+        final float x = this.boundingBox.getX();
+        final float y = this.boundingBox.getY();
+        return Rectangle.containsBox(minX, minY, maxX, maxY, x, y, x + this.boundingBox.getWidth(),
+                y + this.boundingBox.getHeight());
+    }
+
+    /**
+     * An element on a split line is stored in the leaves on both sides of the
+     * line. Exactly one of these leaves owns it: the one reached by always
+     * descending into the left (upper) quadrant on a tie. Hence a leaf owns a
+     * contained point unless the point lies on the left (upper) edge of the leaf
+     * and that edge is a split line, i.e. not the edge of the root node.
+     *
+     * @param x     x coordinate of a point contained in this leaf
+     * @param y     y coordinate of a point contained in this leaf
+     * @param rootX left edge of the root node
+     * @param rootY upper edge of the root node
+     * @return true if the point is reported by this leaf
+     */
+    private boolean owns(final float x, final float y, final float rootX, final float rootY) {
+        return (x > this.boundingBox.getX() || this.boundingBox.getX() == rootX)
+                && (y > this.boundingBox.getY() || this.boundingBox.getY() == rootY);
     }
 }
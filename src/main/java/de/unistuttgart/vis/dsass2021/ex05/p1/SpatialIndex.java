@@ -0,0 +1,54 @@
+package de.unistuttgart.vis.dsass2021.ex05.p1;
+
+import java.util.List;
+
+/**
+ * The range queries shared by the point trees ({@link QuadTree}) and the
+ * rectangle tree ({@link RTree}). An element is in a query area if its
+ * position (for points) or its bounding rectangle (for extended elements)
+ * intersects the area, edges included.
+ *
+ * @param <T> type of the stored elements
+ */
+public interface SpatialIndex<T> {
+
+  /**
+   * Adds all elements in the search area to the result list, each exactly
+   * once. The list is not cleared before.
+   * 
+   * @param resultList list that is used to store the elements
+   * @param searchArea the area to search
+   */
+  public abstract void rangeQuery(final List<T> resultList,
+      final Rectangle searchArea);
+
+  /**
+   * Passes every element in the area [minX, maxX] x [minY, maxY] to the
+   * visitor, each exactly once and in no particular order, until the visitor
+   * returns false.
+   * 
+   * @param minX left bound of the area
+   * @param minY upper bound of the area
+   * @param maxX right bound of the area
+   * @param maxY lower bound of the area
+   * @param visitor receives the elements in the area, must be != null
+   * @return true if all elements were visited, false if the visitor stopped
+   *         the query
+   * @throws IllegalArgumentException if visitor is null
+   */
+  public abstract boolean rangeQuery(final float minX, final float minY,
+      final float maxX, final float maxY,
+      final QuadTreeVisitor<? super T> visitor);
+
+  /**
+   * Counts the elements in the area [minX, maxX] x [minY, maxY].
+   * 
+   * @param minX left bound of the area
+   * @param minY upper bound of the area
+   * @param maxX right bound of the area
+   * @param maxY lower bound of the area
+   * @return the number of elements in the area
+   */
+  public abstract int count(final float minX, final float minY,
+      final float maxX, final float maxY);
+}
@@ -0,0 +1,91 @@
+package de.unistuttgart.vis.dsass2021.ex05.p2;
+
+import java.util.function.Consumer;
+
+import de.unistuttgart.vis.dsass2021.ex05.p1.Rectangle;
+
+/**
+ * A broad phase stores a set of rectangles and finds the rectangles that
+ * intersect (including touching) a given rectangle or each other. Rectangles
+ * are identified by instance; a moved rectangle is replaced by a new instance.
+ *
+ * The implementations, {@link CollisionMap} (uniform grid) and
+ * {@link SweepAndPrune} (sorted intervals), suit different scenes, so callers
+ * should depend on this interface and pick the faster engine per scene.
+ */
+public interface BroadPhase {
+
+    /**
+     * Returns the number of rectangles in the broad phase.
+     *
+     * @return the number of rectangles
+     */
+    int size();
+
+    /**
+     * Checks whether the given rectangle (the same instance) is stored.
+     *
+     * @param rectangle the rectangle to look for
+     * @return true if the rectangle is stored
+     */
+    boolean contains(Rectangle rectangle);
+
+    /**
+     * Adds a rectangle.
+     *
+     * @param rectangle the rectangle to add, must be != null
+     * @return false if the rectangle (the same instance) already is stored
+     * @throws IllegalArgumentException if rectangle is null
+     */
+    boolean add(Rectangle rectangle);
+
+    /**
+     * Removes a rectangle.
+     *
+     * @param rectangle the rectangle (the same instance) to remove
+     * @return false if the rectangle is not stored
+     */
+    boolean remove(Rectangle rectangle);
+
+    /**
+     * Replaces a rectangle by the rectangle at its new position.
+     *
+     * @param rectangle the rectangle (the same instance) to replace
+     * @param moved     the rectangle at the new position, must be != null and
+     *                  must not be stored yet
+     * @return false if rectangle is not stored
+     * @throws IllegalArgumentException if moved is null or already stored
+     */
+    boolean move(Rectangle rectangle, Rectangle moved);
+
+    /**
+     * Checks whether the given rectangle intersects one of the stored
+     * rectangles.
+     *
+     * @param rectangle the rectangle to check for collision
+     * @return true if the rectangle intersects a stored rectangle
+     * @throws IllegalArgumentException if rectangle is null
+     */
+    boolean collide(Rectangle rectangle);
+
+    /**
+     * Passes every stored rectangle that intersects the given rectangle to the
+     * consumer, each exactly once.
+     *
+     * @param rectangle the rectangle to check for collision
+     * @param consumer  receives the intersecting rectangles, must be != null
+     * @return the number of intersecting rectangles
+     * @throws IllegalArgumentException if any parameter is null
+     */
+    int forEachCollision(Rectangle rectangle, Consumer<? super Rectangle> consumer);
+
+    /**
+     * Passes every unordered pair of intersecting stored rectangles to the
+     * consumer, each exactly once.
+     *
+     * @param consumer receives the intersecting pairs, must be != null
+     * @return the number of intersecting pairs
+     * @throws IllegalArgumentException if consumer is null
+     */
+    long forEachCollidingPair(CollisionPairConsumer consumer);
+}
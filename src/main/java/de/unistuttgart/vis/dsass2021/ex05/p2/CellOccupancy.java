@@ -0,0 +1,108 @@
+package de.unistuttgart.vis.dsass2021.ex05.p2;
+
+import java.util.Arrays;
+
+/**
+ * Occupancy statistics of the cells of a {@link CollisionMap}, used to judge
+ * whether the grid resolution fits the stored rectangles.
+ *
+ * The occupancy histogram has power of two buckets: bucket 0 counts the empty
+ * cells and bucket k > 0 the cells holding at least 2^(k - 1) and less than
+ * 2^k rectangles.
+ */
+public final class CellOccupancy {
+
+    private final int gridResolutionX;
+    private final int gridResolutionY;
+    private final int rectangleCount;
+    private final int emptyCells;
+    private final int maxEntries;
+    private final long totalEntries;
+    private final int[] occupancyHistogram;
+
+    CellOccupancy(final int gridResolutionX, final int gridResolutionY, final int rectangleCount,
+            final int emptyCells, final int maxEntries, final long totalEntries, final int[] occupancyHistogram) {
+        this.gridResolutionX = gridResolutionX;
+        this.gridResolutionY = gridResolutionY;
+        this.rectangleCount = rectangleCount;
+        this.emptyCells = emptyCells;
+        this.maxEntries = maxEntries;
+        this.totalEntries = totalEntries;
+        this.occupancyHistogram = occupancyHistogram;
+    }
+
+    /**
+     * Returns the histogram bucket of a cell.
+     *
+     * @param entries the number of rectangles in the cell
+     * @return the bucket of the cell
+     */
+    static int occupancyBucket(final int entries) {
+        return Integer.SIZE - Integer.numberOfLeadingZeros(entries);
+    }
+
+    public int getGridResolutionX() {
+        return this.gridResolutionX;
+    }
+
+    public int getGridResolutionY() {
+        return this.gridResolutionY;
+    }
+
+    public int getCellCount() {
+        return this.gridResolutionX * this.gridResolutionY;
+    }
+
+    public int getRectangleCount() {
+        return this.rectangleCount;
+    }
+
+    public int getEmptyCells() {
+        return this.emptyCells;
+    }
+
+    /**
+     * @return the number of rectangles in the fullest cell
+     */
+    public int getMaxEntries() {
+        return this.maxEntries;
+    }
+
+    /**
+     * @return the number of (cell, rectangle) entries over all cells
+     */
+    public long getTotalEntries() {
+        return this.totalEntries;
+    }
+
+    /**
+     * @return the occupancy histogram, a new array that ends with the bucket of
+     *         the fullest cell
+     */
+    public int[] getOccupancyHistogram() {
+        return this.occupancyHistogram.clone();
+    }
+
+    /**
+     * @return the average number of rectangles in the non-empty cells
+     */
+    public double getMeanEntriesPerOccupiedCell() {
+        final int occupied = getCellCount() - this.emptyCells;
+        return occupied == 0 ? 0 : (double) this.totalEntries / occupied;
+    }
+
+    /**
+     * @return the average number of cells a rectangle is stored in
+     */
+    public double getReplicationFactor() {
+        return this.rectangleCount == 0 ? 0 : (double) this.totalEntries / this.rectangleCount;
+    }
+
+    @Override
+    public String toString() {
+        return "CellOccupancy[grid=" + this.gridResolutionX + "x" + this.gridResolutionY + ", rectangles="
+                + this.rectangleCount + ", emptyCells=" + this.emptyCells + ", maxEntries=" + this.maxEntries
+                + ", meanEntriesPerOccupiedCell=" + getMeanEntriesPerOccupiedCell() + ", replicationFactor="
+                + getReplicationFactor() + ", occupancyHistogram=" + Arrays.toString(this.occupancyHistogram) + "]";
+    }
+}
@@ -1,9 +1,14 @@
 package de.unistuttgart.vis.dsass2021.ex05.p2;
 
+import java.util.Arrays;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
 
 import de.unistuttgart.vis.dsass2021.ex05.p1.Rectangle;
 
@@ -12,28 +17,246 @@ import de.unistuttgart.vis.dsass2021.ex05.p1.Rectangle;
  * data structure that stores a set of rectangles. Given another rectangle, this
  * data structure allows retrieving all rectangles that intersect this
  * rectangle.
+ *
+ * Rectangles can be added, removed and moved after the map was created. These
+ * updates only touch the cells covered by the new position; rectangles that lie
+ * completely outside of the grid are kept in an overflow bucket. The map is
+ * compacted (and the grid fitted to the rectangles again) once the updates have
+ * accumulated enough stale or overflowing entries. Updates must not run
+ * concurrently with queries.
  */
-public class CollisionMap {
+public class CollisionMap implements BroadPhase {
 
     // If the resolution of the grid is not specified by the user we use this
     // default resolution.
     private static final int GRID_RESOLUTION_X = 100;
     private static final int GRID_RESOLUTION_Y = 100;
 
+    // Limits for the adaptive resolution, see createAdaptive.
+    private static final int MAX_ADAPTIVE_RESOLUTION = 4096;
+    private static final long MAX_ADAPTIVE_CELLS = 1 << 22;
+
+    // Number of row bands per worker thread of a parallel all-pairs search.
+    private static final int BANDS_PER_THREAD = 4;
+
+    // Updates compact the map once this many cell entries are stale or
+    // inserted (or half of the compacted entries, if that is more), or once
+    // this many rectangles are in the overflow bucket (or a sixteenth of all
+    // rectangles, if that is more).
+    private static final int COMPACT_MIN_ENTRIES = 1024;
+    private static final int COMPACT_MIN_OVERFLOW = 64;
+
+    // Initial capacity of the entry list of a cell that receives a rectangle
+    // after the map was created.
+    private static final int INITIAL_INSERTED_CAPACITY = 4;
+
+    /**
+     * The entry lists of the cells that received a rectangle since the map was
+     * compacted, in a hash table with open addressing keyed by the cell index.
+     * Its size is proportional to the number of these cells and not to the
+     * number of cells of the grid.
+     */
+    private static final class InsertedCells {
+
+        private static final int INITIAL_CAPACITY = 16;
+        private static final int NO_CELL = -1;
+
+        /**
+         * The cell of each slot, or NO_CELL for a free slot
+         */
+        private int[] cells;
+
+        /**
+         * The first <code>counts[slot]</code> entries of
+         * <code>entries[slot]</code> are the rectangle indices of the cell of the
+         * slot
+         */
+        private int[][] entries;
+        private int[] counts;
+        private int size;
+
+        InsertedCells() {
+            allocate(INITIAL_CAPACITY);
+        }
+
+        /**
+         * @return the slot of the cell, or -1 if no rectangle was inserted into
+         *         it
+         */
+        int slot(final int cell) {
+            final int mask = this.cells.length - 1;
+            for (int slot = hash(cell) & mask;; slot = (slot + 1) & mask) {
+                if (this.cells[slot] == cell) {
+                    return slot;
+                }
+                if (this.cells[slot] == NO_CELL) {
+                    return -1;
+                }
+            }
+        }
+
+        void add(final int cell, final int index) {
+            int slot = slot(cell);
+            if (slot < 0) {
+                if (2 * (this.size + 1) > this.cells.length) {
+                    rehash();
+                }
+                final int mask = this.cells.length - 1;
+                slot = hash(cell) & mask;
+                while (this.cells[slot] != NO_CELL) {
+                    slot = (slot + 1) & mask;
+                }
+                this.cells[slot] = cell;
+                this.entries[slot] = new int[INITIAL_INSERTED_CAPACITY];
+                ++this.size;
+            } else if (this.counts[slot] == this.entries[slot].length) {
+                this.entries[slot] = Arrays.copyOf(this.entries[slot], 2 * this.counts[slot]);
+            }
+            this.entries[slot][this.counts[slot]++] = index;
+        }
+
+        private void rehash() {
+            final int[] cells = this.cells;
+            final int[][] entries = this.entries;
+            final int[] counts = this.counts;
+            allocate(2 * cells.length);
+            final int mask = this.cells.length - 1;
+            for (int old = 0; old < cells.length; ++old) {
+                if (cells[old] != NO_CELL) {
+                    int slot = hash(cells[old]) & mask;
+                    while (this.cells[slot] != NO_CELL) {
+                        slot = (slot + 1) & mask;
+                    }
+                    this.cells[slot] = cells[old];
+                    this.entries[slot] = entries[old];
+                    this.counts[slot] = counts[old];
+                }
+            }
+        }
+
+        private void allocate(final int capacity) {
+            this.cells = new int[capacity];
+            Arrays.fill(this.cells, NO_CELL);
+            this.entries = new int[capacity][];
+            this.counts = new int[capacity];
+        }
+
+        private static int hash(final int cell) {
+            final int hash = cell * 0x9E3779B9;
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    /**
+     * Rectangle that encapsulates all rectangles in the collision map when it
+     * was created or last compacted.
+     */
+    private Rectangle gridRectangle;
+
+    /**
+     * Number of cells in x direction
+     */
+    private int gridResolutionX;
+
+    /**
+     * Number of cells in y direction
+     */
+    private int gridResolutionY;
+
     /**
-     * Rectangle that encapsulates all rectangles in the collision map.
+     * The rectangles in the collision map. The cells refer to a rectangle by its
+     * index in this array. A removed rectangle leaves a null entry until the map
+     * is compacted.
      */
-    private final Rectangle gridRectangle;
+    private Rectangle[] rectangles;
 
     /**
-     * A two-dimensional array of {@link java.util.List} serves as the data
-     * structure for storing the rectangles. Each element of the array holds a list
-     * of rectangles. At the same time, each element of the array is associated with
-     * an area of the bounding rectangle {@link CollisionMap.gridRectangle} through
-     * the transform methods ({@link CollisionMap.transformX} and
-     * {@link CollisionMap.transformY}. These areas are called cells.
+     * Number of indices in {@link CollisionMap.rectangles} that are in use,
+     * including removed ones
      */
-    private List<Rectangle>[][] map;
+    private int rectangleCount;
+
+    /**
+     * The index of every rectangle in the collision map
+     */
+    private final Map<Rectangle, Integer> indices = new IdentityHashMap<>();
+
+    /**
+     * The cells are stored in compressed sparse row layout: cell (x, y) has the
+     * index <code>y * gridResolutionX + x</code> and holds the rectangles
+     * <code>rectangles[cellEntries[i]]</code> for
+     * <code>cellOffsets[cell] <= i < cellOffsets[cell + 1]</code>. Each element
+     * of the grid is associated with an area of the bounding rectangle
+     * {@link CollisionMap.gridRectangle} through the transform methods
+     * ({@link CollisionMap.gridX} and {@link CollisionMap.gridY}). These areas
+     * are called cells.
+     */
+    private int[] cellOffsets;
+
+    /**
+     * Rectangle indices of all cells, see {@link CollisionMap.cellOffsets}
+     */
+    private int[] cellEntries;
+
+    /**
+     * Rectangle indices added to the cells since the map was compacted, null
+     * until the first insertion
+     */
+    private InsertedCells insertedCells;
+
+    /**
+     * Number of cell entries in {@link CollisionMap.insertedCells}
+     */
+    private int insertedEntryCount;
+
+    /**
+     * Number of cell entries that refer to a removed rectangle
+     */
+    private int staleEntryCount;
+
+    /**
+     * Indices of the rectangles that do not intersect the grid rectangle, the
+     * first {@link CollisionMap.overflowCount} entries. Removed rectangles are
+     * dropped from the bucket at once.
+     */
+    private int[] overflow;
+    private int overflowCount;
+
+    /**
+     * Bounds of all rectangles stored in the cells. Rectangles added after the
+     * map was created may reach beyond the grid rectangle; they are clamped to
+     * the border cells.
+     */
+    private float storedMinX;
+    private float storedMinY;
+    private float storedMaxX;
+    private float storedMaxY;
+
+    /**
+     * The cells covered by each rectangle as first x, last x, first y and last y
+     * cell index at 4 * index to 4 * index + 3. The first x cell index is -1 if
+     * the rectangle is in the overflow bucket; then the position of the
+     * rectangle in the bucket is stored at 4 * index + 1.
+     */
+    private int[] cellRanges;
+
+    /**
+     * The cell containing the upper left corner of each rectangle, as x and y
+     * cell index at 2 * index and 2 * index + 1. If two rectangles intersect,
+     * the upper left corner of their intersection lies in the cell
+     * <code>(max(anchorX1, anchorX2), max(anchorY1, anchorY2))</code>, which
+     * both rectangles cover. Testing a pair only in this cell tests it exactly
+     * once, without remembering which rectangles were already tested. As the
+     * coordinates are clamped to the grid, this also holds for rectangles that
+     * reach beyond it.
+     */
+    private int[] anchorCells;
+
+    /**
+     * Receives the counts of the collision queries, or null if they are not
+     * recorded
+     */
+    private CollisionMapMetrics metrics = null;
 
     /**
      * Creates a {@link CollisionMap} from a set of rectangles.
@@ -61,78 +284,454 @@ public class CollisionMap {
         }
         this.gridRectangle = Rectangle.getBoundingBox(rectangles);
         generateCollisionMap(gridResolutionX, gridResolutionY);
-        try {
-            fillCollisionMap(rectangles);
-        } catch (final CollisionMapOutOfBoundsException exception) {
-            exception.printStackTrace();
-        }
+        fillCollisionMap(rectangles.toArray(new Rectangle[0]));
     }
 
     
+    /**
+     * Creates a {@link CollisionMap} whose grid resolution is chosen from the
+     * rectangles. The grid aims at about one rectangle per cell, i.e. square
+     * cells with an area of the bounding rectangle divided by the number of
+     * rectangles. Along each axis a cell is made at least as large as the
+     * average extent of the rectangles on that axis, so that a typical
+     * rectangle covers at most two cells per axis. The resolution is computed
+     * per axis, so a wide bounding rectangle gets more columns than rows.
+     *
+     * @param rectangles that are placed in the collision map, must be != null
+     *                   and not empty
+     * @return the collision map, see {@link #getCellOccupancy()} for the result
+     * @throws IllegalArgumentException if rectangles is null, empty or contains
+     *                                  null
+     */
+    public static CollisionMap createAdaptive(final Set<Rectangle> rectangles) throws IllegalArgumentException {
+        final Rectangle bounds = Rectangle.getBoundingBox(rectangles);
+        double totalWidth = 0;
+        double totalHeight = 0;
+        for (final Rectangle rectangle : rectangles) {
+            totalWidth += rectangle.getWidth();
+            totalHeight += rectangle.getHeight();
+        }
+        final int count = rectangles.size();
+        final double cellSide = Math.sqrt((double) bounds.getWidth() * bounds.getHeight() / count);
+        final double cellWidth = Math.max(cellSide, totalWidth / count);
+        final double cellHeight = Math.max(cellSide, totalHeight / count);
+        int resolutionX = adaptiveResolution(bounds.getWidth() / cellWidth);
+        int resolutionY = adaptiveResolution(bounds.getHeight() / cellHeight);
+        while ((long) resolutionX * resolutionY > MAX_ADAPTIVE_CELLS) {
+            resolutionX = Math.max(1, resolutionX / 2);
+            resolutionY = Math.max(1, resolutionY / 2);
+        }
+        return new CollisionMap(rectangles, resolutionX, resolutionY);
+    }
+
+    private static int adaptiveResolution(final double cells) {
+        return (int) Math.max(1, Math.min(MAX_ADAPTIVE_RESOLUTION, Math.ceil(cells)));
+    }
+
+    /**
+     * Returns the number of cells in x direction.
+     *
+     * @return the grid resolution in x direction
+     */
+    public int getGridResolutionX() {
+        return this.gridResolutionX;
+    }
+
+    /**
+     * Returns the number of cells in y direction.
+     *
+     * @return the grid resolution in y direction
+     */
+    public int getGridResolutionY() {
+        return this.gridResolutionY;
+    }
+
+    /**
+     * Returns the number of rectangles in the collision map.
+     *
+     * @return the number of rectangles
+     */
+    @Override
+    public int size() {
+        return this.indices.size();
+    }
+
+    /**
+     * Checks whether the given rectangle (the same instance) is in the collision
+     * map.
+     *
+     * @param rectangle the rectangle to look for
+     * @return true if the rectangle is in the collision map
+     */
+    @Override
+    public boolean contains(final Rectangle rectangle) {
+        return this.indices.containsKey(rectangle);
+    }
+
+    /**
+     * Computes occupancy statistics of the cells. Rectangles in the overflow
+     * bucket count as rectangles but are not stored in any cell.
+     *
+     * @return the occupancy statistics
+     */
+    public CellOccupancy getCellOccupancy() {
+        int emptyCells = 0;
+        int maxEntries = 0;
+        long totalEntries = 0;
+        final int[] histogram = new int[Integer.SIZE];
+        for (int cell = 0; cell + 1 < this.cellOffsets.length; ++cell) {
+            int entries = liveEntries(this.cellEntries, this.cellOffsets[cell], this.cellOffsets[cell + 1]);
+            final int slot = this.insertedCells == null ? -1 : this.insertedCells.slot(cell);
+            if (slot >= 0) {
+                entries += liveEntries(this.insertedCells.entries[slot], 0, this.insertedCells.counts[slot]);
+            }
+            if (entries == 0) {
+                ++emptyCells;
+            }
+            maxEntries = Math.max(maxEntries, entries);
+            totalEntries += entries;
+            ++histogram[CellOccupancy.occupancyBucket(entries)];
+        }
+        return new CellOccupancy(this.gridResolutionX, this.gridResolutionY, size(), emptyCells, maxEntries,
+                totalEntries, Arrays.copyOf(histogram, CellOccupancy.occupancyBucket(maxEntries) + 1));
+    }
+
+    private int liveEntries(final int[] entries, final int from, final int to) {
+        int live = 0;
+        for (int i = from; i < to; ++i) {
+            if (this.rectangles[entries[i]] != null) {
+                ++live;
+            }
+        }
+        return live;
+    }
+
     /**
      * Fill this collision map with a set of rectangles. A rectangle is added to a
      * cell if it overlaps with it (that includes just touching it). Afterwards,
      * each cell of the collision map should contain all rectangles that cover the
      * cell.
      * 
-     * @param rectangles is a set of rectangles to insert, it must be != null
-     * @throws CollisionMapOutOfBoundsException if a rectangle is out of the bounds
-     *                                          of this rectangle
+     * The cells are filled in two passes: the first pass counts the rectangles
+     * per cell and turns the counts into offsets, the second pass writes the
+     * rectangle indices. Memory is thus proportional to the number of cell
+     * entries and not to the number of cells times a list overhead.
+     * 
+     * Rectangles that do not intersect the grid rectangle are put into the
+     * overflow bucket instead.
+     *
+     * @param rectangles are the rectangles to insert, it must be != null
      */
-    private void fillCollisionMap(Set<Rectangle> rectangles) throws CollisionMapOutOfBoundsException {
-        // TODO Insert code for assignment 5.2.a
+    private void fillCollisionMap(final Rectangle[] rectangles) {
+        this.rectangles = rectangles;
+        this.rectangleCount = rectangles.length;
+        this.cellRanges = new int[4 * rectangles.length];
+        this.anchorCells = new int[2 * rectangles.length];
+        this.overflow = new int[0];
+        this.storedMinX = this.gridRectangle.getX();
+        this.storedMinY = this.gridRectangle.getY();
+        this.storedMaxX = this.gridRectangle.getX() + this.gridRectangle.getWidth();
+        this.storedMaxY = this.gridRectangle.getY() + this.gridRectangle.getHeight();
+        final int[] counts = new int[this.gridResolutionX * this.gridResolutionY + 1];
+        for (int index = 0; index < rectangles.length; ++index) {
+            this.indices.put(rectangles[index], index);
+            if (!locate(rectangles[index], index)) {
+                addToOverflow(index);
+                continue;
+            }
+            for (int y = this.cellRanges[4 * index + 2]; y <= this.cellRanges[4 * index + 3]; ++y) {
+                for (int x = this.cellRanges[4 * index]; x <= this.cellRanges[4 * index + 1]; ++x) {
+                    ++counts[y * this.gridResolutionX + x + 1];
+                }
+            }
+        }
+        for (int cell = 1; cell < counts.length; ++cell) {
+            counts[cell] += counts[cell - 1];
+        }
+        this.cellOffsets = counts;
+        this.cellEntries = new int[counts[counts.length - 1]];
+        final int[] next = Arrays.copyOf(counts, counts.length - 1);
+        for (int index = 0; index < rectangles.length; ++index) {
+            if (this.cellRanges[4 * index] < 0) {
+                continue;
+            }
+            for (int y = this.cellRanges[4 * index + 2]; y <= this.cellRanges[4 * index + 3]; ++y) {
+                for (int x = this.cellRanges[4 * index]; x <= this.cellRanges[4 * index + 1]; ++x) {
+                    this.cellEntries[next[y * this.gridResolutionX + x]++] = index;
+                }
+            }
+        }
     }
-    
-    
+
     /**
-     * Given a rectangle, this method returns a set of potential colliding
-     * rectangles (rectangles in the same cells).
+     * Computes the cells covered by a rectangle and its anchor cell, see
+     * {@link CollisionMap.cellRanges} and {@link CollisionMap.anchorCells}. The
+     * coordinates of the rectangle are clamped to the grid rectangle.
      *
-     * @param rectangle  the rectangle to test overlap with must be != null
-     * @return a set with all Rectangles that possibly overlap with rectangle
-     * @throws CollisionMapOutOfBoundsException if the rectangle is out of the
-     *                                          bounding box for this CollisionMap
+     * @param rectangle the rectangle
+     * @param index     the index under which the cells are stored
+     * @return false if the rectangle does not intersect the grid rectangle and
+     *         belongs into the overflow bucket
      */
-    private Set<Rectangle> getCollisionCandidates(final Rectangle rectangle) throws CollisionMapOutOfBoundsException {
-        // TODO Insert code for assignment 5.2.b
-        return null;}
+    private boolean locate(final Rectangle rectangle, final int index) {
+        if (!this.gridRectangle.intersects(rectangle)) {
+            this.cellRanges[4 * index] = -1;
+            return false;
+        }
+        final float left = gridX(rectangle.getX());
+        final float top = gridY(rectangle.getY());
+        this.cellRanges[4 * index] = firstCell(left, this.gridResolutionX);
+        this.cellRanges[4 * index + 1] = lastCell(gridX(rectangle.getX() + rectangle.getWidth()),
+                this.gridResolutionX);
+        this.cellRanges[4 * index + 2] = firstCell(top, this.gridResolutionY);
+        this.cellRanges[4 * index + 3] = lastCell(gridY(rectangle.getY() + rectangle.getHeight()),
+                this.gridResolutionY);
+        this.anchorCells[2 * index] = lastCell(left, this.gridResolutionX);
+        this.anchorCells[2 * index + 1] = lastCell(top, this.gridResolutionY);
+        return true;
+    }
 
-   
+    /**
+     * Adds a rectangle to the collision map. Only the cells covered by the
+     * rectangle are touched; if it does not intersect the grid rectangle, it is
+     * put into the overflow bucket.
+     *
+     * @param rectangle the rectangle to add, must be != null
+     * @return false if the rectangle (the same instance) already is in the
+     *         collision map
+     * @throws IllegalArgumentException if rectangle is null
+     */
+    @Override
+    public boolean add(final Rectangle rectangle) {
+        if (rectangle == null) {
+            throw new IllegalArgumentException("rectangle is null");
+        }
+        if (this.indices.containsKey(rectangle)) {
+            return false;
+        }
+        insert(rectangle);
+        compactIfNeeded();
+        return true;
+    }
 
     /**
-     * Transform a x coordinate from rectangle space to the internal space of the
-     * {@link CollisionMap}. For accessing specific cells of the grid the return
-     * value must be rounded and cast appropriately.
-     * 
-     * @param x coordinate of a point
-     * @return x coordinate of given point in the internal space
-     * @throws CollisionMapOutOfBoundsException if x is too low or too high
+     * Removes a rectangle from the collision map. The cell entries of the
+     * rectangle are left in place and skipped until the map is compacted; a
+     * rectangle in the overflow bucket is dropped from the bucket at once.
+     *
+     * @param rectangle the rectangle (the same instance) to remove
+     * @return false if the rectangle is not in the collision map
      */
-    private float transformX(final float x) throws CollisionMapOutOfBoundsException {
-        if (x < this.gridRectangle.getX() || x > this.gridRectangle.getX() + this.gridRectangle.getWidth()) {
-            throw new CollisionMapOutOfBoundsException("x coordinate is outside the defined range.");
-        } else {
-            return ((x - this.gridRectangle.getX()) / this.gridRectangle.getWidth()) * map[0].length;
+    @Override
+    public boolean remove(final Rectangle rectangle) {
+        final Integer index = this.indices.remove(rectangle);
+        if (index == null) {
+            return false;
         }
+        release(index);
+        compactIfNeeded();
+        return true;
     }
 
     /**
-     * Transform a y coordinate from rectangle space to the internal space of the
-     * {@link CollisionMap}. For accessing specific cells of the grid the return
-     * value must be rounded and cast appropriately.
-     * 
-     * @param y coordinate of a point
-     * @return y coordinate of given point in the internal space
-     * @throws CollisionMapOutOfBoundsException if y is too low or too high
+     * Replaces a rectangle of the collision map by the rectangle at its new
+     * position. If the new position covers the same cells as the old one, only
+     * the reference to the rectangle is replaced; otherwise the old rectangle is
+     * removed and the new one added.
+     *
+     * @param rectangle the rectangle (the same instance) to replace
+     * @param moved     the rectangle at the new position, must be != null and
+     *                  must not be in the collision map
+     * @return false if rectangle is not in the collision map
+     * @throws IllegalArgumentException if moved is null or already in the
+     *                                  collision map
+     */
+    @Override
+    public boolean move(final Rectangle rectangle, final Rectangle moved) {
+        if (moved == null || (moved != rectangle && this.indices.containsKey(moved))) {
+            throw new IllegalArgumentException("moved is null or already in the collision map");
+        }
+        final Integer boxed = this.indices.remove(rectangle);
+        if (boxed == null) {
+            return false;
+        }
+        final int index = boxed;
+        final int firstX = this.cellRanges[4 * index];
+        final int lastX = this.cellRanges[4 * index + 1];
+        final int firstY = this.cellRanges[4 * index + 2];
+        final int lastY = this.cellRanges[4 * index + 3];
+        final boolean located = locate(moved, index);
+        if (located ? firstX == this.cellRanges[4 * index] && lastX == this.cellRanges[4 * index + 1]
+                && firstY == this.cellRanges[4 * index + 2] && lastY == this.cellRanges[4 * index + 3]
+                : firstX < 0) {
+            this.rectangles[index] = moved;
+            this.indices.put(moved, index);
+            if (located) {
+                includeInStoredBounds(moved);
+            }
+            return true;
+        }
+        this.cellRanges[4 * index] = firstX;
+        this.cellRanges[4 * index + 1] = lastX;
+        this.cellRanges[4 * index + 2] = firstY;
+        this.cellRanges[4 * index + 3] = lastY;
+        release(index);
+        insert(moved);
+        compactIfNeeded();
+        return true;
+    }
+
+    /**
+     * Stores a rectangle under a new index.
      */
-    private float transformY(float y) throws CollisionMapOutOfBoundsException {
-        if (y < this.gridRectangle.getY() || y > this.gridRectangle.getY() + this.gridRectangle.getHeight()) {
-            throw new CollisionMapOutOfBoundsException("y coordinate is outside the defined range.");
-        } else {
-            return ((y - this.gridRectangle.getY()) / this.gridRectangle.getHeight()) * map.length;
+    private void insert(final Rectangle rectangle) {
+        if (this.rectangleCount == this.rectangles.length) {
+            final int capacity = Math.max(16, this.rectangleCount + (this.rectangleCount >> 1));
+            this.rectangles = Arrays.copyOf(this.rectangles, capacity);
+            this.cellRanges = Arrays.copyOf(this.cellRanges, 4 * capacity);
+            this.anchorCells = Arrays.copyOf(this.anchorCells, 2 * capacity);
+        }
+        final int index = this.rectangleCount++;
+        this.rectangles[index] = rectangle;
+        this.indices.put(rectangle, index);
+        if (!locate(rectangle, index)) {
+            addToOverflow(index);
+            return;
+        }
+        includeInStoredBounds(rectangle);
+        if (this.insertedCells == null) {
+            this.insertedCells = new InsertedCells();
+        }
+        for (int y = this.cellRanges[4 * index + 2]; y <= this.cellRanges[4 * index + 3]; ++y) {
+            for (int x = this.cellRanges[4 * index]; x <= this.cellRanges[4 * index + 1]; ++x) {
+                this.insertedCells.add(y * this.gridResolutionX + x, index);
+                ++this.insertedEntryCount;
+            }
         }
     }
 
+    /**
+     * Marks the cell entries of a rectangle as stale, or drops the rectangle
+     * from the overflow bucket by moving the last rectangle of the bucket into
+     * its position.
+     */
+    private void release(final int index) {
+        this.rectangles[index] = null;
+        if (this.cellRanges[4 * index] >= 0) {
+            this.staleEntryCount += (this.cellRanges[4 * index + 1] - this.cellRanges[4 * index] + 1)
+                    * (this.cellRanges[4 * index + 3] - this.cellRanges[4 * index + 2] + 1);
+            return;
+        }
+        final int position = this.cellRanges[4 * index + 1];
+        final int last = this.overflow[--this.overflowCount];
+        this.overflow[position] = last;
+        this.cellRanges[4 * last + 1] = position;
+    }
+
+    private void addToOverflow(final int index) {
+        if (this.overflowCount == this.overflow.length) {
+            this.overflow = Arrays.copyOf(this.overflow, Math.max(16, 2 * this.overflowCount));
+        }
+        this.cellRanges[4 * index + 1] = this.overflowCount;
+        this.overflow[this.overflowCount++] = index;
+    }
+
+    private void includeInStoredBounds(final Rectangle rectangle) {
+        this.storedMinX = Math.min(this.storedMinX, rectangle.getX());
+        this.storedMinY = Math.min(this.storedMinY, rectangle.getY());
+        this.storedMaxX = Math.max(this.storedMaxX, rectangle.getX() + rectangle.getWidth());
+        this.storedMaxY = Math.max(this.storedMaxY, rectangle.getY() + rectangle.getHeight());
+    }
+
+    private void compactIfNeeded() {
+        if (this.insertedEntryCount + this.staleEntryCount > Math.max(COMPACT_MIN_ENTRIES,
+                this.cellEntries.length / 2)
+                || this.overflowCount > Math.max(COMPACT_MIN_OVERFLOW, this.indices.size() / 16)) {
+            compact();
+        }
+    }
+
+    /**
+     * Rebuilds the cells from the rectangles in the collision map. The grid
+     * rectangle is fitted to the rectangles (the grid resolution is kept), so
+     * the overflow bucket becomes empty, and the entries of removed rectangles
+     * are dropped. This happens automatically once updates have accumulated
+     * enough stale or overflowing entries.
+     */
+    public void compact() {
+        final Rectangle[] live = new Rectangle[this.indices.size()];
+        int count = 0;
+        for (int index = 0; index < this.rectangleCount; ++index) {
+            if (this.rectangles[index] != null) {
+                live[count++] = this.rectangles[index];
+            }
+        }
+        if (count > 0) {
+            this.gridRectangle = Rectangle.getBoundingBox(Arrays.asList(live));
+        }
+        this.indices.clear();
+        this.insertedCells = null;
+        this.insertedEntryCount = 0;
+        this.staleEntryCount = 0;
+        this.overflowCount = 0;
+        fillCollisionMap(live);
+    }
+    
+    
+    /**
+     * Computes the first cell touched by an interval starting at the given
+     * transformed coordinate. A start exactly on a cell border also touches the
+     * cell before the border.
+     *
+     * @param transformed the transformed coordinate, within [0, resolution]
+     * @param resolution  the number of cells along the axis
+     * @return the index of the first cell
+     */
+    private static int firstCell(final float transformed, final int resolution) {
+        return Math.min(resolution - 1, Math.max(0, (int) Math.ceil(transformed) - 1));
+    }
+
+    /**
+     * Computes the last cell touched by an interval ending at the given
+     * transformed coordinate. An end exactly on a cell border also touches the
+     * cell after the border.
+     *
+     * @param transformed the transformed coordinate, within [0, resolution]
+     * @param resolution  the number of cells along the axis
+     * @return the index of the last cell
+     */
+    private static int lastCell(final float transformed, final int resolution) {
+        return Math.min(resolution - 1, Math.max(0, (int) transformed));
+    }
+
+    /**
+     * Clamps a coordinate to the extent of the grid along one axis.
+     */
+    private static float clamp(final float value, final float min, final float extent) {
+        return Math.max(min, Math.min(min + extent, value));
+    }
+
+    /**
+     * Transforms a x coordinate from rectangle space to the internal space of
+     * the {@link CollisionMap}, clamped to the grid rectangle. For accessing
+     * specific cells of the grid the return value must be rounded and cast
+     * appropriately.
+     */
+    private float gridX(final float x) {
+        final float clamped = clamp(x, this.gridRectangle.getX(), this.gridRectangle.getWidth());
+        return ((clamped - this.gridRectangle.getX()) / this.gridRectangle.getWidth()) * this.gridResolutionX;
+    }
+   
+    /**
+     * Transforms a y coordinate from rectangle space to the internal space of
+     * the {@link CollisionMap}, clamped to the grid rectangle, see
+     * {@link CollisionMap.gridX}.
+     */
+    private float gridY(final float y) {
+        final float clamped = clamp(y, this.gridRectangle.getY(), this.gridRectangle.getHeight());
+        return ((clamped - this.gridRectangle.getY()) / this.gridRectangle.getHeight()) * this.gridResolutionY;
+    }
+
     /**
      * Check if the given rectangle collides with rectangles in the
      * {@link CollisionMap}.
@@ -142,10 +741,290 @@ public class CollisionMap {
      *         collision map.
      * @throws IllegalArgumentException if rectangle is null
      */
+    @Override
     public boolean collide(final Rectangle rectangle) {
-        // TODO Insert code for assignment 5.2.c
-        //nicht richtig einfach kb auf fehlermeldung
-        return true;
+        if (rectangle == null) {
+            throw new IllegalArgumentException("rectangle is null");
+        }
+        final CollisionMapMetrics metrics = this.metrics;
+        if (metrics == null) {
+            return visitCells(rectangle, null, null) > 0 || visitOverflow(rectangle, 0, null, null) > 0;
+        }
+        final CollisionMapMetrics.Trace trace = new CollisionMapMetrics.Trace();
+        final boolean collides = visitCells(rectangle, null, trace) > 0
+                || visitOverflow(rectangle, 0, null, trace) > 0;
+        trace.hits = collides ? 1 : 0;
+        metrics.record(trace);
+        return collides;
+    }
+
+    /**
+     * Passes every rectangle in the {@link CollisionMap} that intersects the
+     * given rectangle to the consumer, each exactly once. No set of candidates
+     * is built: a stored rectangle is only tested in the cell that contains the
+     * upper left corner of its potential intersection with the given rectangle.
+     * 
+     * @param rectangle the rectangle to check for collision
+     * @param consumer  receives the intersecting rectangles, must be != null
+     * @return the number of intersecting rectangles
+     * @throws IllegalArgumentException if any parameter is null
+     */
+    @Override
+    public int forEachCollision(final Rectangle rectangle, final Consumer<? super Rectangle> consumer) {
+        if (rectangle == null || consumer == null) {
+            throw new IllegalArgumentException("rectangle or consumer is null");
+        }
+        final CollisionMapMetrics metrics = this.metrics;
+        if (metrics == null) {
+            return visitCells(rectangle, consumer, null) + visitOverflow(rectangle, 0, consumer, null);
+        }
+        final CollisionMapMetrics.Trace trace = new CollisionMapMetrics.Trace();
+        trace.hits = visitCells(rectangle, consumer, trace) + visitOverflow(rectangle, 0, consumer, trace);
+        metrics.record(trace);
+        return trace.hits;
+    }
+
+    /**
+     * Records the work of {@link #collide(Rectangle)} and
+     * {@link #forEachCollision(Rectangle, Consumer)} in the given metrics from
+     * now on. Without metrics a query only pays for a null check per cell and
+     * candidate.
+     *
+     * @param metrics receives the counts, or null to stop recording
+     */
+    public void setMetrics(final CollisionMapMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the metrics that record the collision queries.
+     *
+     * @return the metrics, or null if the queries are not recorded
+     */
+    public CollisionMapMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Tests the given rectangle against the stored rectangles in the cells it
+     * covers, see {@link CollisionMap.anchorCells}.
+     * 
+     * @param rectangle the rectangle to check for collision
+     * @param consumer  receives the intersecting rectangles, or null to stop at
+     *                  the first one
+     * @param trace     receives the counts of the query, or null
+     * @return the number of intersecting rectangles found
+     */
+    private int visitCells(final Rectangle rectangle, final Consumer<? super Rectangle> consumer,
+            final CollisionMapMetrics.Trace trace) {
+        if (rectangle.getX() > this.storedMaxX || rectangle.getX() + rectangle.getWidth() < this.storedMinX
+                || rectangle.getY() > this.storedMaxY || rectangle.getY() + rectangle.getHeight() < this.storedMinY) {
+            return 0;
+        }
+        final float left = gridX(rectangle.getX());
+        final float top = gridY(rectangle.getY());
+        final int firstX = firstCell(left, this.gridResolutionX);
+        final int lastX = lastCell(gridX(rectangle.getX() + rectangle.getWidth()), this.gridResolutionX);
+        final int firstY = firstCell(top, this.gridResolutionY);
+        final int lastY = lastCell(gridY(rectangle.getY() + rectangle.getHeight()), this.gridResolutionY);
+        final int anchorX = lastCell(left, this.gridResolutionX);
+        final int anchorY = lastCell(top, this.gridResolutionY);
+        int collisions = 0;
+        for (int y = firstY; y <= lastY; ++y) {
+            final int rowStart = y * this.gridResolutionX;
+            for (int x = firstX; x <= lastX; ++x) {
+                final int cell = rowStart + x;
+                if (trace != null) {
+                    ++trace.cellsTouched;
+                }
+                collisions = visitEntries(this.cellEntries, this.cellOffsets[cell], this.cellOffsets[cell + 1], x, y,
+                        anchorX, anchorY, rectangle, consumer, collisions, trace);
+                final int slot = this.insertedCells == null ? -1 : this.insertedCells.slot(cell);
+                if (slot >= 0) {
+                    collisions = visitEntries(this.insertedCells.entries[slot], 0, this.insertedCells.counts[slot],
+                            x, y, anchorX, anchorY, rectangle, consumer, collisions, trace);
+                }
+                if (consumer == null && collisions > 0) {
+                    return collisions;
+                }
+            }
+        }
+        return collisions;
+    }
+
+    /**
+     * Tests the given rectangle against the entries [from, to) of cell (x, y).
+     *
+     * @return the number of intersecting rectangles found so far
+     */
+    private int visitEntries(final int[] entries, final int from, final int to, final int x, final int y,
+            final int anchorX, final int anchorY, final Rectangle rectangle, final Consumer<? super Rectangle> consumer,
+            int collisions, final CollisionMapMetrics.Trace trace) {
+        for (int i = from; i < to; ++i) {
+            final int index = entries[i];
+            final Rectangle candidate = this.rectangles[index];
+            if (trace != null && candidate != null) {
+                ++trace.candidatesTested;
+            }
+            if (candidate == null || Math.max(anchorX, this.anchorCells[2 * index]) != x
+                    || Math.max(anchorY, this.anchorCells[2 * index + 1]) != y || !candidate.intersects(rectangle)) {
+                continue;
+            }
+            ++collisions;
+            if (consumer == null) {
+                return collisions;
+            }
+            consumer.accept(candidate);
+        }
+        return collisions;
+    }
+
+    /**
+     * Tests the given rectangle against the rectangles in the overflow bucket,
+     * starting with the given position in the bucket.
+     *
+     * @param consumer receives the intersecting rectangles, or null to stop at
+     *                 the first one
+     * @param trace    receives the counts of the query, or null
+     * @return the number of intersecting rectangles found
+     */
+    private int visitOverflow(final Rectangle rectangle, final int from, final Consumer<? super Rectangle> consumer,
+            final CollisionMapMetrics.Trace trace) {
+        int collisions = 0;
+        for (int i = from; i < this.overflowCount; ++i) {
+            final Rectangle candidate = this.rectangles[this.overflow[i]];
+            if (trace != null) {
+                ++trace.candidatesTested;
+            }
+            if (candidate.intersects(rectangle)) {
+                ++collisions;
+                if (consumer == null) {
+                    return collisions;
+                }
+                consumer.accept(candidate);
+            }
+        }
+        return collisions;
+    }
+
+    /**
+     * Finds all pairs of intersecting rectangles in the {@link CollisionMap}.
+     * Every cell is visited once and the rectangles within a cell are tested
+     * against each other; a pair is only tested in the cell that contains the
+     * upper left corner of its potential intersection (see
+     * {@link CollisionMap.anchorCells}), so each intersecting pair is reported
+     * exactly once. Rectangles in the overflow bucket are queried against the
+     * cells and the rest of the bucket.
+     * 
+     * @param consumer receives the intersecting pairs, must be != null
+     * @return the number of intersecting pairs
+     * @throws IllegalArgumentException if consumer is null
+     */
+    @Override
+    public long forEachCollidingPair(final CollisionPairConsumer consumer) {
+        if (consumer == null) {
+            throw new IllegalArgumentException("consumer is null");
+        }
+        return collidingPairs(0, this.gridResolutionY, consumer) + overflowPairs(consumer);
+    }
+
+    /**
+     * Finds all pairs of intersecting rectangles like
+     * {@link #forEachCollidingPair(CollisionPairConsumer)}, but splits the grid
+     * into bands of rows that are processed concurrently in the given pool.
+     * 
+     * @param consumer receives the intersecting pairs from several threads at
+     *                 once, must be != null and thread-safe
+     * @param pool     the pool that processes the bands, must be != null
+     * @return the number of intersecting pairs
+     * @throws IllegalArgumentException if any parameter is null
+     */
+    public long forEachCollidingPair(final CollisionPairConsumer consumer, final ForkJoinPool pool) {
+        if (consumer == null || pool == null) {
+            throw new IllegalArgumentException("consumer or pool is null");
+        }
+        final int bands = Math.min(this.gridResolutionY, BANDS_PER_THREAD * pool.getParallelism());
+        final List<ForkJoinTask<Long>> tasks = new ArrayList<>(bands);
+        for (int band = 0; band < bands; ++band) {
+            final int firstRow = (int) ((long) this.gridResolutionY * band / bands);
+            final int endRow = (int) ((long) this.gridResolutionY * (band + 1) / bands);
+            tasks.add(pool.submit(() -> collidingPairs(firstRow, endRow, consumer)));
+        }
+        long pairs = overflowPairs(consumer);
+        for (final ForkJoinTask<Long> task : tasks) {
+            pairs += task.join();
+        }
+        return pairs;
+    }
+
+    /**
+     * Reports the intersecting pairs whose reference cell lies in the rows
+     * [firstRow, endRow).
+     */
+    private long collidingPairs(final int firstRow, final int endRow, final CollisionPairConsumer consumer) {
+        long pairs = 0;
+        for (int y = firstRow; y < endRow; ++y) {
+            for (int x = 0; x < this.gridResolutionX; ++x) {
+                final int cell = y * this.gridResolutionX + x;
+                final int start = this.cellOffsets[cell];
+                final int end = this.cellOffsets[cell + 1];
+                pairs += cellPairs(this.cellEntries, start, end, this.cellEntries, start, end, x, y, consumer);
+                final int slot = this.insertedCells == null ? -1 : this.insertedCells.slot(cell);
+                if (slot >= 0) {
+                    final int[] inserted = this.insertedCells.entries[slot];
+                    final int count = this.insertedCells.counts[slot];
+                    pairs += cellPairs(this.cellEntries, start, end, inserted, 0, count, x, y, consumer);
+                    pairs += cellPairs(inserted, 0, count, inserted, 0, count, x, y, consumer);
+                }
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Reports the intersecting pairs of cell (x, y) with one rectangle from
+     * <code>first[firstFrom, firstTo)</code> and the other one from
+     * <code>second[secondFrom, secondTo)</code>. If both ranges are the same,
+     * every unordered pair is tested once.
+     */
+    private long cellPairs(final int[] first, final int firstFrom, final int firstTo, final int[] second,
+            final int secondFrom, final int secondTo, final int x, final int y, final CollisionPairConsumer consumer) {
+        final boolean sameRange = first == second && firstFrom == secondFrom;
+        long pairs = 0;
+        for (int i = firstFrom; i < firstTo; ++i) {
+            final int firstIndex = first[i];
+            final Rectangle firstRectangle = this.rectangles[firstIndex];
+            if (firstRectangle == null) {
+                continue;
+            }
+            final int firstAnchorX = this.anchorCells[2 * firstIndex];
+            final int firstAnchorY = this.anchorCells[2 * firstIndex + 1];
+            for (int j = sameRange ? i + 1 : secondFrom; j < secondTo; ++j) {
+                final int secondIndex = second[j];
+                final Rectangle secondRectangle = this.rectangles[secondIndex];
+                if (secondRectangle != null && Math.max(firstAnchorX, this.anchorCells[2 * secondIndex]) == x
+                        && Math.max(firstAnchorY, this.anchorCells[2 * secondIndex + 1]) == y
+                        && firstRectangle.intersects(secondRectangle)) {
+                    consumer.accept(firstRectangle, secondRectangle);
+                    ++pairs;
+                }
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Reports the intersecting pairs with at least one rectangle in the overflow
+     * bucket.
+     */
+    private long overflowPairs(final CollisionPairConsumer consumer) {
+        long pairs = 0;
+        for (int i = 0; i < this.overflowCount; ++i) {
+            final Rectangle rectangle = this.rectangles[this.overflow[i]];
+            final Consumer<Rectangle> pairConsumer = other -> consumer.accept(other, rectangle);
+            pairs += visitCells(rectangle, pairConsumer, null) + visitOverflow(rectangle, i + 1, pairConsumer, null);
+        }
+        return pairs;
     }
 
     /**
@@ -154,13 +1033,12 @@ public class CollisionMap {
      * @param gridResolutionX
      * @param gridResolutionY
      */
-    @SuppressWarnings("unchecked")
     private void generateCollisionMap(int gridResolutionX, int gridResolutionY) {
-        map = new ArrayList[gridResolutionY][gridResolutionX];
-        for (int y = 0; y < gridResolutionY; ++y) {
-            for (int x = 0; x < gridResolutionX; ++x) {
-                map[y][x] = new ArrayList<Rectangle>();
-            }
-        }
+        this.gridResolutionX = gridResolutionX;
+        this.gridResolutionY = gridResolutionY;
+        this.rectangles = new Rectangle[0];
+        this.anchorCells = new int[0];
+        this.cellOffsets = new int[gridResolutionX * gridResolutionY + 1];
+        this.cellEntries = new int[0];
     }
 }
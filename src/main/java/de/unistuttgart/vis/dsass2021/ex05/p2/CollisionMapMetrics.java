@@ -0,0 +1,97 @@
+package de.unistuttgart.vis.dsass2021.ex05.p2;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the work done by the collision queries of a {@link CollisionMap}, see
+ * {@link CollisionMap#setMetrics(CollisionMapMetrics)}. A query collects its
+ * counts in a {@link Trace} of its own and adds them once it is done; a map
+ * without metrics does not allocate a trace at all.
+ *
+ * Many candidates per hit mean that the cells are too large for the queried
+ * rectangles, many cells per query that they are too small;
+ * {@link CollisionMap#getCellOccupancy()} shows how the rectangles are spread
+ * over the cells.
+ */
+public final class CollisionMapMetrics implements CollisionMapMetricsMXBean {
+
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder cellsTouched = new LongAdder();
+    private final LongAdder candidatesTested = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAccumulator maxCandidatesTested = new LongAccumulator(Math::max, 0);
+
+    /**
+     * The counts of a single query. A trace is used by one thread only.
+     */
+    static final class Trace {
+
+        int cellsTouched;
+        int candidatesTested;
+        int hits;
+    }
+
+    /**
+     * Adds the counts of a finished query.
+     *
+     * @param trace the counts of the query
+     */
+    void record(final Trace trace) {
+        this.queries.increment();
+        this.cellsTouched.add(trace.cellsTouched);
+        this.candidatesTested.add(trace.candidatesTested);
+        this.hits.add(trace.hits);
+        this.maxCandidatesTested.accumulate(trace.candidatesTested);
+    }
+
+    @Override
+    public long getQueries() {
+        return this.queries.sum();
+    }
+
+    @Override
+    public long getCellsTouched() {
+        return this.cellsTouched.sum();
+    }
+
+    @Override
+    public long getCandidatesTested() {
+        return this.candidatesTested.sum();
+    }
+
+    @Override
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    @Override
+    public long getMaxCandidatesTested() {
+        return this.maxCandidatesTested.get();
+    }
+
+    /**
+     * Reads all counters. Queries that finish while the snapshot is taken may be
+     * counted in some counters only.
+     *
+     * @return the current values of the counters
+     */
+    public CollisionMapMetricsSnapshot snapshot() {
+        return new CollisionMapMetricsSnapshot(getQueries(), getCellsTouched(), getCandidatesTested(), getHits(),
+                getMaxCandidatesTested());
+    }
+
+    @Override
+    public void reset() {
+        this.queries.reset();
+        this.cellsTouched.reset();
+        this.candidatesTested.reset();
+        this.hits.reset();
+        this.maxCandidatesTested.reset();
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+}
@@ -0,0 +1,40 @@
+package de.unistuttgart.vis.dsass2021.ex05.p2;
+
+/**
+ * Management interface of {@link CollisionMapMetrics}. Register a metrics
+ * object with the platform MBean server to watch the queries of a collision
+ * map in a JMX console.
+ */
+public interface CollisionMapMetricsMXBean {
+
+    /**
+     * @return the number of collision queries
+     */
+    long getQueries();
+
+    /**
+     * @return the number of cells visited by the queries
+     */
+    long getCellsTouched();
+
+    /**
+     * @return the number of stored rectangles read from the cells and the
+     *         overflow bucket
+     */
+    long getCandidatesTested();
+
+    /**
+     * @return the number of intersecting rectangles found
+     */
+    long getHits();
+
+    /**
+     * @return the largest number of candidates tested by a single query
+     */
+    long getMaxCandidatesTested();
+
+    /**
+     * Sets all counters to zero.
+     */
+    void reset();
+}
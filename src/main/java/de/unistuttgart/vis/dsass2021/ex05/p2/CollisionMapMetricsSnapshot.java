@@ -0,0 +1,64 @@
+package de.unistuttgart.vis.dsass2021.ex05.p2;
+
+/**
+ * The counters of a {@link CollisionMapMetrics} at one point in time.
+ */
+public final class CollisionMapMetricsSnapshot {
+
+    private final long queries;
+    private final long cellsTouched;
+    private final long candidatesTested;
+    private final long hits;
+    private final long maxCandidatesTested;
+
+    CollisionMapMetricsSnapshot(final long queries, final long cellsTouched, final long candidatesTested,
+            final long hits, final long maxCandidatesTested) {
+        this.queries = queries;
+        this.cellsTouched = cellsTouched;
+        this.candidatesTested = candidatesTested;
+        this.hits = hits;
+        this.maxCandidatesTested = maxCandidatesTested;
+    }
+
+    public long getQueries() {
+        return this.queries;
+    }
+
+    public long getCellsTouched() {
+        return this.cellsTouched;
+    }
+
+    public long getCandidatesTested() {
+        return this.candidatesTested;
+    }
+
+    public long getHits() {
+        return this.hits;
+    }
+
+    public long getMaxCandidatesTested() {
+        return this.maxCandidatesTested;
+    }
+
+    /**
+     * @return the average number of cells visited by a query
+     */
+    public double getMeanCellsTouched() {
+        return this.queries == 0 ? 0 : (double) this.cellsTouched / this.queries;
+    }
+
+    /**
+     * @return the fraction of the tested candidates that intersected the query,
+     *         1 if no candidate was tested
+     */
+    public double getHitRatio() {
+        return this.candidatesTested == 0 ? 1 : (double) this.hits / this.candidatesTested;
+    }
+
+    @Override
+    public String toString() {
+        return "CollisionMapMetrics[queries=" + this.queries + ", cellsTouched=" + this.cellsTouched
+                + ", candidatesTested=" + this.candidatesTested + ", hits=" + this.hits + ", maxCandidatesTested="
+                + this.maxCandidatesTested + "]";
+    }
+}
@@ -1,11 +0,0 @@
-package de.unistuttgart.vis.dsass2021.ex05.p2;
-
-public class CollisionMapOutOfBoundsException extends Exception {
-
-  private static final long serialVersionUID = -2542892939719989802L;
-  
-  public CollisionMapOutOfBoundsException(String message) {
-    super(message);
-  }
-
-}
@@ -0,0 +1,19 @@
+package de.unistuttgart.vis.dsass2021.ex05.p2;
+
+import de.unistuttgart.vis.dsass2021.ex05.p1.Rectangle;
+
+/**
+ * Receives the pairs of intersecting rectangles found by an all-pairs
+ * collision search.
+ */
+@FunctionalInterface
+public interface CollisionPairConsumer {
+
+    /**
+     * Called once for every unordered pair of intersecting rectangles.
+     *
+     * @param first  one rectangle of the pair
+     * @param second the other rectangle of the pair
+     */
+    void accept(Rectangle first, Rectangle second);
+}
@@ -0,0 +1,318 @@
+package de.unistuttgart.vis.dsass2021.ex05.p2;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import de.unistuttgart.vis.dsass2021.ex05.p1.Rectangle;
+
+/**
+ * A broad phase that keeps the rectangles sorted by their left edge. Two
+ * rectangles can only intersect if the left edge of one lies within the x
+ * interval of the other, so the all-pairs search sweeps over the sorted
+ * rectangles and tests each one only against the following rectangles that
+ * start before it ends. Unlike the uniform grid of {@link CollisionMap} this
+ * does not depend on the size distribution of the rectangles.
+ *
+ * A moved rectangle is shifted to its new position in the order like a single
+ * step of insertion sort. As rectangles usually move only a little between two
+ * ticks, this costs far less than sorting again.
+ *
+ * The interval bounds are copied into float arrays in sorted order, so the
+ * sweep does not have to dereference the rectangles.
+ *
+ * Queries do not modify the structure and may run concurrently with each
+ * other. Updates must not run concurrently with queries.
+ */
+public class SweepAndPrune implements BroadPhase {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The rectangles sorted by their left edge
+     */
+    private Rectangle[] rectangles;
+
+    /**
+     * Bounds of the rectangles, in the same order
+     */
+    private float[] minX;
+    private float[] maxX;
+    private float[] minY;
+    private float[] maxY;
+
+    /**
+     * Number of stored rectangles
+     */
+    private int size;
+
+    /**
+     * Width of the widest rectangle; a query only has to look at rectangles
+     * whose left edge is at most this far left of its own
+     */
+    private double maxWidth;
+
+    /**
+     * Creates a {@link SweepAndPrune} from a set of rectangles.
+     *
+     * @param rectangles that are stored, must be != null and must not contain
+     *                   null
+     * @throws IllegalArgumentException if rectangles is null or contains null
+     */
+    public SweepAndPrune(final Set<Rectangle> rectangles) throws IllegalArgumentException {
+        if (rectangles == null || rectangles.contains(null)) {
+            throw new IllegalArgumentException("rectangles is null or contains null");
+        }
+        final Rectangle[] sorted = rectangles.toArray(new Rectangle[0]);
+        Arrays.sort(sorted, (first, second) -> Float.compare(first.getX(), second.getX()));
+        final int capacity = Math.max(INITIAL_CAPACITY, sorted.length);
+        this.rectangles = Arrays.copyOf(sorted, capacity);
+        this.minX = new float[capacity];
+        this.maxX = new float[capacity];
+        this.minY = new float[capacity];
+        this.maxY = new float[capacity];
+        this.size = sorted.length;
+        for (int slot = 0; slot < this.size; ++slot) {
+            store(slot, sorted[slot]);
+            this.maxWidth = Math.max(this.maxWidth, width(slot));
+        }
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public boolean contains(final Rectangle rectangle) {
+        return rectangle != null && find(rectangle) >= 0;
+    }
+
+    @Override
+    public boolean add(final Rectangle rectangle) {
+        if (rectangle == null) {
+            throw new IllegalArgumentException("rectangle is null");
+        }
+        if (find(rectangle) >= 0) {
+            return false;
+        }
+        if (this.size == this.rectangles.length) {
+            final int capacity = this.size + (this.size >> 1);
+            this.rectangles = Arrays.copyOf(this.rectangles, capacity);
+            this.minX = Arrays.copyOf(this.minX, capacity);
+            this.maxX = Arrays.copyOf(this.maxX, capacity);
+            this.minY = Arrays.copyOf(this.minY, capacity);
+            this.maxY = Arrays.copyOf(this.maxY, capacity);
+        }
+        final int slot = upperBound(rectangle.getX());
+        shift(slot, slot + 1, this.size - slot);
+        ++this.size;
+        store(slot, rectangle);
+        this.maxWidth = Math.max(this.maxWidth, width(slot));
+        return true;
+    }
+
+    @Override
+    public boolean remove(final Rectangle rectangle) {
+        final int slot = rectangle == null ? -1 : find(rectangle);
+        if (slot < 0) {
+            return false;
+        }
+        final boolean widest = width(slot) == this.maxWidth;
+        shift(slot + 1, slot, this.size - slot - 1);
+        this.rectangles[--this.size] = null;
+        if (widest) {
+            updateMaxWidth();
+        }
+        return true;
+    }
+
+    /**
+     * Replaces a rectangle by the rectangle at its new position and shifts it
+     * to its place in the order, which takes time proportional to the number of
+     * rectangles it passes. Only if the widest rectangle becomes narrower, all
+     * rectangles are scanned for the new maximum width.
+     */
+    @Override
+    public boolean move(final Rectangle rectangle, final Rectangle moved) {
+        if (moved == null || (moved != rectangle && find(moved) >= 0)) {
+            throw new IllegalArgumentException("moved is null or already stored");
+        }
+        int slot = rectangle == null ? -1 : find(rectangle);
+        if (slot < 0) {
+            return false;
+        }
+        final boolean widest = width(slot) == this.maxWidth;
+        final float left = moved.getX();
+        final int end = slot;
+        while (slot > 0 && this.minX[slot - 1] > left) {
+            --slot;
+        }
+        shift(slot, slot + 1, end - slot);
+        final int start = slot;
+        while (slot + 1 < this.size && this.minX[slot + 1] < left) {
+            ++slot;
+        }
+        shift(start + 1, start, slot - start);
+        store(slot, moved);
+        if (widest && width(slot) < this.maxWidth) {
+            updateMaxWidth();
+        } else {
+            this.maxWidth = Math.max(this.maxWidth, width(slot));
+        }
+        return true;
+    }
+
+    @Override
+    public boolean collide(final Rectangle rectangle) {
+        if (rectangle == null) {
+            throw new IllegalArgumentException("rectangle is null");
+        }
+        return visitCollisions(rectangle, null) > 0;
+    }
+
+    @Override
+    public int forEachCollision(final Rectangle rectangle, final Consumer<? super Rectangle> consumer) {
+        if (rectangle == null || consumer == null) {
+            throw new IllegalArgumentException("rectangle or consumer is null");
+        }
+        return visitCollisions(rectangle, consumer);
+    }
+
+    /**
+     * Tests the rectangles whose left edge lies in [left - maxWidth, right] of
+     * the given rectangle.
+     *
+     * @param consumer receives the intersecting rectangles, or null to stop at
+     *                 the first one
+     * @return the number of intersecting rectangles found
+     */
+    private int visitCollisions(final Rectangle rectangle, final Consumer<? super Rectangle> consumer) {
+        final float left = rectangle.getX();
+        final float right = rectangle.getX() + rectangle.getWidth();
+        final float top = rectangle.getY();
+        final float bottom = rectangle.getY() + rectangle.getHeight();
+        int collisions = 0;
+        for (int slot = lowerBound(left - this.maxWidth); slot < this.size && this.minX[slot] <= right; ++slot) {
+            if (this.maxX[slot] >= left && this.minY[slot] <= bottom && this.maxY[slot] >= top) {
+                ++collisions;
+                if (consumer == null) {
+                    return collisions;
+                }
+                consumer.accept(this.rectangles[slot]);
+            }
+        }
+        return collisions;
+    }
+
+    /**
+     * Finds all pairs of intersecting rectangles with a single sweep over the
+     * sorted rectangles. Each rectangle is only tested against the following
+     * rectangles whose left edge is not right of its right edge.
+     */
+    @Override
+    public long forEachCollidingPair(final CollisionPairConsumer consumer) {
+        if (consumer == null) {
+            throw new IllegalArgumentException("consumer is null");
+        }
+        long pairs = 0;
+        for (int first = 0; first < this.size; ++first) {
+            final float right = this.maxX[first];
+            final float top = this.minY[first];
+            final float bottom = this.maxY[first];
+            for (int second = first + 1; second < this.size && this.minX[second] <= right; ++second) {
+                if (this.minY[second] <= bottom && this.maxY[second] >= top) {
+                    consumer.accept(this.rectangles[first], this.rectangles[second]);
+                    ++pairs;
+                }
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Recomputes the width of the widest rectangle after the widest one was
+     * removed or became narrower.
+     */
+    private void updateMaxWidth() {
+        double maxWidth = 0;
+        for (int slot = 0; slot < this.size; ++slot) {
+            maxWidth = Math.max(maxWidth, width(slot));
+        }
+        this.maxWidth = maxWidth;
+    }
+
+    /**
+     * Finds the slot of the given rectangle (the same instance).
+     *
+     * @return the slot or -1 if the rectangle is not stored
+     */
+    private int find(final Rectangle rectangle) {
+        final float left = rectangle.getX();
+        for (int slot = lowerBound(left); slot < this.size && this.minX[slot] <= left; ++slot) {
+            if (this.rectangles[slot] == rectangle) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the first slot whose left edge is not less than value
+     */
+    private int lowerBound(final double value) {
+        int low = 0;
+        int high = this.size;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (this.minX[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the first slot whose left edge is greater than value
+     */
+    private int upperBound(final float value) {
+        int low = 0;
+        int high = this.size;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (this.minX[middle] <= value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * The width of the rectangle in a slot, computed in double precision from
+     * the float bounds so that <code>minX >= left - width</code> holds for
+     * every rectangle that reaches left.
+     */
+    private double width(final int slot) {
+        return (double) this.maxX[slot] - this.minX[slot];
+    }
+
+    private void store(final int slot, final Rectangle rectangle) {
+        this.rectangles[slot] = rectangle;
+        this.minX[slot] = rectangle.getX();
+        this.maxX[slot] = rectangle.getX() + rectangle.getWidth();
+        this.minY[slot] = rectangle.getY();
+        this.maxY[slot] = rectangle.getY() + rectangle.getHeight();
+    }
+
+    private void shift(final int from, final int to, final int length) {
+        System.arraycopy(this.rectangles, from, this.rectangles, to, length);
+        System.arraycopy(this.minX, from, this.minX, to, length);
+        System.arraycopy(this.maxX, from, this.maxX, to, length);
+        System.arraycopy(this.minY, from, this.minY, to, length);
+        System.arraycopy(this.maxY, from, this.maxY, to, length);
+    }
+}
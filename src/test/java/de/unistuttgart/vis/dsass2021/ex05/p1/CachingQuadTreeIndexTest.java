@@ -0,0 +1,196 @@
+package de.unistuttgart.vis.dsass2021.ex05.p1;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.unistuttgart.vis.dsass2021.ex05.p1.CachingQuadTreeIndex;
+import de.unistuttgart.vis.dsass2021.ex05.p1.Point;
+import de.unistuttgart.vis.dsass2021.ex05.p1.QuadTreeVisitor;
+import de.unistuttgart.vis.dsass2021.ex05.p1.Rectangle;
+import de.unistuttgart.vis.dsass2021.ex05.p1.SimpleQuadTree;
+import de.unistuttgart.vis.dsass2021.ex05.p1.SimpleQuadTreeTest.Element;
+import de.unistuttgart.vis.dsass2021.ex05.p1.SpatialIndex;
+
+public class CachingQuadTreeIndexTest {
+
+    /**
+     * Counts the queries that reach the underlying index and runs an action
+     * in the middle of the next query.
+     */
+    private static final class CountingIndex implements SpatialIndex<Element> {
+
+        private final SpatialIndex<Element> index;
+        private int queries = 0;
+        private Runnable duringQuery = null;
+
+        CountingIndex(final SpatialIndex<Element> index) {
+            this.index = index;
+        }
+
+        @Override
+        public void rangeQuery(final List<Element> resultList, final Rectangle searchArea) {
+            ++this.queries;
+            this.index.rangeQuery(resultList, searchArea);
+        }
+
+        @Override
+        public boolean rangeQuery(final float minX, final float minY, final float maxX, final float maxY,
+                final QuadTreeVisitor<? super Element> visitor) {
+            ++this.queries;
+            final boolean complete = this.index.rangeQuery(minX, minY, maxX, maxY, visitor);
+            if (this.duringQuery != null) {
+                final Runnable action = this.duringQuery;
+                this.duringQuery = null;
+                action.run();
+            }
+            return complete;
+        }
+
+        @Override
+        public int count(final float minX, final float minY, final float maxX, final float maxY) {
+            ++this.queries;
+            return this.index.count(minX, minY, maxX, maxY);
+        }
+    }
+
+    private Random random;
+    private List<Element> elements;
+    private SimpleQuadTree<Element> tree;
+    private CountingIndex index;
+
+    @Before
+    public void setUp() {
+        this.random = new Random(42);
+        this.elements = new ArrayList<>();
+        for (int i = 0; i < 2000; ++i) {
+            this.elements.add(new Element(this.random.nextFloat() * 100, this.random.nextFloat() * 100));
+        }
+        this.tree = new SimpleQuadTree<>(new ArrayList<>(this.elements), 4);
+        this.index = new CountingIndex(this.tree);
+    }
+
+    private void assertQuery(final CachingQuadTreeIndex<Element> cache, final float[] query) {
+        final Set<Element> expected = SimpleQuadTreeTest.bruteForce(this.elements, query);
+        final List<Element> visited = new ArrayList<>();
+        assertTrue(cache.rangeQuery(query[0], query[1], query[2], query[3], element -> visited.add(element)));
+        assertEquals(expected.size(), visited.size());
+        assertTrue(expected.containsAll(visited));
+        assertEquals(expected.size(), cache.count(query[0], query[1], query[2], query[3]));
+    }
+
+    @Test
+    public void testRandomQueries() {
+        final CachingQuadTreeIndex<Element> cache = new CachingQuadTreeIndex<>(this.index, 5, 100000);
+        for (int i = 0; i < 500; ++i) {
+            final float x = this.random.nextFloat() * 110 - 5;
+            final float y = this.random.nextFloat() * 110 - 5;
+            final float width = this.random.nextFloat() * 20;
+            final float height = this.random.nextFloat() * 20;
+            assertQuery(cache, new float[] { x, y, x + width, y + height });
+        }
+        assertTrue(cache.getHits() + cache.getContainedHits() > 0);
+        assertEquals(cache.getMisses(), this.index.queries);
+    }
+
+    /**
+     * A query inside a cached area is answered from the cached result and must
+     * only return the elements inside its own bounds.
+     */
+    @Test
+    public void testContainedHitFiltering() {
+        final CachingQuadTreeIndex<Element> cache = new CachingQuadTreeIndex<>(this.index, 10, 100000);
+        assertQuery(cache, new float[] { 10, 10, 60, 60 });
+        assertEquals(1, this.index.queries);
+        assertQuery(cache, new float[] { 22.5f, 31, 41.25f, 37 });
+        assertQuery(cache, new float[] { 10, 10, 10, 10 });
+        assertQuery(cache, new float[] { 59.9f, 10, 60, 60 });
+        assertEquals(1, this.index.queries);
+        assertTrue(cache.getContainedHits() >= 3);
+        // a query reaching beyond the cached area is a miss
+        assertQuery(cache, new float[] { 50, 50, 70, 55 });
+        assertEquals(2, this.index.queries);
+    }
+
+    @Test
+    public void testEviction() {
+        final long capacity = 300;
+        final CachingQuadTreeIndex<Element> cache = new CachingQuadTreeIndex<>(this.index, 1, capacity);
+        for (int i = 0; i < 200; ++i) {
+            final float x = this.random.nextInt(90);
+            final float y = this.random.nextInt(90);
+            assertQuery(cache, new float[] { x, y, x + 10, y + 10 });
+            assertTrue(cache.getCachedElements() <= capacity);
+        }
+        assertTrue(cache.getEvictions() > 0);
+        // the most recently used result is kept, the first ones are evicted
+        final int queries = this.index.queries;
+        assertQuery(cache, new float[] { 0, 0, 10, 10 });
+        assertQuery(cache, new float[] { 0, 0, 10, 10 });
+        assertEquals(queries + 1, this.index.queries);
+        // a result larger than the capacity is not cached at all, so both the
+        // query and the count go to the index each time
+        assertQuery(cache, new float[] { 0, 0, 100, 100 });
+        assertQuery(cache, new float[] { 0, 0, 100, 100 });
+        assertEquals(queries + 5, this.index.queries);
+        assertTrue(cache.getCachedElements() <= capacity);
+    }
+
+    /**
+     * A result that was queried while the index was changed in its area must
+     * not be cached, otherwise later queries would see the old elements.
+     */
+    @Test
+    public void testInvalidateDuringQuery() {
+        final CachingQuadTreeIndex<Element> cache = new CachingQuadTreeIndex<>(this.index, 10, 100000);
+        final Element added = new Element(25, 25);
+        this.index.duringQuery = () -> {
+            this.tree.insert(added);
+            this.elements.add(added);
+            cache.invalidate(25, 25, 25, 25);
+        };
+        final List<Element> result = new ArrayList<>();
+        cache.rangeQuery(20, 20, 30, 30, element -> result.add(element));
+        assertFalse(result.contains(added));
+        assertEquals(0, cache.getCachedResults());
+        assertQuery(cache, new float[] { 20, 20, 30, 30 });
+        assertEquals(2, this.index.queries);
+        assertEquals(1, cache.getCachedResults());
+    }
+
+    @Test
+    public void testInvalidate() {
+        final CachingQuadTreeIndex<Element> cache = new CachingQuadTreeIndex<>(this.index, 10, 100000);
+        assertQuery(cache, new float[] { 0, 0, 20, 20 });
+        assertQuery(cache, new float[] { 50, 50, 70, 70 });
+        assertEquals(2, cache.getCachedResults());
+        final Element moved = this.elements.get(0);
+        final Point oldPosition = moved.getPosition();
+        moved.moveTo(5, 5);
+        this.tree.update(moved, oldPosition);
+        cache.invalidate(oldPosition.getXValue(), oldPosition.getYValue(), oldPosition.getXValue(),
+                oldPosition.getYValue());
+        cache.invalidate(5, 5, 5, 5);
+        assertQuery(cache, new float[] { 0, 0, 20, 20 });
+        assertQuery(cache, new float[] { 1, 1, 19, 19 });
+        assertQuery(cache, new float[] { 50, 50, 70, 70 });
+        assertTrue(cache.getInvalidations() >= 1);
+        cache.invalidateAll();
+        assertEquals(0, cache.getCachedResults());
+        assertEquals(0, cache.getCachedElements());
+        assertQuery(cache, new float[] { 2, 2, 8, 8 });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidQuantum() {
+        new CachingQuadTreeIndex<>(this.index, 0, 100);
+    }
+}
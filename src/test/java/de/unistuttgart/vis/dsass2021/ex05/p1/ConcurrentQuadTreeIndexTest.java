@@ -0,0 +1,172 @@
+package de.unistuttgart.vis.dsass2021.ex05.p1;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.unistuttgart.vis.dsass2021.ex05.p1.ConcurrentQuadTreeIndex;
+import de.unistuttgart.vis.dsass2021.ex05.p1.PackedQuadTree;
+import de.unistuttgart.vis.dsass2021.ex05.p1.QuadTree;
+import de.unistuttgart.vis.dsass2021.ex05.p1.Rectangle;
+import de.unistuttgart.vis.dsass2021.ex05.p1.SimpleQuadTree;
+import de.unistuttgart.vis.dsass2021.ex05.p1.SimpleQuadTreeTest.Element;
+
+public class ConcurrentQuadTreeIndexTest {
+
+    private Random random;
+    private List<Element> elements;
+    private QuadTree<Element> tree;
+
+    @Before
+    public void setUp() {
+        this.random = new Random(42);
+        this.elements = createElements(1000);
+        this.tree = new SimpleQuadTree<>(new ArrayList<>(this.elements), 4);
+    }
+
+    private List<Element> createElements(final int count) {
+        final List<Element> elements = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            elements.add(new Element(this.random.nextFloat() * 100, this.random.nextFloat() * 100));
+        }
+        return elements;
+    }
+
+    /**
+     * Runs the action on a new thread and rethrows its failures on join.
+     */
+    private static final class Worker extends Thread {
+
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Worker(final Runnable action) {
+            super(action);
+            setUncaughtExceptionHandler((thread, throwable) -> this.failure.set(throwable));
+        }
+
+        void joinAndCheck() throws InterruptedException {
+            join(10000);
+            assertFalse("worker did not finish", isAlive());
+            if (this.failure.get() != null) {
+                throw new AssertionError(this.failure.get());
+            }
+        }
+    }
+
+    @Test
+    public void testPublishAndRebuild() {
+        final ConcurrentQuadTreeIndex<Element> index = new ConcurrentQuadTreeIndex<>(this.tree);
+        assertEquals(0, index.getSnapshotVersion());
+        assertSame(this.tree, index.snapshot());
+        assertEquals(0, index.getLastBuildNanos());
+        final QuadTree<Element> published = new PackedQuadTree<>(createElements(10), 4);
+        index.publish(published);
+        assertEquals(1, index.getSnapshotVersion());
+        assertSame(published, index.snapshot());
+        assertEquals(10, index.count(0, 0, 100, 100));
+        index.rebuild(this.elements, list -> new PackedQuadTree<>(list, 8));
+        assertEquals(2, index.getSnapshotVersion());
+        assertEquals(this.elements.size(), index.count(0, 0, 100, 100));
+        assertTrue(index.getLastBuildNanos() > 0);
+        final List<Element> result = new ArrayList<>();
+        index.rangeQuery(result, new Rectangle(0, 0, 100, 100));
+        assertEquals(this.elements.size(), result.size());
+        assertEquals(3, index.nearestNeighbours(50, 50, 3, Float.POSITIVE_INFINITY).size());
+    }
+
+    @Test
+    public void testSnapshotAge() throws InterruptedException {
+        final ConcurrentQuadTreeIndex<Element> index = new ConcurrentQuadTreeIndex<>(this.tree);
+        Thread.sleep(20);
+        final long age = index.getSnapshotAgeNanos();
+        assertTrue(age >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(index.getSnapshotAgeNanos() >= age);
+        index.publish(this.tree);
+        assertTrue(index.getSnapshotAgeNanos() < age);
+    }
+
+    /**
+     * While a rebuild is running, readers query the previous snapshot and a
+     * concurrent publish waits for the write lock.
+     */
+    @Test
+    public void testReadersDuringRebuild() throws InterruptedException {
+        final ConcurrentQuadTreeIndex<Element> index = new ConcurrentQuadTreeIndex<>(this.tree);
+        final CountDownLatch building = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Element> next = createElements(50);
+        final Worker rebuild = new Worker(() -> index.rebuild(next, list -> {
+            building.countDown();
+            try {
+                assertTrue(release.await(10, TimeUnit.SECONDS));
+            } catch (final InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return new SimpleQuadTree<>(list, 4);
+        }));
+        rebuild.start();
+        assertTrue(building.await(10, TimeUnit.SECONDS));
+        final QuadTree<Element> published = new PackedQuadTree<>(createElements(5), 4);
+        final Worker publish = new Worker(() -> index.publish(published));
+        publish.start();
+        // readers are not blocked and see the old snapshot
+        final Worker reader = new Worker(() -> {
+            assertSame(this.tree, index.snapshot());
+            assertEquals(this.elements.size(), index.count(0, 0, 100, 100));
+        });
+        reader.start();
+        reader.joinAndCheck();
+        assertEquals(0, index.getSnapshotVersion());
+        while (publish.getState() != Thread.State.BLOCKED) {
+            Thread.sleep(1);
+        }
+        Thread.sleep(20);
+        release.countDown();
+        rebuild.joinAndCheck();
+        publish.joinAndCheck();
+        // the rebuild was published first, then the waiting tree
+        assertEquals(2, index.getSnapshotVersion());
+        assertSame(published, index.snapshot());
+        assertTrue(index.getLastWriteLockWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    public void testFailingBuilder() {
+        final ConcurrentQuadTreeIndex<Element> index = new ConcurrentQuadTreeIndex<>(this.tree);
+        index.publish(this.tree);
+        try {
+            index.rebuild(this.elements, list -> new SimpleQuadTree<>(list, 0));
+            fail("the builder should have thrown");
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(1, index.getSnapshotVersion());
+        assertSame(this.tree, index.snapshot());
+        assertEquals(this.elements.size(), index.count(0, 0, 100, 100));
+        // the lock was released
+        index.publish(this.tree);
+        assertEquals(2, index.getSnapshotVersion());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPublishNull() {
+        new ConcurrentQuadTreeIndex<>(this.tree).publish(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullTree() {
+        new ConcurrentQuadTreeIndex<Element>(null);
+    }
+}
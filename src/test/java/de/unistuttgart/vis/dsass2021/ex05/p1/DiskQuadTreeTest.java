@@ -0,0 +1,145 @@
+package de.unistuttgart.vis.dsass2021.ex05.p1;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.unistuttgart.vis.dsass2021.ex05.p1.DiskQuadTree;
+import de.unistuttgart.vis.dsass2021.ex05.p1.ExternalQuadTreeBuilder;
+
+public class DiskQuadTreeTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Random random;
+    private float[] xs;
+    private float[] ys;
+
+    @Before
+    public void setUp() {
+        this.random = new Random(42);
+    }
+
+    /**
+     * Creates uniform points, points on an integer grid and a cluster of
+     * coincident points that is larger than a partition.
+     */
+    private void createPoints(final int count, final int coincident) {
+        this.xs = new float[count];
+        this.ys = new float[count];
+        for (int i = 0; i < count; ++i) {
+            if (i < coincident) {
+                this.xs[i] = 12.5f;
+                this.ys[i] = 40;
+            } else if (i % 3 == 0) {
+                this.xs[i] = this.random.nextInt(65);
+                this.ys[i] = this.random.nextInt(65);
+            } else {
+                this.xs[i] = this.random.nextFloat() * 64;
+                this.ys[i] = this.random.nextFloat() * 64;
+            }
+        }
+    }
+
+    private DiskQuadTree build(final Path directory, final int maxPointsInMemory) throws IOException {
+        try (ExternalQuadTreeBuilder builder = new ExternalQuadTreeBuilder(directory, maxPointsInMemory, 8)) {
+            for (int i = 0; i < this.xs.length; ++i) {
+                assertEquals(i, builder.add(this.xs[i], this.ys[i]));
+            }
+            return builder.build();
+        }
+    }
+
+    private Set<Integer> bruteForce(final float[] query) {
+        final Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < this.xs.length; ++i) {
+            if (this.xs[i] >= query[0] && this.xs[i] <= query[2] && this.ys[i] >= query[1]
+                    && this.ys[i] <= query[3]) {
+                ids.add(i);
+            }
+        }
+        return ids;
+    }
+
+    private void assertQuery(final DiskQuadTree tree, final float[] query) {
+        final Set<Integer> expected = bruteForce(query);
+        final Set<Integer> found = new HashSet<>();
+        assertTrue(tree.rangeQuery(query[0], query[1], query[2], query[3], id -> {
+            assertTrue(found.add(id));
+            return true;
+        }));
+        assertEquals(expected, found);
+        assertEquals(expected.size(), tree.count(query[0], query[1], query[2], query[3]));
+    }
+
+    private void assertRandomQueries(final DiskQuadTree tree) {
+        for (int i = 0; i < 300; ++i) {
+            final float x = i % 3 == 0 ? this.random.nextInt(70) - 3 : this.random.nextFloat() * 74 - 5;
+            final float y = i % 3 == 0 ? this.random.nextInt(70) - 3 : this.random.nextFloat() * 74 - 5;
+            final float size = i % 3 == 0 ? this.random.nextInt(30) : this.random.nextFloat() * 30;
+            assertQuery(tree, new float[] { x, y, x + size, y + size });
+        }
+        assertQuery(tree, new float[] { 12.5f, 40, 12.5f, 40 });
+        assertQuery(tree, new float[] { Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY,
+                Float.POSITIVE_INFINITY });
+    }
+
+    @Test
+    public void testBuildOpenQuery() throws IOException {
+        createPoints(20000, 700);
+        final Path directory = this.folder.newFolder().toPath();
+        final DiskQuadTree built = build(directory, 300);
+        assertEquals(this.xs.length, built.size());
+        // enough partitions for several blocks of the coarse index
+        assertTrue(built.getPartitionCount() > 3 * DiskQuadTree.BLOCK_SIZE);
+        assertRandomQueries(built);
+        final DiskQuadTree reopened = DiskQuadTree.open(directory);
+        assertEquals(built.size(), reopened.size());
+        assertEquals(built.getPartitionCount(), reopened.getPartitionCount());
+        assertRandomQueries(reopened);
+        // the spilled points were deleted
+        try (Stream<Path> files = Files.list(directory)) {
+            assertTrue(files.allMatch(file -> file.getFileName().toString().endsWith(".qtree")));
+        }
+    }
+
+    @Test
+    public void testWithoutSpilling() throws IOException {
+        createPoints(1000, 10);
+        final DiskQuadTree tree = build(this.folder.newFolder().toPath(), 1000);
+        assertEquals(1, tree.getPartitionCount());
+        assertRandomQueries(tree);
+    }
+
+    @Test
+    public void testEarlyStop() throws IOException {
+        createPoints(5000, 0);
+        final DiskQuadTree tree = build(this.folder.newFolder().toPath(), 200);
+        final int[] visits = { 0 };
+        assertFalse(tree.rangeQuery(0, 0, 64, 64, id -> ++visits[0] < 10));
+        assertEquals(10, visits[0]);
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingPartition() throws IOException {
+        createPoints(3000, 0);
+        final Path directory = this.folder.newFolder().toPath();
+        build(directory, 500);
+        Files.delete(DiskQuadTree.partitionFile(directory, 1));
+        DiskQuadTree.open(directory);
+    }
+}
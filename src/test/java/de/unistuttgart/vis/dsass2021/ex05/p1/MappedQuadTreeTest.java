@@ -0,0 +1,184 @@
+package de.unistuttgart.vis.dsass2021.ex05.p1;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.unistuttgart.vis.dsass2021.ex05.p1.MappedQuadTree;
+import de.unistuttgart.vis.dsass2021.ex05.p1.PackedQuadTree;
+import de.unistuttgart.vis.dsass2021.ex05.p1.SimpleQuadTreeTest.Element;
+
+public class MappedQuadTreeTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Random random;
+    private List<Element> elements;
+
+    @Before
+    public void setUp() {
+        this.random = new Random(42);
+        this.elements = new ArrayList<>();
+        for (int i = 0; i < 3000; ++i) {
+            // every fourth point on an integer grid, so that points coincide
+            // and lie on the split lines
+            if (i % 4 == 0) {
+                this.elements.add(new Element(this.random.nextInt(65), this.random.nextInt(65)));
+            } else {
+                this.elements.add(new Element(this.random.nextFloat() * 64, this.random.nextFloat() * 64));
+            }
+        }
+    }
+
+    private Path write(final PackedQuadTree<Element> tree) throws IOException {
+        final Path file = this.folder.newFile().toPath();
+        tree.write(file);
+        return file;
+    }
+
+    /**
+     * Compares the ids returned by the mapped tree with the indices of the
+     * elements returned by the packed tree.
+     */
+    private void assertSameQuery(final PackedQuadTree<Element> tree, final MappedQuadTree mapped,
+            final float[] query) {
+        final List<Element> expected = new ArrayList<>();
+        tree.rangeQuery(query[0], query[1], query[2], query[3], element -> expected.add(element));
+        final Set<Element> found = SimpleQuadTreeTest.identitySet();
+        assertTrue(mapped.rangeQuery(query[0], query[1], query[2], query[3],
+                id -> found.add(this.elements.get(id))));
+        assertEquals(expected.size(), found.size());
+        assertTrue(found.containsAll(expected));
+        assertEquals(expected.size(), mapped.count(query[0], query[1], query[2], query[3]));
+        final int[] ids = new int[expected.size() / 2];
+        assertEquals(expected.size(), mapped.rangeQuery(query[0], query[1], query[2], query[3], ids));
+        final Set<Integer> distinct = new HashSet<>();
+        for (final int id : ids) {
+            assertTrue(found.contains(this.elements.get(id)));
+            assertTrue(distinct.add(id));
+        }
+    }
+
+    private void assertRoundTrip(final PackedQuadTree<Element> tree) throws IOException {
+        final MappedQuadTree mapped = MappedQuadTree.open(write(tree));
+        assertEquals(tree.size(), mapped.size());
+        for (int i = 0; i < 300; ++i) {
+            final float x = i % 3 == 0 ? this.random.nextInt(70) - 3 : this.random.nextFloat() * 74 - 5;
+            final float y = i % 3 == 0 ? this.random.nextInt(70) - 3 : this.random.nextFloat() * 74 - 5;
+            final float size = i % 3 == 0 ? this.random.nextInt(40) : this.random.nextFloat() * 40;
+            assertSameQuery(tree, mapped, new float[] { x, y, x + size, y + size });
+        }
+        assertSameQuery(tree, mapped, new float[] { Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY,
+                Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY });
+        assertSameQuery(tree, mapped, new float[] { 10, 10, 5, 20 });
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        assertRoundTrip(new PackedQuadTree<>(this.elements, 8));
+    }
+
+    @Test
+    public void testRoundTripBulkLoad() throws IOException {
+        assertRoundTrip(PackedQuadTree.bulkLoad(this.elements, 8));
+    }
+
+    @Test
+    public void testRoundTripEmpty() throws IOException {
+        this.elements.clear();
+        final MappedQuadTree mapped = MappedQuadTree.open(write(new PackedQuadTree<>(this.elements, 8)));
+        assertEquals(0, mapped.size());
+        assertEquals(0, mapped.count(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY,
+                Float.POSITIVE_INFINITY));
+    }
+
+    /**
+     * Overwrites the int at the given index of the node arrays, which start
+     * with firstChild, start and end (nodeCount entries each).
+     */
+    private static void patch(final Path file, final int index, final int value) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(value).flip();
+            channel.write(buffer, MappedQuadTree.HEADER_BYTES + (long) Integer.BYTES * index);
+        }
+    }
+
+    private static int nodeCount(final Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(buffer, 2 * Integer.BYTES);
+            return buffer.getInt(0);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testChildOutOfRange() throws IOException {
+        final Path file = write(new PackedQuadTree<>(this.elements, 8));
+        patch(file, 0, Integer.MAX_VALUE);
+        MappedQuadTree.open(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void testChildCycle() throws IOException {
+        // the root as its own first child
+        final Path file = write(new PackedQuadTree<>(this.elements, 8));
+        patch(file, 0, 0);
+        MappedQuadTree.open(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void testSlotOutOfRange() throws IOException {
+        // end of the last node
+        final Path file = write(new PackedQuadTree<>(this.elements, 8));
+        patch(file, 3 * nodeCount(file) - 1, this.elements.size() + 1);
+        MappedQuadTree.open(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvertedSlotRange() throws IOException {
+        // start of the root beyond its end
+        final Path file = write(new PackedQuadTree<>(this.elements, 8));
+        patch(file, nodeCount(file), this.elements.size() + 1);
+        MappedQuadTree.open(file);
+    }
+
+    @Test
+    public void testUnchangedFileIsValid() throws IOException {
+        final Path file = write(new PackedQuadTree<>(this.elements, 8));
+        assertTrue(nodeCount(file) > 1);
+        final MappedQuadTree mapped = MappedQuadTree.open(file);
+        assertEquals(this.elements.size(), mapped.size());
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedFile() throws IOException {
+        final Path file = write(new PackedQuadTree<>(this.elements, 8));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 4);
+        }
+        MappedQuadTree.open(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void testNoQuadTreeFile() throws IOException {
+        MappedQuadTree.open(this.folder.newFile().toPath());
+    }
+}
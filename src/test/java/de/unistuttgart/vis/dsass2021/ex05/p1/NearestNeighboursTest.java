@@ -0,0 +1,173 @@
+package de.unistuttgart.vis.dsass2021.ex05.p1;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.unistuttgart.vis.dsass2021.ex05.p1.PackedQuadTree;
+import de.unistuttgart.vis.dsass2021.ex05.p1.QuadTree;
+import de.unistuttgart.vis.dsass2021.ex05.p1.SimpleQuadTree;
+import de.unistuttgart.vis.dsass2021.ex05.p1.SimpleQuadTreeTest.Element;
+
+public class NearestNeighboursTest {
+
+    private Random random;
+
+    @Before
+    public void setUp() {
+        this.random = new Random(42);
+    }
+
+    /**
+     * Every second point on an integer grid, so that many points coincide
+     * and many have the same distance to a query position on the grid.
+     */
+    private List<Element> createElements(final int count) {
+        final List<Element> elements = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            if (i % 2 == 0) {
+                elements.add(new Element(this.random.nextInt(33), this.random.nextInt(33)));
+            } else {
+                elements.add(new Element(this.random.nextFloat() * 32, this.random.nextFloat() * 32));
+            }
+        }
+        return elements;
+    }
+
+    private static double distance(final Element element, final float x, final float y) {
+        final double dx = (double) element.getPosition().getXValue() - x;
+        final double dy = (double) element.getPosition().getYValue() - y;
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * The sorted squared distances of all elements within maxDistance.
+     */
+    private static double[] bruteForce(final List<Element> elements, final float x, final float y,
+            final float maxDistance) {
+        final double limit = (double) maxDistance * maxDistance;
+        return elements.stream().mapToDouble(element -> distance(element, x, y)).filter(d -> d <= limit).sorted()
+                .toArray();
+    }
+
+    /**
+     * Compares the result with a brute force scan. Among elements with the
+     * same distance any may be returned, so only the distances are compared.
+     */
+    private static void assertNearest(final QuadTree<Element> tree, final List<Element> elements, final float x,
+            final float y, final int k, final float maxDistance) {
+        final double[] expected = bruteForce(elements, x, y, maxDistance);
+        final List<Element> result = tree.nearestNeighbours(x, y, k, maxDistance);
+        assertEquals(Math.min(k, expected.length), result.size());
+        final Set<Element> distinct = SimpleQuadTreeTest.identitySet();
+        for (int i = 0; i < result.size(); ++i) {
+            assertTrue(distinct.add(result.get(i)));
+            assertEquals(expected[i], distance(result.get(i), x, y), 0);
+        }
+        final Element nearest = tree.nearestNeighbour(x, y, maxDistance);
+        if (expected.length == 0) {
+            assertNull(nearest);
+        } else {
+            assertEquals(expected[0], distance(nearest, x, y), 0);
+        }
+    }
+
+    private void assertRandomQueries(final QuadTree<Element> tree, final List<Element> elements) {
+        for (int i = 0; i < 300; ++i) {
+            final float x = i % 2 == 0 ? this.random.nextInt(37) - 2 : this.random.nextFloat() * 40 - 4;
+            final float y = i % 2 == 0 ? this.random.nextInt(37) - 2 : this.random.nextFloat() * 40 - 4;
+            final int k = 1 + this.random.nextInt(i % 10 == 0 ? 2 * elements.size() + 1 : 20);
+            final float maxDistance = i % 3 == 0 ? Float.POSITIVE_INFINITY
+                    : i % 3 == 1 ? this.random.nextInt(6) : this.random.nextFloat() * 5;
+            assertNearest(tree, elements, x, y, k, maxDistance);
+        }
+    }
+
+    @Test
+    public void testSimpleQuadTree() {
+        final List<Element> elements = createElements(3000);
+        assertRandomQueries(new SimpleQuadTree<>(new ArrayList<>(elements), 4), elements);
+        assertRandomQueries(SimpleQuadTree.createBounded(new ArrayList<>(elements), 4), elements);
+    }
+
+    @Test
+    public void testPackedQuadTree() {
+        final List<Element> elements = createElements(3000);
+        assertRandomQueries(new PackedQuadTree<>(elements, 8), elements);
+        assertRandomQueries(PackedQuadTree.bulkLoad(elements, 8), elements);
+    }
+
+    /**
+     * Elements on a circle around the query position all have the same
+     * distance, so exactly k of them must be returned.
+     */
+    @Test
+    public void testTies() {
+        final List<Element> elements = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            elements.add(new Element(10, 10));
+        }
+        final float[][] offsets = { { 3, 4 }, { -3, 4 }, { 3, -4 }, { -3, -4 }, { 4, 3 }, { -4, 3 }, { 4, -3 },
+                { -4, -3 }, { 5, 0 }, { -5, 0 }, { 0, 5 }, { 0, -5 } };
+        for (final float[] offset : offsets) {
+            elements.add(new Element(20 + offset[0], 20 + offset[1]));
+        }
+        final List<QuadTree<Element>> trees = Arrays.asList(new SimpleQuadTree<>(new ArrayList<>(elements), 2),
+                new PackedQuadTree<>(elements, 2));
+        for (final QuadTree<Element> tree : trees) {
+            for (int k = 1; k <= elements.size() + 2; ++k) {
+                assertNearest(tree, elements, 20, 20, k, Float.POSITIVE_INFINITY);
+                assertNearest(tree, elements, 10, 10, k, Float.POSITIVE_INFINITY);
+                assertNearest(tree, elements, 15, 15, k, 8);
+            }
+            // the cut-off is inclusive: elements at exactly maxDistance count
+            assertEquals(offsets.length, tree.nearestNeighbours(20, 20, 100, 5).size());
+            assertEquals(0, tree.nearestNeighbours(20, 20, 100, Math.nextDown(5f)).size());
+            assertEquals(10, tree.nearestNeighbours(10, 10, 100, 0).size());
+            assertNull(tree.nearestNeighbour(20, 20, Math.nextDown(5f)));
+        }
+    }
+
+    @Test
+    public void testKLargerThanSize() {
+        final List<Element> elements = createElements(50);
+        final List<QuadTree<Element>> trees = Arrays.asList(new SimpleQuadTree<>(new ArrayList<>(elements), 4),
+                new PackedQuadTree<>(elements, 4));
+        for (final QuadTree<Element> tree : trees) {
+            assertNearest(tree, elements, 16, 16, 51, Float.POSITIVE_INFINITY);
+            assertNearest(tree, elements, 100, -100, Integer.MAX_VALUE, Float.POSITIVE_INFINITY);
+            assertEquals(elements.size(), tree.nearestNeighbours(16, 16, 1000).size());
+        }
+    }
+
+    @Test
+    public void testEmptyTree() {
+        final List<Element> elements = new ArrayList<>();
+        final List<QuadTree<Element>> trees = Arrays.asList(new SimpleQuadTree<>(new ArrayList<>(elements), 4),
+                new PackedQuadTree<>(elements, 4));
+        for (final QuadTree<Element> tree : trees) {
+            assertTrue(tree.nearestNeighbours(0, 0, 5).isEmpty());
+            assertNull(tree.nearestNeighbour(0, 0));
+            assertNearest(tree, elements, 3, -7, 1, 10);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidK() {
+        new SimpleQuadTree<>(createElements(10), 4).nearestNeighbours(0, 0, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNaNDistance() {
+        new PackedQuadTree<>(createElements(10), 4).nearestNeighbours(0, 0, 1, Float.NaN);
+    }
+}
@@ -0,0 +1,216 @@
+package de.unistuttgart.vis.dsass2021.ex05.p1;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.unistuttgart.vis.dsass2021.ex05.p1.PackedQuadTree;
+import de.unistuttgart.vis.dsass2021.ex05.p1.SimpleQuadTree;
+import de.unistuttgart.vis.dsass2021.ex05.p1.SimpleQuadTreeTest.Element;
+
+public class PackedQuadTreeTest {
+
+    private Random random;
+
+    @Before
+    public void setUp() {
+        this.random = new Random(42);
+    }
+
+    /**
+     * Uniform points in [0, 64) x [0, 64), every third one on an integer grid
+     * so that many points coincide and lie on split lines
+     */
+    private List<Element> mixed(final int count) {
+        final List<Element> elements = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            if (i % 3 == 0) {
+                elements.add(new Element(this.random.nextInt(65), this.random.nextInt(65)));
+            } else {
+                elements.add(new Element(this.random.nextFloat() * 64, this.random.nextFloat() * 64));
+            }
+        }
+        return elements;
+    }
+
+    private static List<Element> duplicates(final int count, final float x, final float y) {
+        final List<Element> elements = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            elements.add(new Element(x, y));
+        }
+        return elements;
+    }
+
+    /**
+     * Compares the queries of the tree with a brute force scan (see
+     * {@link SimpleQuadTreeTest#assertQuery}) and the count with a
+     * {@link SimpleQuadTree} of the same elements.
+     */
+    private static void assertQuery(final PackedQuadTree<Element> tree, final SimpleQuadTree<Element> simple,
+            final List<Element> elements, final float[] query) {
+        SimpleQuadTreeTest.assertQuery(tree, elements, query);
+        assertEquals(simple.count(query[0], query[1], query[2], query[3]),
+                tree.count(query[0], query[1], query[2], query[3]));
+    }
+
+    /**
+     * Random queries with float and integer bounds around the given extent,
+     * and the queries along the split lines of the root
+     */
+    private void assertQueries(final PackedQuadTree<Element> tree, final List<Element> elements, final float min,
+            final float max) {
+        assertEquals(elements.size(), tree.size());
+        final SimpleQuadTree<Element> simple = new SimpleQuadTree<>(new ArrayList<>(elements), 4);
+        final float extent = max - min;
+        for (int i = 0; i < 300; ++i) {
+            final float x = min - extent / 10 + this.random.nextFloat() * extent * 1.2f;
+            final float y = min - extent / 10 + this.random.nextFloat() * extent * 1.2f;
+            final float size = this.random.nextFloat() * extent / 2;
+            final float[] query = i % 3 == 0 ? new float[] { Math.round(x), Math.round(y), Math.round(x + size),
+                    Math.round(y + size) } : new float[] { x, y, x + size, y + size };
+            assertQuery(tree, simple, elements, query);
+        }
+        final float mid = min + extent / 2;
+        assertQuery(tree, simple, elements, new float[] { min, min, mid, mid });
+        assertQuery(tree, simple, elements, new float[] { mid, mid, max, max });
+        assertQuery(tree, simple, elements, new float[] { mid, min, mid, max });
+        assertQuery(tree, simple, elements, new float[] { min, mid, max, mid });
+        assertQuery(tree, simple, elements, new float[] { Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY,
+                Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY });
+        assertQuery(tree, simple, elements, new float[] { max, max, min, min });
+    }
+
+    @Test
+    public void testRangeQuery() {
+        final List<Element> elements = mixed(5000);
+        assertQueries(new PackedQuadTree<>(elements, 8), elements, 0, 64);
+        assertQueries(new PackedQuadTree<>(elements, 1), elements, 0, 64);
+    }
+
+    @Test
+    public void testDuplicates() {
+        final List<Element> elements = duplicates(500, 5, 5);
+        assertQueries(new PackedQuadTree<>(elements, 4), elements, 0, 10);
+        elements.addAll(duplicates(500, 7, 5));
+        elements.addAll(mixed(100));
+        assertQueries(new PackedQuadTree<>(elements, 4), elements, 0, 64);
+    }
+
+    @Test
+    public void testSplitLines() {
+        // the split lines of the root and of its children on a grid of 64
+        final List<Element> elements = new ArrayList<>();
+        for (int i = 0; i < 3000; ++i) {
+            elements.add(new Element(16 * this.random.nextInt(5), 16 * this.random.nextInt(5)));
+        }
+        assertQueries(new PackedQuadTree<>(elements, 4), elements, 0, 64);
+    }
+
+    @Test
+    public void testEmptyAndSingle() {
+        final List<Element> elements = new ArrayList<>();
+        assertQueries(new PackedQuadTree<>(elements, 4), elements, -1, 1);
+        elements.add(new Element(3, 4));
+        assertQueries(new PackedQuadTree<>(elements, 4), elements, 0, 8);
+    }
+
+    @Test
+    public void testBulkLoad() {
+        final List<Element> elements = mixed(5000);
+        assertQueries(PackedQuadTree.bulkLoad(elements, 8), elements, 0, 64);
+        assertQueries(PackedQuadTree.bulkLoad(elements, 1), elements, 0, 64);
+    }
+
+    @Test
+    public void testBulkLoadDuplicates() {
+        final List<Element> elements = duplicates(1000, 5, 5);
+        assertQueries(PackedQuadTree.bulkLoad(elements, 4), elements, 0, 10);
+        // two stacks that only differ in the last bit of x
+        elements.addAll(duplicates(1000, Math.nextUp(5f), 5));
+        assertQueries(PackedQuadTree.bulkLoad(elements, 4), elements, 4, 6);
+        SimpleQuadTreeTest.assertQuery(PackedQuadTree.bulkLoad(elements, 4), elements,
+                new float[] { Math.nextUp(5f), 5, 6, 5 });
+        SimpleQuadTreeTest.assertQuery(PackedQuadTree.bulkLoad(elements, 4), elements, new float[] { 5, 5, 5, 5 });
+    }
+
+    /**
+     * Points on a horizontal, a vertical and a diagonal line, where the codes
+     * of all points share the digits of one axis
+     */
+    @Test
+    public void testBulkLoadLines() {
+        final List<Element> horizontal = new ArrayList<>();
+        final List<Element> vertical = new ArrayList<>();
+        final List<Element> diagonal = new ArrayList<>();
+        for (int i = 0; i < 3000; ++i) {
+            final float t = i % 2 == 0 ? this.random.nextInt(65) : this.random.nextFloat() * 64;
+            horizontal.add(new Element(t, 20));
+            vertical.add(new Element(20, t));
+            diagonal.add(new Element(t, t));
+        }
+        assertQueries(PackedQuadTree.bulkLoad(horizontal, 4), horizontal, 0, 64);
+        assertQueries(PackedQuadTree.bulkLoad(vertical, 4), vertical, 0, 64);
+        assertQueries(PackedQuadTree.bulkLoad(diagonal, 4), diagonal, 0, 64);
+    }
+
+    @Test
+    public void testBulkLoadNegativeCoordinates() {
+        final List<Element> elements = new ArrayList<>();
+        for (int i = 0; i < 3000; ++i) {
+            if (i % 3 == 0) {
+                elements.add(new Element(-this.random.nextInt(65), this.random.nextInt(129) - 64));
+            } else {
+                elements.add(new Element(this.random.nextFloat() * -64, this.random.nextFloat() * 128 - 64));
+            }
+        }
+        assertQueries(PackedQuadTree.bulkLoad(elements, 4), elements, -64, 64);
+    }
+
+    /**
+     * Huge coordinates together with a dense cluster, so that the codes of
+     * most points share many leading digits
+     */
+    @Test
+    public void testBulkLoadHugeCoordinates() {
+        final float huge = 1e37f;
+        final List<Element> elements = new ArrayList<>();
+        elements.add(new Element(-huge, -huge));
+        elements.add(new Element(huge, huge));
+        for (int i = 0; i < 2000; ++i) {
+            elements.add(new Element((this.random.nextFloat() * 2 - 1) * huge,
+                    (this.random.nextFloat() * 2 - 1) * huge));
+            elements.add(new Element(1 + this.random.nextFloat(), 1 + this.random.nextFloat()));
+        }
+        final PackedQuadTree<Element> tree = PackedQuadTree.bulkLoad(elements, 4);
+        assertQueries(tree, elements, -huge, huge);
+        SimpleQuadTreeTest.assertQuery(tree, elements, new float[] { 1, 1, 2, 2 });
+        SimpleQuadTreeTest.assertQuery(tree, elements, new float[] { 1.25f, 1.5f, 1.75f, 1.625f });
+        SimpleQuadTreeTest.assertQuery(tree, elements, new float[] { 0, 0, huge, huge });
+    }
+
+    @Test
+    public void testEarlyStop() {
+        final PackedQuadTree<Element> tree = new PackedQuadTree<>(mixed(2000), 4);
+        final int[] visits = { 0 };
+        assertFalse(tree.rangeQuery(0, 0, 64, 64, element -> ++visits[0] < 10));
+        assertEquals(10, visits[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullElement() {
+        final List<Element> elements = mixed(10);
+        elements.add(null);
+        new PackedQuadTree<>(elements, 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxElementsInLeaf() {
+        new PackedQuadTree<>(mixed(10), 0);
+    }
+}
@@ -0,0 +1,180 @@
+package de.unistuttgart.vis.dsass2021.ex05.p1;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.unistuttgart.vis.dsass2021.ex05.p1.MappedQuadTree;
+import de.unistuttgart.vis.dsass2021.ex05.p1.PointCloud;
+import de.unistuttgart.vis.dsass2021.ex05.p1.PointCloudQuadTree;
+
+public class PointCloudQuadTreeTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Random random;
+    private PointCloud points;
+
+    @Before
+    public void setUp() {
+        this.random = new Random(42);
+        // every third point on an integer grid, so that points coincide and
+        // lie on the split lines, and a stack of coincident points
+        final float[] xs = new float[5000];
+        final float[] ys = new float[xs.length];
+        for (int i = 0; i < xs.length; ++i) {
+            if (i < 200) {
+                xs[i] = 16;
+                ys[i] = 48;
+            } else if (i % 3 == 0) {
+                xs[i] = this.random.nextInt(65);
+                ys[i] = this.random.nextInt(65);
+            } else {
+                xs[i] = this.random.nextFloat() * 64;
+                ys[i] = this.random.nextFloat() * 64;
+            }
+        }
+        this.points = new PointCloud(xs, ys);
+    }
+
+    private Set<Integer> bruteForce(final float[] query) {
+        final Set<Integer> ids = new HashSet<>();
+        for (int id = 0; id < this.points.size(); ++id) {
+            final float x = this.points.getXValue(id);
+            final float y = this.points.getYValue(id);
+            if (x >= query[0] && x <= query[2] && y >= query[1] && y <= query[3]) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Checks that the first length ids of the array are distinct hits.
+     */
+    private static void assertHits(final Set<Integer> expected, final int[] ids, final int length) {
+        final Set<Integer> distinct = new HashSet<>();
+        for (int i = 0; i < length; ++i) {
+            assertTrue(expected.contains(ids[i]));
+            assertTrue(distinct.add(ids[i]));
+        }
+    }
+
+    /**
+     * Compares the visitor query, the array query with arrays that are large
+     * enough, too short and empty, and count with a brute force scan.
+     */
+    private void assertQuery(final PointCloudQuadTree tree, final float[] query) {
+        final Set<Integer> expected = bruteForce(query);
+        final Set<Integer> visited = new HashSet<>();
+        assertTrue(tree.rangeQuery(query[0], query[1], query[2], query[3], id -> {
+            assertTrue(visited.add(id));
+            return true;
+        }));
+        assertEquals(expected, visited);
+        assertEquals(expected.size(), tree.count(query[0], query[1], query[2], query[3]));
+        final int[] large = new int[expected.size() + 10];
+        assertEquals(expected.size(), tree.rangeQuery(query[0], query[1], query[2], query[3], large));
+        assertHits(expected, large, expected.size());
+        final int[] exact = new int[expected.size()];
+        assertEquals(expected.size(), tree.rangeQuery(query[0], query[1], query[2], query[3], exact));
+        assertHits(expected, exact, exact.length);
+        final int[] tooShort = new int[expected.size() / 3];
+        assertEquals(expected.size(), tree.rangeQuery(query[0], query[1], query[2], query[3], tooShort));
+        assertHits(expected, tooShort, tooShort.length);
+        assertEquals(expected.size(), tree.rangeQuery(query[0], query[1], query[2], query[3], new int[0]));
+    }
+
+    private void assertRandomQueries(final PointCloudQuadTree tree) {
+        for (int i = 0; i < 300; ++i) {
+            final float x = i % 3 == 0 ? this.random.nextInt(70) - 3 : this.random.nextFloat() * 74 - 5;
+            final float y = i % 3 == 0 ? this.random.nextInt(70) - 3 : this.random.nextFloat() * 74 - 5;
+            final float size = i % 3 == 0 ? this.random.nextInt(40) : this.random.nextFloat() * 40;
+            assertQuery(tree, new float[] { x, y, x + size, y + size });
+        }
+        assertQuery(tree, new float[] { 16, 48, 16, 48 });
+        assertQuery(tree, new float[] { 0, 0, 32, 32 });
+        assertQuery(tree, new float[] { Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY,
+                Float.POSITIVE_INFINITY });
+        assertQuery(tree, new float[] { 40, 40, 20, 20 });
+    }
+
+    @Test
+    public void testRangeQuery() {
+        final PointCloudQuadTree tree = new PointCloudQuadTree(this.points, 8);
+        assertSame(this.points, tree.getPoints());
+        assertRandomQueries(tree);
+        assertRandomQueries(new PointCloudQuadTree(this.points, 1));
+    }
+
+    @Test
+    public void testEarlyStop() {
+        final PointCloudQuadTree tree = new PointCloudQuadTree(this.points, 8);
+        final int[] visits = { 0 };
+        assertFalse(tree.rangeQuery(0, 0, 64, 64, id -> ++visits[0] < 10));
+        assertEquals(10, visits[0]);
+    }
+
+    @Test
+    public void testEmpty() {
+        this.points = new PointCloud(new float[0], new float[0]);
+        assertEquals(0, this.points.size());
+        assertRandomQueries(new PointCloudQuadTree(this.points, 4));
+    }
+
+    /**
+     * The mapped tree reports the same ids as the point cloud tree.
+     */
+    @Test
+    public void testWriteAndMap() throws IOException {
+        final PointCloudQuadTree tree = new PointCloudQuadTree(this.points, 8);
+        final Path file = this.folder.newFile().toPath();
+        tree.write(file);
+        final MappedQuadTree mapped = MappedQuadTree.open(file);
+        assertEquals(this.points.size(), mapped.size());
+        for (int i = 0; i < 200; ++i) {
+            final float x = this.random.nextFloat() * 74 - 5;
+            final float y = this.random.nextFloat() * 74 - 5;
+            final float size = this.random.nextFloat() * 40;
+            final float[] query = { x, y, x + size, y + size };
+            final Set<Integer> expected = bruteForce(query);
+            final Set<Integer> found = new HashSet<>();
+            assertTrue(mapped.rangeQuery(query[0], query[1], query[2], query[3], id -> found.add(id)));
+            assertEquals(expected, found);
+            assertEquals(expected.size(), mapped.count(query[0], query[1], query[2], query[3]));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMismatchedLengths() {
+        new PointCloud(new float[3], new float[2]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullCoordinates() {
+        new PointCloud(new float[3], null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullResult() {
+        new PointCloudQuadTree(this.points, 8).rangeQuery(0, 0, 1, 1, (int[]) null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxElementsInLeaf() {
+        new PointCloudQuadTree(this.points, 0);
+    }
+}
@@ -0,0 +1,151 @@
+package de.unistuttgart.vis.dsass2021.ex05.p1;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.unistuttgart.vis.dsass2021.ex05.p1.QuadTreeMetrics;
+import de.unistuttgart.vis.dsass2021.ex05.p1.QuadTreeMetricsSnapshot;
+import de.unistuttgart.vis.dsass2021.ex05.p1.QuadTreeStatistics;
+import de.unistuttgart.vis.dsass2021.ex05.p1.Rectangle;
+import de.unistuttgart.vis.dsass2021.ex05.p1.SimpleQuadTree;
+import de.unistuttgart.vis.dsass2021.ex05.p1.SimpleQuadTreeTest.Element;
+
+public class QuadTreeMetricsTest {
+
+    private SimpleQuadTree<Element> tree;
+    private QuadTreeMetrics metrics;
+
+    /**
+     * Seven points in [0, 10] x [0, 10] and a leaf size of 4, so the root is
+     * split once at (5, 5) into leaves of 3, 1, 1 and 2 points. No point lies
+     * on a split line.
+     */
+    @Before
+    public void setUp() {
+        final List<Element> elements = new ArrayList<>();
+        elements.add(new Element(0, 0));
+        elements.add(new Element(1, 1));
+        elements.add(new Element(2, 2));
+        elements.add(new Element(8, 1));
+        elements.add(new Element(1, 8));
+        elements.add(new Element(8, 8));
+        elements.add(new Element(10, 10));
+        this.tree = new SimpleQuadTree<>(elements, 4);
+        this.metrics = new QuadTreeMetrics();
+    }
+
+    private static void assertCounters(final QuadTreeMetricsSnapshot snapshot, final long queries,
+            final long nodesVisited, final long leavesScanned, final long elementsTested,
+            final long elementsReturned) {
+        assertEquals(queries, snapshot.getQueries());
+        assertEquals(nodesVisited, snapshot.getNodesVisited());
+        assertEquals(leavesScanned, snapshot.getLeavesScanned());
+        assertEquals(elementsTested, snapshot.getElementsTested());
+        assertEquals(elementsReturned, snapshot.getElementsReturned());
+    }
+
+    @Test
+    public void testQueryCounters() {
+        this.tree.setMetrics(this.metrics);
+        assertSame(this.metrics, this.tree.getMetrics());
+        // the root and its four children are visited, the top left and the
+        // bottom left leaf are scanned
+        final List<Element> result = new ArrayList<>();
+        this.tree.rangeQuery(result, new Rectangle(0.5f, 0.5f, 2, 8.5f));
+        assertEquals(3, result.size());
+        assertCounters(this.metrics.snapshot(), 1, 5, 2, 4, 3);
+        // the same query as a count
+        assertEquals(3, this.tree.count(0.5f, 0.5f, 2.5f, 9));
+        assertCounters(this.metrics.snapshot(), 2, 10, 4, 8, 6);
+        // a count containing the root is answered from the owned count of the
+        // root
+        assertEquals(7, this.tree.count(-1, -1, 11, 11));
+        assertCounters(this.metrics.snapshot(), 3, 11, 4, 8, 13);
+        // a query containing the root visits every leaf without testing the
+        // bounds, the elements are still tested for ownership
+        this.tree.rangeQuery(-1, -1, 11, 11, element -> true);
+        assertCounters(this.metrics.snapshot(), 4, 16, 8, 15, 20);
+        // a query outside of the root only visits the root
+        this.tree.rangeQuery(20, 20, 30, 30, element -> true);
+        assertCounters(this.metrics.snapshot(), 5, 17, 8, 15, 20);
+        assertEquals(5, this.metrics.getMaxNodesVisited());
+        assertEquals(7, this.metrics.getMaxElementsTested());
+        assertEquals(17, this.metrics.getNodesVisited());
+        // queries other than range queries and counts are not recorded
+        this.tree.nearestNeighbours(5, 5, 3);
+        this.tree.rangeQueryStream(0, 0, 10, 10).count();
+        assertEquals(5, this.metrics.getQueries());
+    }
+
+    @Test
+    public void testEarlyStopCounters() {
+        this.tree.setMetrics(this.metrics);
+        this.tree.rangeQuery(-1, -1, 11, 11, element -> false);
+        // the query stops at the first element of the first leaf
+        assertCounters(this.metrics.snapshot(), 1, 2, 1, 1, 1);
+    }
+
+    @Test
+    public void testResetAndDetach() {
+        this.tree.setMetrics(this.metrics);
+        this.tree.count(0, 0, 3, 3);
+        assertEquals(1, this.metrics.getQueries());
+        this.metrics.reset();
+        assertCounters(this.metrics.snapshot(), 0, 0, 0, 0, 0);
+        assertEquals(0, this.metrics.getMaxNodesVisited());
+        assertEquals(0, this.metrics.getMaxElementsTested());
+        this.tree.count(0, 0, 3, 3);
+        assertCounters(this.metrics.snapshot(), 1, 5, 1, 3, 3);
+        this.tree.setMetrics(null);
+        assertNull(this.tree.getMetrics());
+        this.tree.count(0, 0, 3, 3);
+        this.tree.rangeQuery(0, 0, 3, 3, element -> true);
+        assertCounters(this.metrics.snapshot(), 1, 5, 1, 3, 3);
+    }
+
+    @Test
+    public void testFillBucket() {
+        final int[][] cases = { { 0, 4, 0 }, { 1, 4, 2 }, { 2, 4, 5 }, { 3, 4, 7 }, { 4, 4, 9 }, { 5, 4, 10 },
+                { 99, 100, 9 }, { 100, 100, 9 }, { 101, 100, 10 }, { 9, 100, 0 }, { 10, 100, 1 },
+                { Integer.MAX_VALUE, Integer.MAX_VALUE, 9 } };
+        for (final int[] test : cases) {
+            assertEquals(test[0] + " of " + test[1], test[2], QuadTreeStatistics.fillBucket(test[0], test[1]));
+        }
+    }
+
+    @Test
+    public void testStatistics() {
+        final QuadTreeStatistics statistics = this.tree.getStatistics();
+        assertEquals(4, statistics.getMaxLeafElements());
+        assertEquals(1, statistics.getDepth());
+        assertEquals(5, statistics.getNodeCount());
+        assertEquals(4, statistics.getLeafCount());
+        assertEquals(7, statistics.getStoredElements());
+        // leaves of 3, 1, 1 and 2 of 4 elements
+        assertArrayEquals(new int[] { 0, 0, 2, 0, 0, 1, 0, 1, 0, 0, 0 }, statistics.getLeafFillHistogram());
+        assertEquals(7.0 / 4 / 4, statistics.getMeanLeafFill(), 1e-12);
+        // the histogram is a copy
+        statistics.getLeafFillHistogram()[0] = 5;
+        assertEquals(0, statistics.getLeafFillHistogram()[0]);
+    }
+
+    @Test
+    public void testOverfullLeaf() {
+        final List<Element> elements = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            elements.add(new Element(3, 3));
+        }
+        final QuadTreeStatistics statistics = new SimpleQuadTree<>(elements, 4).getStatistics();
+        assertEquals(1, statistics.getLeafCount());
+        assertEquals(1, statistics.getLeafFillHistogram()[QuadTreeStatistics.FILL_BUCKETS]);
+        assertEquals(2.5, statistics.getMeanLeafFill(), 1e-12);
+    }
+}
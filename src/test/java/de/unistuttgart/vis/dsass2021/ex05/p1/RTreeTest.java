@@ -0,0 +1,211 @@
+package de.unistuttgart.vis.dsass2021.ex05.p1;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.unistuttgart.vis.dsass2021.ex05.p1.RTree;
+import de.unistuttgart.vis.dsass2021.ex05.p1.Rectangle;
+
+public class RTreeTest {
+
+    private Random random;
+
+    @Before
+    public void setUp() {
+        this.random = new Random(42);
+    }
+
+    /**
+     * Mostly tiny rectangles, some of them on an integer grid so that edges
+     * touch, and every twentieth one huge
+     */
+    private List<Rectangle> mixed(final int count) {
+        final List<Rectangle> rectangles = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            if (i % 20 == 0) {
+                rectangles.add(new Rectangle(this.random.nextFloat() * 100 - 50, this.random.nextFloat() * 100 - 50,
+                        20 + this.random.nextFloat() * 100, 20 + this.random.nextFloat() * 100));
+            } else if (i % 3 == 0) {
+                rectangles.add(new Rectangle(this.random.nextInt(100), this.random.nextInt(100),
+                        1 + this.random.nextInt(3), 1 + this.random.nextInt(3)));
+            } else {
+                rectangles.add(new Rectangle(this.random.nextFloat() * 100, this.random.nextFloat() * 100,
+                        0.001f + this.random.nextFloat(), 0.001f + this.random.nextFloat()));
+            }
+        }
+        return rectangles;
+    }
+
+    private static Set<Rectangle> identitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    private static Set<Rectangle> bruteForce(final List<Rectangle> rectangles, final float[] query) {
+        final Set<Rectangle> result = identitySet();
+        for (final Rectangle rectangle : rectangles) {
+            if (rectangle.getX() <= query[2] && rectangle.getX() + rectangle.getWidth() >= query[0]
+                    && rectangle.getY() <= query[3] && rectangle.getY() + rectangle.getHeight() >= query[1]) {
+                result.add(rectangle);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compares the visitor query and count with a brute force scan, and the
+     * list query with {@link Rectangle#intersects(Rectangle)} if the query is a
+     * rectangle.
+     */
+    private static void assertQuery(final RTree<Rectangle> tree, final List<Rectangle> rectangles,
+            final float[] query) {
+        final Set<Rectangle> expected = bruteForce(rectangles, query);
+        final Set<Rectangle> visited = identitySet();
+        assertTrue(tree.rangeQuery(query[0], query[1], query[2], query[3], rectangle -> {
+            assertTrue(visited.add(rectangle));
+            return true;
+        }));
+        assertEquals(expected, visited);
+        assertEquals(expected.size(), tree.count(query[0], query[1], query[2], query[3]));
+        if (query[2] > query[0] && query[3] > query[1] && Float.isFinite(query[2] - query[0])
+                && Float.isFinite(query[3] - query[1])) {
+            final Rectangle area = new Rectangle(query[0], query[1], query[2] - query[0], query[3] - query[1]);
+            final List<Rectangle> result = new ArrayList<>();
+            tree.rangeQuery(result, area);
+            final Set<Rectangle> intersecting = identitySet();
+            for (final Rectangle rectangle : rectangles) {
+                if (rectangle.intersects(area)) {
+                    intersecting.add(rectangle);
+                }
+            }
+            assertEquals(intersecting.size(), result.size());
+            assertTrue(intersecting.containsAll(result));
+        }
+    }
+
+    private void assertRandomQueries(final RTree<Rectangle> tree, final List<Rectangle> rectangles) {
+        for (int i = 0; i < 300; ++i) {
+            final float x = i % 3 == 0 ? this.random.nextInt(120) - 10 : this.random.nextFloat() * 200 - 70;
+            final float y = i % 3 == 0 ? this.random.nextInt(120) - 10 : this.random.nextFloat() * 200 - 70;
+            final float size = i % 3 == 0 ? this.random.nextInt(10) : this.random.nextFloat() * 30;
+            assertQuery(tree, rectangles, new float[] { x, y, x + size, y + size });
+        }
+        assertQuery(tree, rectangles, new float[] { Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY,
+                Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY });
+        // an inverted query finds nothing
+        assertQuery(tree, rectangles, new float[] { 60, 60, 40, 40 });
+    }
+
+    @Test
+    public void testMixedSizes() {
+        final List<Rectangle> rectangles = mixed(5000);
+        final RTree<Rectangle> tree = new RTree<>(rectangles, 8);
+        assertEquals(rectangles.size(), tree.size());
+        assertRandomQueries(tree, rectangles);
+    }
+
+    @Test
+    public void testNodeSizes() {
+        final List<Rectangle> rectangles = mixed(1000);
+        for (final int maxNodeEntries : new int[] { 2, 3, 64, 100, 2000 }) {
+            assertRandomQueries(new RTree<>(rectangles, maxNodeEntries), rectangles);
+        }
+    }
+
+    @Test
+    public void testEdgeContact() {
+        final List<Rectangle> rectangles = new ArrayList<>();
+        rectangles.add(new Rectangle(0, 0, 1, 1));
+        rectangles.add(new Rectangle(1, 0, 1, 1));
+        rectangles.add(new Rectangle(0, 1, 2, 1));
+        final RTree<Rectangle> tree = new RTree<>(rectangles, 2);
+        assertQuery(tree, rectangles, new float[] { 1, 1, 1, 1 });
+        assertQuery(tree, rectangles, new float[] { 2, 0, 3, 0 });
+        assertQuery(tree, rectangles, new float[] { -1, 2, 0, 3 });
+        assertQuery(tree, rectangles, new float[] { 2.5f, 2.5f, 3, 3 });
+        assertEquals(3, tree.count(1, 1, 1, 1));
+    }
+
+    @Test
+    public void testDegenerateInputs() {
+        // identical rectangles
+        final List<Rectangle> identical = new ArrayList<>();
+        for (int i = 0; i < 500; ++i) {
+            identical.add(new Rectangle(5, 5, 1, 1));
+        }
+        assertRandomQueries(new RTree<>(identical, 4), identical);
+        // rectangles on a line, all with the same center x
+        final List<Rectangle> line = new ArrayList<>();
+        for (int i = 0; i < 500; ++i) {
+            final float width = 0.5f + this.random.nextFloat() * 20;
+            line.add(new Rectangle(50 - width / 2, this.random.nextFloat() * 100, width, 0.5f));
+        }
+        assertRandomQueries(new RTree<>(line, 4), line);
+        // nested rectangles with the same center
+        final List<Rectangle> nested = new ArrayList<>();
+        for (int i = 1; i <= 200; ++i) {
+            nested.add(new Rectangle(50 - i / 4f, 50 - i / 4f, i / 2f, i / 2f));
+        }
+        assertRandomQueries(new RTree<>(nested, 4), nested);
+    }
+
+    @Test
+    public void testEmpty() {
+        final List<Rectangle> rectangles = new ArrayList<>();
+        final RTree<Rectangle> tree = new RTree<>(rectangles, 4);
+        assertEquals(0, tree.size());
+        assertRandomQueries(tree, rectangles);
+    }
+
+    @Test
+    public void testSingleElement() {
+        final List<Rectangle> rectangles = new ArrayList<>();
+        rectangles.add(new Rectangle(3, 4, 2, 1));
+        final RTree<Rectangle> tree = new RTree<>(rectangles, 4);
+        assertEquals(1, tree.size());
+        assertQuery(tree, rectangles, new float[] { 5, 5, 6, 6 });
+        assertQuery(tree, rectangles, new float[] { 5.5f, 5, 6, 6 });
+        assertRandomQueries(tree, rectangles);
+    }
+
+    @Test
+    public void testEarlyStop() {
+        final List<Rectangle> rectangles = mixed(2000);
+        final RTree<Rectangle> tree = new RTree<>(rectangles, 8);
+        final int[] visits = { 0 };
+        assertFalse(tree.rangeQuery(0, 0, 100, 100, rectangle -> ++visits[0] < 10));
+        assertEquals(10, visits[0]);
+        // stopping at the last element still reports an incomplete query
+        visits[0] = 0;
+        final int total = tree.count(0, 0, 100, 100);
+        assertFalse(tree.rangeQuery(0, 0, 100, 100, rectangle -> ++visits[0] < total));
+        assertEquals(total, visits[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullVisitor() {
+        new RTree<>(mixed(10), 4).rangeQuery(0, 0, 1, 1, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullElement() {
+        final List<Rectangle> rectangles = mixed(10);
+        rectangles.add(null);
+        new RTree<>(rectangles, 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxNodeEntries() {
+        new RTree<>(mixed(10), 1);
+    }
+}
@@ -4,6 +4,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -14,4 +15,232 @@ import de.unistuttgart.vis.dsass2021.ex05.p1.Rectangle;
 
 public class RectangleTest {
 
+    private static final float NAN = Float.NaN;
+    private static final float INF = Float.POSITIVE_INFINITY;
+
+    /**
+     * The box all batch tests query
+     */
+    private static final float[] BOX = { 0, 0, 10, 10 };
+
+    /**
+     * Points (x, y) and whether they are inside {@link #BOX}
+     */
+    private static final Object[][] POINTS = {
+            { 5f, 5f, true },
+            { 0f, 0f, true },
+            { 10f, 10f, true },
+            { 10f, 0f, true },
+            { 0f, 10f, true },
+            { -0f, 5f, true },
+            { 10f, 5f, true },
+            { Math.nextDown(0f), 5f, false },
+            { Math.nextUp(10f), 5f, false },
+            { 5f, Math.nextDown(0f), false },
+            { 5f, Math.nextUp(10f), false },
+            { NAN, 5f, false },
+            { 5f, NAN, false },
+            { NAN, NAN, false },
+            { INF, 5f, false },
+            { -INF, 5f, false },
+            { 5f, -INF, false },
+            { 20f, 20f, false } };
+
+    /**
+     * Boxes (minX, minY, maxX, maxY) and whether they intersect {@link #BOX}
+     */
+    private static final Object[][] BOXES = {
+            { 2f, 2f, 3f, 3f, true },
+            { -100f, -100f, 100f, 100f, true },
+            { 10f, 10f, 12f, 12f, true },
+            { -5f, -5f, 0f, 0f, true },
+            { 10f, 5f, 10f, 5f, true },
+            { -5f, 4f, 15f, 6f, true },
+            { -INF, -INF, INF, INF, true },
+            { Math.nextUp(10f), 0f, 20f, 10f, false },
+            { 0f, Math.nextUp(10f), 10f, 20f, false },
+            { -5f, -5f, Math.nextDown(0f), 5f, false },
+            { 0f, -5f, 5f, Math.nextDown(0f), false },
+            { NAN, 0f, 5f, 5f, false },
+            { 0f, 0f, 5f, NAN, false },
+            { 11f, 11f, 20f, 20f, false } };
+
+    /**
+     * The windows [from, to) that are tested, including empty windows,
+     * windows that start in the middle of the arrays and windows of exactly 64
+     * elements
+     */
+    private static final int[][] WINDOWS = { { 0, 0 }, { 0, 1 }, { 0, 18 }, { 3, 17 }, { 5, 5 }, { 0, 64 },
+            { 7, 71 }, { 36, 100 }, { 99, 100 } };
+
+    /**
+     * Inner boxes (minX, minY, maxX, maxY) and whether they are contained in
+     * {@link #BOX}
+     */
+    private static final Object[][] CONTAINED_BOXES = {
+            { 0f, 0f, 10f, 10f, true },
+            { 2f, 3f, 4f, 5f, true },
+            { 0f, 2f, 3f, 10f, true },
+            { 10f, 10f, 10f, 10f, true },
+            { 5f, 5f, 5f, 5f, true },
+            { 2f, 2f, Math.nextUp(10f), 5f, false },
+            { Math.nextDown(0f), 2f, 5f, 5f, false },
+            { 2f, 2f, 5f, 11f, false },
+            { -1f, -1f, 11f, 11f, false },
+            { 20f, 20f, 30f, 30f, false },
+            { -INF, 0f, 5f, 5f, false },
+            { NAN, 2f, 5f, 5f, false },
+            // inverted (empty) boxes are contained in every box, even if
+            // their corners lie outside
+            { 5f, 5f, 4f, 6f, true },
+            { 20f, 20f, 15f, 15f, true },
+            { -5f, 30f, 5f, 20f, true } };
+
+    /**
+     * Repeats the table to the given length, so windows of more than one table
+     * length can be tested.
+     */
+    private static float[] column(final Object[][] table, final int column, final int length) {
+        final float[] values = new float[length];
+        for (int i = 0; i < length; ++i) {
+            values[i] = (Float) table[i % table.length][column];
+        }
+        return values;
+    }
+
+    private static boolean expected(final Object[][] table, final int index) {
+        final Object[] row = table[index % table.length];
+        return (Boolean) row[row.length - 1];
+    }
+
+    @Test
+    public void testContainedPoints() {
+        final float[] xs = column(POINTS, 0, 100);
+        final float[] ys = column(POINTS, 1, 100);
+        for (final int[] window : WINDOWS) {
+            final int from = window[0];
+            final int to = window[1];
+            final long mask = Rectangle.containedPointsMask(BOX[0], BOX[1], BOX[2], BOX[3], xs, ys, from, to);
+            final int offset = 3;
+            final int[] result = new int[offset + to - from];
+            result[offset - 1] = -1;
+            final int count = Rectangle.selectContainedPoints(BOX[0], BOX[1], BOX[2], BOX[3], xs, ys, from, to,
+                    result, offset);
+            int expectedCount = 0;
+            for (int i = from; i < to; ++i) {
+                final String message = "point " + i + " in window " + from + ", " + to;
+                assertEquals(message, expected(POINTS, i), (mask >>> (i - from) & 1) != 0);
+                if (expected(POINTS, i)) {
+                    assertEquals(message, i, result[offset + expectedCount]);
+                    ++expectedCount;
+                }
+            }
+            // no bits beyond the window
+            assertEquals(0, to - from == Long.SIZE ? 0 : mask >>> (to - from));
+            assertEquals(expectedCount, Long.bitCount(mask));
+            assertEquals(expectedCount, count);
+            assertEquals(expectedCount, Rectangle.countContainedPoints(BOX[0], BOX[1], BOX[2], BOX[3], xs, ys, from,
+                    to));
+            // the positions before the offset are not written
+            assertEquals(-1, result[offset - 1]);
+        }
+    }
+
+    @Test
+    public void testIntersectingBoxes() {
+        final float[] minX = column(BOXES, 0, 100);
+        final float[] minY = column(BOXES, 1, 100);
+        final float[] maxX = column(BOXES, 2, 100);
+        final float[] maxY = column(BOXES, 3, 100);
+        for (final int[] window : WINDOWS) {
+            final int from = window[0];
+            final int to = window[1];
+            final long mask = Rectangle.intersectingBoxesMask(BOX[0], BOX[1], BOX[2], BOX[3], minX, minY, maxX, maxY,
+                    from, to);
+            final int offset = 5;
+            final int[] result = new int[offset + to - from];
+            result[offset - 1] = -1;
+            final int count = Rectangle.selectIntersectingBoxes(BOX[0], BOX[1], BOX[2], BOX[3], minX, minY, maxX,
+                    maxY, from, to, result, offset);
+            int expectedCount = 0;
+            for (int i = from; i < to; ++i) {
+                final String message = "box " + i + " in window " + from + ", " + to;
+                assertEquals(message, expected(BOXES, i), (mask >>> (i - from) & 1) != 0);
+                if (expected(BOXES, i)) {
+                    assertEquals(message, i, result[offset + expectedCount]);
+                    ++expectedCount;
+                }
+            }
+            assertEquals(0, to - from == Long.SIZE ? 0 : mask >>> (to - from));
+            assertEquals(expectedCount, Long.bitCount(mask));
+            assertEquals(expectedCount, count);
+            assertEquals(-1, result[offset - 1]);
+        }
+    }
+
+    /**
+     * The last of 64 points sets the sign bit of the mask.
+     */
+    @Test
+    public void testSixtyFourthBit() {
+        final float[] xs = new float[Long.SIZE];
+        final float[] ys = new float[Long.SIZE];
+        Arrays.fill(xs, 20);
+        xs[Long.SIZE - 1] = 5;
+        assertEquals(Long.MIN_VALUE, Rectangle.containedPointsMask(0, 0, 10, 10, xs, ys, 0, Long.SIZE));
+        assertEquals(-1L, Rectangle.intersectingBoxesMask(0, 0, 10, 10, ys, ys, ys, ys, 0, Long.SIZE));
+    }
+
+    /**
+     * A query with NaN bounds contains and intersects nothing.
+     */
+    @Test
+    public void testNaNQuery() {
+        final float[] xs = column(POINTS, 0, 18);
+        final float[] ys = column(POINTS, 1, 18);
+        assertEquals(0, Rectangle.containedPointsMask(NAN, 0, 10, 10, xs, ys, 0, 18));
+        assertEquals(0, Rectangle.countContainedPoints(0, 0, 10, NAN, xs, ys, 0, 18));
+        assertEquals(0, Rectangle.intersectingBoxesMask(NAN, NAN, NAN, NAN, xs, ys, xs, ys, 0, 18));
+    }
+
+    @Test
+    public void testContainsBox() {
+        for (final Object[] row : CONTAINED_BOXES) {
+            assertEquals(Arrays.toString(row), row[4], Rectangle.containsBox(BOX[0], BOX[1], BOX[2], BOX[3],
+                    (Float) row[0], (Float) row[1], (Float) row[2], (Float) row[3]));
+        }
+    }
+
+    @Test
+    public void testContains() {
+        final Rectangle rectangle = new Rectangle(0, 0, 10, 10);
+        assertTrue(rectangle.contains(rectangle));
+        assertTrue(rectangle.contains(new Rectangle(0, 0, 10, 10)));
+        assertTrue(rectangle.contains(new Rectangle(2, 3, 1, 7)));
+        assertTrue(rectangle.contains(new Rectangle(9, 9, 1, 1)));
+        assertFalse(rectangle.contains(new Rectangle(9, 9, 1.5f, 1)));
+        assertFalse(rectangle.contains(new Rectangle(-1, 2, 3, 3)));
+        assertFalse(rectangle.contains(new Rectangle(-1, -1, 12, 12)));
+        assertFalse(rectangle.contains(new Rectangle(20, 20, 1, 1)));
+        assertTrue(new Rectangle(-1, -1, 12, 12).contains(rectangle));
+        // containment implies intersection, but not the other way round
+        assertTrue(rectangle.intersects(new Rectangle(9, 9, 1.5f, 1)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testContainsNull() {
+        new Rectangle(0, 0, 1, 1).contains(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testContainedPointsMaskTooLong() {
+        final float[] values = new float[Long.SIZE + 1];
+        Rectangle.containedPointsMask(0, 0, 1, 1, values, values, 0, Long.SIZE + 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIntersectingBoxesMaskTooLong() {
+        final float[] values = new float[Long.SIZE + 2];
+        Rectangle.intersectingBoxesMask(0, 0, 1, 1, values, values, values, values, 1, Long.SIZE + 2);
+    }
 }
@@ -1,23 +1,762 @@
 package de.unistuttgart.vis.dsass2021.ex05.p1;
 
 import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import de.unistuttgart.vis.dsass2021.ex05.p1.BatchQueryResult;
 import de.unistuttgart.vis.dsass2021.ex05.p1.Point;
 import de.unistuttgart.vis.dsass2021.ex05.p1.QuadTree;
 import de.unistuttgart.vis.dsass2021.ex05.p1.QuadTreeElement;
+import de.unistuttgart.vis.dsass2021.ex05.p1.QuadTreeStatistics;
 import de.unistuttgart.vis.dsass2021.ex05.p1.Rectangle;
 import de.unistuttgart.vis.dsass2021.ex05.p1.SimpleQuadTree;
 
-
 public class SimpleQuadTreeTest {
 
+    /**
+     * A point element that is compared by identity
+     */
+    static final class Element implements QuadTreeElement {
+
+        private Point position;
+
+        Element(final float x, final float y) {
+            this.position = new Point(x, y);
+        }
+
+        @Override
+        public Point getPosition() {
+            return this.position;
+        }
+
+        void moveTo(final float x, final float y) {
+            this.position = new Point(x, y);
+        }
+
+        @Override
+        public String toString() {
+            return "Element" + this.position;
+        }
+    }
+
+    private Random random;
+
+    @Before
+    public void setUp() {
+        this.random = new Random(42);
+    }
+
+    /**
+     * Uniformly distributed points in [0, 100) x [0, 100)
+     */
+    private List<Element> uniform(final int count) {
+        final List<Element> elements = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            elements.add(new Element(this.random.nextFloat() * 100, this.random.nextFloat() * 100));
+        }
+        return elements;
+    }
+
+    /**
+     * Points on an integer grid, so that many of them lie on split lines and
+     * many coincide
+     */
+    private List<Element> onGrid(final int count) {
+        final List<Element> elements = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            elements.add(new Element(this.random.nextInt(65), this.random.nextInt(65)));
+        }
+        return elements;
+    }
+
+    private static List<Element> duplicates(final int count, final float x, final float y) {
+        final List<Element> elements = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            elements.add(new Element(x, y));
+        }
+        return elements;
+    }
+
+    /**
+     * A random query in [-10, 110) x [-10, 110), every third one with integer
+     * bounds on the split lines of a grid data set
+     */
+    private float[] randomQuery(final int index) {
+        if (index % 3 == 0) {
+            final float x = this.random.nextInt(70) - 3;
+            final float y = this.random.nextInt(70) - 3;
+            return new float[] { x, y, x + this.random.nextInt(40), y + this.random.nextInt(40) };
+        }
+        final float x = this.random.nextFloat() * 120 - 10;
+        final float y = this.random.nextFloat() * 120 - 10;
+        return new float[] { x, y, x + this.random.nextFloat() * 50, y + this.random.nextFloat() * 50 };
+    }
+
+    static Set<Element> identitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    static Set<Element> bruteForce(final Iterable<Element> elements, final float[] query) {
+        final Set<Element> result = identitySet();
+        for (final Element element : elements) {
+            final float x = element.getPosition().getXValue();
+            final float y = element.getPosition().getYValue();
+            if (x >= query[0] && x <= query[2] && y >= query[1] && y <= query[3]) {
+                result.add(element);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compares the visitor query, count and any with a brute force scan, and
+     * the list query if the query is a finite rectangle with a positive extent.
+     */
+    static void assertQuery(final QuadTree<Element> tree, final Iterable<Element> elements, final float[] query) {
+        final Set<Element> expected = bruteForce(elements, query);
+        final List<Element> visited = new ArrayList<>();
+        assertTrue(tree.rangeQuery(query[0], query[1], query[2], query[3], element -> visited.add(element)));
+        assertEquals(expected.size(), visited.size());
+        assertTrue(expected.containsAll(visited));
+        assertEquals(expected.size(), tree.count(query[0], query[1], query[2], query[3]));
+        assertEquals(!expected.isEmpty(), tree.any(query[0], query[1], query[2], query[3]));
+        if (query[2] > query[0] && query[3] > query[1] && Float.isFinite(query[2] - query[0])
+                && Float.isFinite(query[3] - query[1])) {
+            final List<Element> result = new ArrayList<>();
+            tree.rangeQuery(result, new Rectangle(query[0], query[1], query[2] - query[0], query[3] - query[1]));
+            assertEquals(expected.size(), result.size());
+            assertTrue(expected.containsAll(result));
+        }
+    }
+
+    private void assertRandomQueries(final QuadTree<Element> tree, final List<Element> elements, final int count) {
+        for (int i = 0; i < count; ++i) {
+            assertQuery(tree, elements, randomQuery(i));
+        }
+    }
+
+    @Test
+    public void testRangeQueryUniform() {
+        final List<Element> elements = uniform(5000);
+        assertRandomQueries(new SimpleQuadTree<>(elements, 4), elements, 300);
+    }
+
+    @Test
+    public void testRangeQuerySplitLines() {
+        final List<Element> elements = onGrid(5000);
+        final SimpleQuadTree<Element> tree = new SimpleQuadTree<>(elements, 4);
+        assertRandomQueries(tree, elements, 300);
+        // queries that end exactly on the split lines of the root
+        final float midX = 32;
+        final float midY = 32;
+        assertQuery(tree, elements, new float[] { 0, 0, midX, midY });
+        assertQuery(tree, elements, new float[] { midX, midY, 64, 64 });
+        assertQuery(tree, elements, new float[] { midX, 0, midX, 64 });
+    }
+
+    @Test
+    public void testRangeQueryDuplicates() {
+        final List<Element> elements = duplicates(50, 5, 5);
+        elements.addAll(duplicates(50, 7, 5));
+        final SimpleQuadTree<Element> tree = new SimpleQuadTree<>(elements, 4);
+        assertQuery(tree, elements, new float[] { 5, 5, 5, 5 });
+        assertQuery(tree, elements, new float[] { 0, 0, 10, 10 });
+        assertQuery(tree, elements, new float[] { 6, 0, 10, 10 });
+        assertQuery(tree, elements, new float[] { 0, 6, 10, 10 });
+    }
+
+    @Test
+    public void testSinglePoint() {
+        final List<Element> elements = duplicates(1, 3, 4);
+        final SimpleQuadTree<Element> tree = new SimpleQuadTree<>(elements, 1);
+        assertQuery(tree, elements, new float[] { 3, 4, 3, 4 });
+        assertQuery(tree, elements, new float[] { 0, 0, 2, 2 });
+    }
+
+    @Test
+    public void testEmptyTree() {
+        final List<Element> elements = new ArrayList<>();
+        final SimpleQuadTree<Element> tree = new SimpleQuadTree<>(elements, 4);
+        assertQuery(tree, elements, new float[] { -1, -1, 1, 1 });
+    }
+
+    @Test
+    public void testInvertedQuery() {
+        final List<Element> elements = uniform(1000);
+        final SimpleQuadTree<Element> tree = new SimpleQuadTree<>(elements, 4);
+        for (int i = 0; i < 50; ++i) {
+            final float[] query = randomQuery(i);
+            final float[] inverted = { query[2] + 1, query[1], query[0], query[3] };
+            assertEquals(0, tree.count(inverted[0], inverted[1], inverted[2], inverted[3]));
+            assertFalse(tree.any(inverted[0], inverted[1], inverted[2], inverted[3]));
+            assertTrue(tree.rangeQuery(inverted[0], inverted[1], inverted[2], inverted[3], element -> {
+                throw new AssertionError("visited " + element);
+            }));
+        }
+    }
+
+    @Test
+    public void testUnboundedQuery() {
+        final List<Element> elements = onGrid(1000);
+        final SimpleQuadTree<Element> tree = new SimpleQuadTree<>(elements, 4);
+        assertQuery(tree, elements, new float[] { Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY,
+                Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY });
+    }
+
+    @Test
+    public void testEarlyStop() {
+        final List<Element> elements = onGrid(2000);
+        final SimpleQuadTree<Element> tree = new SimpleQuadTree<>(elements, 4);
+        for (int i = 0; i < 100; ++i) {
+            final float[] query = randomQuery(i);
+            final int expected = bruteForce(elements, query).size();
+            final int[] visits = { 0 };
+            final boolean complete = tree.rangeQuery(query[0], query[1], query[2], query[3],
+                    element -> ++visits[0] < 3);
+            assertEquals(expected < 3, complete);
+            assertEquals(Math.min(expected, 3), visits[0]);
+            // any stops at the first element
+            assertEquals(expected > 0, tree.any(query[0], query[1], query[2], query[3]));
+        }
+    }
+
+    /**
+     * Interleaves inserts, removals and moves with queries and compares every
+     * query with the list of the currently stored elements.
+     */
+    @Test
+    public void testRandomUpdates() {
+        final List<Element> elements = onGrid(500);
+        final SimpleQuadTree<Element> tree = new SimpleQuadTree<>(new ArrayList<>(elements), 4);
+        for (int step = 0; step < 3000; ++step) {
+            final int operation = this.random.nextInt(4);
+            if (operation == 0 || elements.isEmpty()) {
+                // some inserts lie outside of the bounding box and grow the tree
+                final Element element = step % 50 == 0
+                        ? new Element(this.random.nextFloat() * 200 - 50, this.random.nextFloat() * 200 - 50)
+                        : new Element(this.random.nextInt(65), this.random.nextInt(65));
+                tree.insert(element);
+                elements.add(element);
+            } else if (operation == 1) {
+                final Element element = elements.remove(this.random.nextInt(elements.size()));
+                assertTrue(tree.remove(element));
+                assertFalse(tree.remove(element));
+            } else if (operation == 2) {
+                final Element element = elements.get(this.random.nextInt(elements.size()));
+                final Point oldPosition = element.getPosition();
+                element.moveTo(this.random.nextInt(65), this.random.nextInt(65));
+                assertTrue(tree.update(element, oldPosition));
+            } else {
+                assertQuery(tree, elements, randomQuery(step));
+            }
+        }
+        assertRandomQueries(tree, elements, 200);
+        assertQuery(tree, elements, new float[] { Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY,
+                Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY });
+    }
+
+    /**
+     * The count of a node that lies inside the query is taken from the owned
+     * count of the node, which every update has to maintain. Queries that
+     * contain whole quadrants of a grid data set check it after each update.
+     */
+    @Test
+    public void testCountAfterUpdates() {
+        final List<Element> elements = onGrid(2000);
+        final SimpleQuadTree<Element> tree = new SimpleQuadTree<>(new ArrayList<>(elements), 4);
+        final SimpleQuadTree<Element> bounded = SimpleQuadTree.createBounded(new ArrayList<>(elements), 4);
+        for (int step = 0; step < 2000; ++step) {
+            final int operation = this.random.nextInt(3);
+            if (operation == 0 || elements.isEmpty()) {
+                final Element element = new Element(this.random.nextInt(65), this.random.nextInt(65));
+                tree.insert(element);
+                bounded.insert(element);
+                elements.add(element);
+            } else if (operation == 1) {
+                final Element element = elements.remove(this.random.nextInt(elements.size()));
+                assertTrue(tree.remove(element));
+                assertTrue(bounded.remove(element));
+            } else {
+                final Element element = elements.get(this.random.nextInt(elements.size()));
+                final Point oldPosition = element.getPosition();
+                element.moveTo(this.random.nextInt(65), this.random.nextInt(65));
+                assertTrue(tree.update(element, oldPosition));
+                assertTrue(bounded.update(element, oldPosition));
+            }
+            if (step % 10 == 0) {
+                final int size = 1 << this.random.nextInt(7);
+                final float x = size * this.random.nextInt(64 / size + 1);
+                final float y = size * this.random.nextInt(64 / size + 1);
+                final float[] query = { x, y, x + size, y + size };
+                final int expected = bruteForce(elements, query).size();
+                assertEquals(expected, tree.count(query[0], query[1], query[2], query[3]));
+                assertEquals(expected, bounded.count(query[0], query[1], query[2], query[3]));
+            }
+        }
+        final float[] all = { -1, -1, 100, 100 };
+        assertEquals(elements.size(), tree.count(all[0], all[1], all[2], all[3]));
+        assertEquals(elements.size(), bounded.count(all[0], all[1], all[2], all[3]));
+        assertRandomQueries(tree, elements, 200);
+        assertRandomQueries(bounded, elements, 200);
+    }
+
+    /**
+     * Removing almost all elements must merge the leaves again.
+     */
+    @Test
+    public void testMassRemovalMerges() {
+        final List<Element> elements = uniform(5000);
+        final SimpleQuadTree<Element> tree = new SimpleQuadTree<>(new ArrayList<>(elements), 4);
+        final int nodesBefore = tree.getStatistics().getNodeCount();
+        assertTrue(nodesBefore > 1000);
+        Collections.shuffle(elements, this.random);
+        while (elements.size() > 3) {
+            assertTrue(tree.remove(elements.remove(elements.size() - 1)));
+        }
+        // at most maxElementsInLeaf elements are left, so the root is a leaf
+        assertEquals(1, tree.getStatistics().getNodeCount());
+        assertEquals(3, tree.getStatistics().getStoredElements());
+        assertRandomQueries(tree, elements, 50);
+        assertTrue(tree.remove(elements.remove(0)));
+        assertTrue(tree.remove(elements.remove(0)));
+        assertTrue(tree.remove(elements.remove(0)));
+        assertEquals(1, tree.getStatistics().getNodeCount());
+        assertEquals(0, tree.count(0, 0, 100, 100));
+    }
+
+    @Test
+    public void testMassRemovalMergesOnSplitLines() {
+        final List<Element> elements = onGrid(3000);
+        final SimpleQuadTree<Element> tree = new SimpleQuadTree<>(new ArrayList<>(elements), 4);
+        final int nodesBefore = tree.getStatistics().getNodeCount();
+        Collections.shuffle(elements, this.random);
+        while (elements.size() > 100) {
+            assertTrue(tree.remove(elements.remove(elements.size() - 1)));
+        }
+        final int nodesAfter = tree.getStatistics().getNodeCount();
+        assertTrue(nodesAfter + " of " + nodesBefore + " nodes left", nodesAfter * 5 < nodesBefore);
+        assertRandomQueries(tree, elements, 100);
+    }
+
+    /**
+     * Gaussian clusters of different spread, every fourth point rounded to
+     * integers so that the clusters also contain coincident points
+     */
+    private List<Element> clustered(final int count) {
+        final List<Element> elements = new ArrayList<>();
+        final float[][] centers = { { 10, 10 }, { 80, 20 }, { 50, 50 }, { 30, 90 } };
+        final float[] spreads = { 0.5f, 3, 10, 0.01f };
+        for (int i = 0; i < count; ++i) {
+            final int cluster = i % centers.length;
+            final float x = centers[cluster][0] + (float) this.random.nextGaussian() * spreads[cluster];
+            final float y = centers[cluster][1] + (float) this.random.nextGaussian() * spreads[cluster];
+            elements.add(i % 4 == 0 ? new Element(Math.round(x), Math.round(y)) : new Element(x, y));
+        }
+        return elements;
+    }
+
+    /**
+     * Builds the tree sequentially and in parallel, in the common pool and in
+     * a pool of its own, and checks that the trees have the same shape and
+     * answer the same queries as a brute force scan.
+     */
+    private void assertParallelBuild(final List<Element> elements, final int maxElementsInLeaf) {
+        final SimpleQuadTree<Element> sequential = new SimpleQuadTree<>(new ArrayList<>(elements),
+                maxElementsInLeaf);
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final List<SimpleQuadTree<Element>> parallel = Arrays.asList(
+                    SimpleQuadTree.createParallel(elements, maxElementsInLeaf),
+                    SimpleQuadTree.createParallel(elements, maxElementsInLeaf, pool));
+            final QuadTreeStatistics expected = sequential.getStatistics();
+            for (final SimpleQuadTree<Element> tree : parallel) {
+                final QuadTreeStatistics statistics = tree.getStatistics();
+                assertEquals(expected.getNodeCount(), statistics.getNodeCount());
+                assertEquals(expected.getLeafCount(), statistics.getLeafCount());
+                assertEquals(expected.getDepth(), statistics.getDepth());
+                assertEquals(expected.getStoredElements(), statistics.getStoredElements());
+                for (int i = 0; i < 100; ++i) {
+                    final float[] query = randomQuery(i);
+                    assertQuery(tree, elements, query);
+                    assertEquals(sequential.count(query[0], query[1], query[2], query[3]),
+                            tree.count(query[0], query[1], query[2], query[3]));
+                }
+                assertQuery(tree, elements, new float[] { Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY,
+                        Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY });
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testParallelBuildClustered() {
+        // more elements than the threshold above which subtrees are forked
+        assertParallelBuild(clustered(40000), 8);
+    }
+
+    @Test
+    public void testParallelBuildOnGrid() {
+        assertParallelBuild(onGrid(20000), 4);
+    }
+
+    @Test
+    public void testParallelBuildDuplicates() {
+        assertParallelBuild(duplicates(20000, 5, 5), 4);
+        final List<Element> elements = duplicates(10000, 5, 5);
+        elements.addAll(duplicates(10000, 7, 5));
+        assertParallelBuild(elements, 4);
+    }
+
+    /**
+     * Builds a bounded tree, checks that it stores every element once within
+     * the depth limit, and compares queries with a brute force scan. Then
+     * inserts copies of the elements and checks the limits again.
+     */
+    private void assertBounded(final List<Element> elements, final int maxDepth, final float[]... queries) {
+        final SimpleQuadTree<Element> tree = SimpleQuadTree.createBounded(new ArrayList<>(elements), 4, maxDepth,
+                0);
+        assertTrue(tree.getStatistics().getDepth() <= maxDepth);
+        assertEquals(elements.size(), tree.getStatistics().getStoredElements());
+        for (final float[] query : queries) {
+            assertQuery(tree, elements, query);
+        }
+        final List<Element> all = new ArrayList<>(elements);
+        for (final Element element : elements) {
+            final Element copy = new Element(element.getPosition().getXValue(), element.getPosition().getYValue());
+            tree.insert(copy);
+            all.add(copy);
+        }
+        assertTrue(tree.getStatistics().getDepth() <= maxDepth);
+        assertEquals(all.size(), tree.getStatistics().getStoredElements());
+        for (final float[] query : queries) {
+            assertQuery(tree, all, query);
+        }
+    }
+
+    @Test
+    public void testBoundedDuplicates() {
+        final float[] point = { 5, 5, 5, 5 };
+        final float[] around = { 0, 0, 10, 10 };
+        final float[] beside = { 5.5f, 0, 10, 10 };
+        final SimpleQuadTree<Element> tree = SimpleQuadTree.createBounded(duplicates(10000, 5, 5), 4);
+        assertEquals(1, tree.getStatistics().getNodeCount());
+        assertBounded(duplicates(10000, 5, 5), 24, point, around, beside);
+        // two stacks of duplicates and a few other points
+        final List<Element> elements = duplicates(5000, 5, 5);
+        elements.addAll(duplicates(5000, Math.nextUp(5f), 5));
+        elements.addAll(uniform(20));
+        assertBounded(elements, 24, point, around, beside, new float[] { Math.nextUp(5f), 5, 6, 5 });
+        assertBounded(elements, 3, point, around, beside, new float[] { Math.nextUp(5f), 5, 6, 5 });
+    }
+
+    @Test
+    public void testBoundedCollinear() {
+        final List<Element> horizontal = new ArrayList<>();
+        final List<Element> vertical = new ArrayList<>();
+        final List<Element> diagonal = new ArrayList<>();
+        for (int i = 0; i < 3000; ++i) {
+            final float t = i % 2 == 0 ? this.random.nextInt(65) : this.random.nextFloat() * 64;
+            horizontal.add(new Element(t, 7));
+            vertical.add(new Element(-3, t));
+            diagonal.add(new Element(t, t));
+        }
+        for (final List<Element> elements : Arrays.asList(horizontal, vertical, diagonal)) {
+            final float[][] queries = new float[101][];
+            for (int i = 0; i < 100; ++i) {
+                queries[i] = randomQuery(i);
+                // queries around the lines
+                if (i % 2 == 0) {
+                    queries[i][1] -= 60;
+                    queries[i][0] -= 10;
+                }
+            }
+            queries[100] = new float[] { 16, 16, 32, 32 };
+            assertBounded(elements, 24, queries);
+            assertBounded(elements, 5, queries);
+        }
+    }
+
+    @Test
+    public void testBoundedExtremeCoordinates() {
+        final float max = Float.MAX_VALUE;
+        final List<Element> elements = new ArrayList<>();
+        elements.add(new Element(-max, -max));
+        elements.add(new Element(max, max));
+        elements.add(new Element(-max, max));
+        elements.add(new Element(max, -max));
+        elements.add(new Element(0, 0));
+        // a dense cluster of tiny coordinates far below the cell size reachable
+        // from the root within the depth limit
+        for (int i = 0; i < 2000; ++i) {
+            elements.add(new Element(this.random.nextFloat() * Float.MIN_NORMAL,
+                    (this.random.nextFloat() - 0.5f) * 1e-30f));
+        }
+        for (int i = 0; i < 1000; ++i) {
+            elements.add(new Element((this.random.nextFloat() * 2 - 1) * max, (this.random.nextFloat() * 2 - 1) * max));
+        }
+        final float[][] queries = {
+                { -max, -max, max, max },
+                { Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY },
+                { 0, 0, 0, 0 },
+                { 0, -1e-30f, Float.MIN_NORMAL, 1e-30f },
+                { 0, 0, Float.MIN_NORMAL / 2, 1 },
+                { -max, -max, 0, 0 },
+                { 0, 0, max, max },
+                { max, max, max, max },
+                { -max / 2, -max / 4, max / 3, max / 5 },
+                { 1, 1, max, 2 } };
+        assertBounded(elements, 24, queries);
+        assertBounded(elements, 100, queries);
+        assertBounded(elements, 0, queries);
+    }
+
+    /**
+     * Checks that the elements are exactly the brute force result, each one
+     * once.
+     */
+    private static void assertSameElements(final Set<Element> expected, final List<Element> found) {
+        final Set<Element> distinct = identitySet();
+        distinct.addAll(found);
+        assertEquals(found.size(), distinct.size());
+        assertEquals(expected, distinct);
+    }
+
+    /**
+     * Compares the sequential and the parallel stream and the iterator with a
+     * brute force scan and with the visitor query.
+     */
+    private static void assertStreamQuery(final SimpleQuadTree<Element> tree, final Iterable<Element> elements,
+            final float[] query) {
+        final Set<Element> expected = bruteForce(elements, query);
+        final List<Element> visited = new ArrayList<>();
+        tree.rangeQuery(query[0], query[1], query[2], query[3], element -> visited.add(element));
+        assertSameElements(expected, visited);
+        assertSameElements(expected, tree.rangeQueryStream(query[0], query[1], query[2], query[3])
+                .collect(Collectors.toList()));
+        assertSameElements(expected, tree.rangeQueryStream(query[0], query[1], query[2], query[3]).parallel()
+                .collect(Collectors.toList()));
+        final Iterator<Element> iterator = tree.rangeQueryIterator(query[0], query[1], query[2], query[3]);
+        final List<Element> iterated = new ArrayList<>();
+        while (iterator.hasNext()) {
+            iterated.add(iterator.next());
+        }
+        assertSameElements(expected, iterated);
+        assertFalse(iterator.hasNext());
+        try {
+            iterator.next();
+            fail("an exhausted iterator must throw");
+        } catch (final NoSuchElementException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRangeQueryStream() {
+        final List<Element> elements = uniform(20000);
+        final SimpleQuadTree<Element> tree = new SimpleQuadTree<>(new ArrayList<>(elements), 4);
+        for (int i = 0; i < 100; ++i) {
+            assertStreamQuery(tree, elements, randomQuery(i));
+        }
+        assertStreamQuery(tree, elements, new float[] { Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY,
+                Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY });
+        assertStreamQuery(tree, elements, new float[] { 200, 200, 300, 300 });
+        assertStreamQuery(tree, elements, new float[] { 60, 60, 40, 40 });
+        // the stream is lazy and can be stopped early
+        assertEquals(10, tree.rangeQueryStream(0, 0, 100, 100).limit(10).count());
+    }
+
+    /**
+     * Points on the split lines are stored in several leaves of the inclusive
+     * tree and must still be returned once.
+     */
+    @Test
+    public void testRangeQueryStreamSplitLines() {
+        final List<Element> elements = onGrid(5000);
+        elements.addAll(duplicates(100, 32, 32));
+        final SimpleQuadTree<Element> tree = new SimpleQuadTree<>(new ArrayList<>(elements), 4);
+        assertTrue(tree.getStatistics().getStoredElements() > elements.size());
+        for (int i = 0; i < 100; ++i) {
+            assertStreamQuery(tree, elements, randomQuery(3 * i));
+        }
+        assertStreamQuery(tree, elements, new float[] { 32, 32, 32, 32 });
+        assertStreamQuery(tree, elements, new float[] { 0, 0, 64, 64 });
+        assertStreamQuery(tree, elements, new float[] { 16, 0, 48, 64 });
+    }
+
+    @Test
+    public void testRangeQueryStreamEmptyTree() {
+        final List<Element> elements = new ArrayList<>();
+        final SimpleQuadTree<Element> tree = new SimpleQuadTree<>(elements, 4);
+        assertStreamQuery(tree, elements, new float[] { -1, -1, 1, 1 });
+        assertEquals(null, tree.rangeQueryStream(-1, -1, 1, 1).spliterator().trySplit());
+    }
+
+    @Test
+    public void testRangeSpliterator() {
+        final List<Element> elements = uniform(5000);
+        final SimpleQuadTree<Element> tree = new SimpleQuadTree<>(new ArrayList<>(elements), 4);
+        final float[] query = { 10, 10, 90, 90 };
+        final Spliterator<Element> spliterator = tree.rangeQueryStream(query[0], query[1], query[2], query[3])
+                .spliterator();
+        assertTrue(spliterator.hasCharacteristics(Spliterator.NONNULL));
+        assertFalse(spliterator.hasCharacteristics(Spliterator.SIZED));
+        assertEquals(Long.MAX_VALUE, spliterator.estimateSize());
+        final Spliterator<Element> prefix = spliterator.trySplit();
+        assertTrue(prefix != null);
+        assertEquals(Long.MAX_VALUE >>> 1, spliterator.estimateSize());
+        assertEquals(Long.MAX_VALUE >>> 1, prefix.estimateSize());
+        // split the halves further and consume all parts
+        final List<Spliterator<Element>> parts = new ArrayList<>(Arrays.asList(spliterator, prefix));
+        for (int i = 0; i < 6; ++i) {
+            final Spliterator<Element> part = parts.get(i).trySplit();
+            if (part != null) {
+                parts.add(part);
+            }
+        }
+        final List<Element> found = new ArrayList<>();
+        for (final Spliterator<Element> part : parts) {
+            part.forEachRemaining(found::add);
+            assertFalse(part.tryAdvance(found::add));
+        }
+        assertSameElements(bruteForce(elements, query), found);
+        // a tree that is a single leaf cannot be split
+        final List<Element> few = uniform(3);
+        assertEquals(null, new SimpleQuadTree<>(few, 4).rangeQueryStream(0, 0, 100, 100).spliterator().trySplit());
+    }
+
+    /**
+     * Compares every query of the batch with a single range query.
+     */
+    private static void assertBatch(final SimpleQuadTree<Element> tree, final Iterable<Element> elements,
+            final Rectangle[] queries, final ForkJoinPool pool) {
+        final BatchQueryResult<Element> result = tree.batchRangeQuery(queries, pool);
+        assertEquals(queries.length, result.queryCount());
+        for (int query = 0; query < queries.length; ++query) {
+            final Rectangle rectangle = queries[query];
+            final List<Element> single = new ArrayList<>();
+            tree.rangeQuery(single, rectangle);
+            final Set<Element> expected = bruteForce(elements, new float[] { rectangle.getX(), rectangle.getY(),
+                    rectangle.getX() + rectangle.getWidth(), rectangle.getY() + rectangle.getHeight() });
+            assertSameElements(expected, single);
+            final List<Element> hits = new ArrayList<>();
+            for (int i = 0; i < result.size(query); ++i) {
+                hits.add(result.get(query, i));
+            }
+            assertSameElements(expected, hits);
+            final List<Element> visited = new ArrayList<>();
+            assertTrue(result.forEach(query, element -> visited.add(element)));
+            assertEquals(hits, visited);
+        }
+    }
+
+    private Rectangle[] randomBatch(final int count) {
+        final Rectangle[] queries = new Rectangle[count];
+        for (int i = 0; i < count; ++i) {
+            if (i % 10 == 9) {
+                // the same rectangle as the previous query
+                queries[i] = queries[i - 1];
+            } else if (i % 10 == 8) {
+                // outside of the root
+                queries[i] = new Rectangle(-50 - this.random.nextFloat() * 20, this.random.nextFloat() * 100,
+                        10, 10);
+            } else {
+                final float[] query = randomQuery(i);
+                queries[i] = new Rectangle(query[0], query[1], Math.max(query[2] - query[0], 0.5f),
+                        Math.max(query[3] - query[1], 0.5f));
+            }
+        }
+        return queries;
+    }
+
+    @Test
+    public void testBatchRangeQuery() {
+        final List<Element> elements = onGrid(5000);
+        final SimpleQuadTree<Element> tree = new SimpleQuadTree<>(new ArrayList<>(elements), 4);
+        assertBatch(tree, elements, randomBatch(300), null);
+        assertBatch(tree, elements, new Rectangle[] { new Rectangle(32, 32, 1, 1), new Rectangle(32, 32, 1, 1),
+                new Rectangle(-10, -10, 200, 200) }, null);
+        final BatchQueryResult<Element> empty = tree.batchRangeQuery(new Rectangle[0]);
+        assertEquals(0, empty.queryCount());
+    }
+
+    @Test
+    public void testBatchRangeQueryParallel() {
+        final List<Element> elements = uniform(10000);
+        final SimpleQuadTree<Element> tree = new SimpleQuadTree<>(new ArrayList<>(elements), 4);
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            // enough queries for 4 * parallelism partitions of at least 64
+            // queries each
+            assertBatch(tree, elements, randomBatch(2000), pool);
+            assertBatch(tree, elements, randomBatch(130), pool);
+            assertBatch(tree, elements, randomBatch(5), pool);
+            assertEquals(0, tree.batchRangeQuery(new Rectangle[0], pool).queryCount());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testBatchQueryResultAccess() {
+        final List<Element> elements = duplicates(20, 5, 5);
+        final SimpleQuadTree<Element> tree = new SimpleQuadTree<>(elements, 4);
+        final BatchQueryResult<Element> result = tree.batchRangeQuery(new Rectangle[] { new Rectangle(0, 0, 10, 10),
+                new Rectangle(6, 6, 1, 1) });
+        assertEquals(20, result.size(0));
+        assertEquals(0, result.size(1));
+        final int[] visits = { 0 };
+        assertFalse(result.forEach(0, element -> ++visits[0] < 5));
+        assertEquals(5, visits[0]);
+        try {
+            result.get(1, 0);
+            fail("the second query has no hits");
+        } catch (final IndexOutOfBoundsException e) {
+            // expected
+        }
+        try {
+            result.size(2);
+            fail("there are only two queries");
+        } catch (final IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBatchWithNullQuery() {
+        new SimpleQuadTree<>(uniform(10), 4).batchRangeQuery(new Rectangle[] { new Rectangle(0, 0, 1, 1), null });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullVisitor() {
+        new SimpleQuadTree<>(uniform(10), 4).rangeQuery(0, 0, 1, 1, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullQuery() {
+        new SimpleQuadTree<>(uniform(10), 4).rangeQuery(new ArrayList<>(), null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxElementsInLeaf() {
+        new SimpleQuadTree<>(uniform(10), 0);
+    }
 }
@@ -1,8 +1,16 @@
 package de.unistuttgart.vis.dsass2021.ex05.p2;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.Before;
@@ -13,4 +21,301 @@ import de.unistuttgart.vis.dsass2021.ex05.p2.CollisionMap;
 
 public class CollisionMapTest {
 
+    private Random random;
+
+    @Before
+    public void setUp() {
+        this.random = new Random(42);
+    }
+
+    /**
+     * A random rectangle within [0, 100] x [0, 100]
+     */
+    private Rectangle randomRectangle(final float maxSize) {
+        final float width = Math.max(0.01f, this.random.nextFloat() * maxSize);
+        final float height = Math.max(0.01f, this.random.nextFloat() * maxSize);
+        return new Rectangle(this.random.nextFloat() * (100 - width), this.random.nextFloat() * (100 - height),
+                width, height);
+    }
+
+    /**
+     * A rectangle with integer bounds within [0, 100] x [0, 100], so that its
+     * edges lie on the cell borders of grids with a resolution dividing 100
+     */
+    private Rectangle alignedRectangle() {
+        final int x = this.random.nextInt(100);
+        final int y = this.random.nextInt(100);
+        return new Rectangle(x, y, 1 + this.random.nextInt(100 - x), 1 + this.random.nextInt(100 - y));
+    }
+
+    /**
+     * A random rectangle that lies partly or completely outside of [0, 100] x
+     * [0, 100]
+     */
+    private Rectangle outsideRectangle() {
+        return new Rectangle(this.random.nextFloat() * 300 - 100, 100 + this.random.nextFloat() * 100,
+                0.01f + this.random.nextFloat() * 20, 0.01f + this.random.nextFloat() * 20);
+    }
+
+    private Set<Rectangle> randomRectangles(final int count, final float maxSize) {
+        final Set<Rectangle> rectangles = new HashSet<>();
+        for (int i = 0; i < count; ++i) {
+            rectangles.add(i % 4 == 0 ? alignedRectangle() : randomRectangle(maxSize));
+        }
+        // span the bounding rectangle exactly to [0, 100] x [0, 100]
+        rectangles.add(new Rectangle(0, 0, 1, 1));
+        rectangles.add(new Rectangle(99, 99, 1, 1));
+        return rectangles;
+    }
+
+    static Set<Rectangle> identitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    static Set<Rectangle> bruteForce(final Collection<Rectangle> rectangles, final Rectangle query) {
+        final Set<Rectangle> result = identitySet();
+        for (final Rectangle rectangle : rectangles) {
+            if (rectangle.intersects(query)) {
+                result.add(rectangle);
+            }
+        }
+        return result;
+    }
+
+    static long bruteForcePairs(final Collection<Rectangle> rectangles) {
+        final List<Rectangle> list = new ArrayList<>(rectangles);
+        long pairs = 0;
+        for (int i = 0; i < list.size(); ++i) {
+            for (int j = i + 1; j < list.size(); ++j) {
+                if (list.get(i).intersects(list.get(j))) {
+                    ++pairs;
+                }
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Compares collide and forEachCollision with a brute force scan.
+     */
+    static void assertCollisions(final BroadPhase map, final Collection<Rectangle> rectangles,
+            final Rectangle query) {
+        final Set<Rectangle> expected = bruteForce(rectangles, query);
+        final List<Rectangle> found = new ArrayList<>();
+        assertEquals(expected.size(), map.forEachCollision(query, found::add));
+        assertEquals(expected.size(), found.size());
+        assertTrue(expected.containsAll(found));
+        assertEquals(!expected.isEmpty(), map.collide(query));
+    }
+
+    /**
+     * Compares the all-pairs search with a brute force scan; every pair must be
+     * reported once.
+     */
+    static void assertPairs(final BroadPhase map, final Collection<Rectangle> rectangles) {
+        final Set<List<Rectangle>> pairs = new HashSet<>();
+        final long count = map.forEachCollidingPair((first, second) -> {
+            assertTrue(first.intersects(second));
+            final int order = System.identityHashCode(first) - System.identityHashCode(second);
+            assertTrue(pairs.add(order <= 0 ? List.of(first, second) : List.of(second, first)));
+        });
+        assertEquals(bruteForcePairs(rectangles), count);
+        assertEquals(count, pairs.size());
+    }
+
+    private void assertRandomQueries(final BroadPhase map, final Collection<Rectangle> rectangles,
+            final int count) {
+        for (int i = 0; i < count; ++i) {
+            final Rectangle query;
+            if (i % 3 == 0) {
+                query = alignedRectangle();
+            } else {
+                // also queries that reach beyond the grid
+                query = new Rectangle(this.random.nextFloat() * 140 - 20, this.random.nextFloat() * 140 - 20,
+                        0.01f + this.random.nextFloat() * 30, 0.01f + this.random.nextFloat() * 30);
+            }
+            assertCollisions(map, rectangles, query);
+        }
+    }
+
+    @Test
+    public void testDefaultResolution() {
+        final Set<Rectangle> rectangles = randomRectangles(2000, 5);
+        final CollisionMap map = new CollisionMap(rectangles);
+        assertRandomQueries(map, rectangles, 300);
+        assertPairs(map, rectangles);
+    }
+
+    @Test
+    public void testCellBorders() {
+        final Set<Rectangle> rectangles = new HashSet<>();
+        for (int i = 0; i < 500; ++i) {
+            rectangles.add(alignedRectangle());
+        }
+        rectangles.add(new Rectangle(0, 0, 100, 100));
+        final CollisionMap map = new CollisionMap(rectangles, 10, 10);
+        assertRandomQueries(map, rectangles, 300);
+        // queries that touch the stored rectangles only on a cell border
+        for (int border = 0; border <= 100; border += 10) {
+            assertCollisions(map, rectangles, new Rectangle(border, 0, 0.001f, 100));
+            assertCollisions(map, rectangles, new Rectangle(0, border, 100, 0.001f));
+        }
+        assertPairs(map, rectangles);
+    }
+
+    @Test
+    public void testSingleCell() {
+        final Set<Rectangle> rectangles = randomRectangles(500, 10);
+        final CollisionMap map = new CollisionMap(rectangles, 1, 1);
+        assertRandomQueries(map, rectangles, 200);
+        assertPairs(map, rectangles);
+    }
+
+    @Test
+    public void testAnisotropicResolution() {
+        final Set<Rectangle> rectangles = randomRectangles(1000, 10);
+        final CollisionMap wide = new CollisionMap(rectangles, 1000, 1);
+        assertRandomQueries(wide, rectangles, 200);
+        assertPairs(wide, rectangles);
+        final CollisionMap tall = new CollisionMap(rectangles, 1, 1000);
+        assertRandomQueries(tall, rectangles, 200);
+        assertPairs(tall, rectangles);
+    }
+
+    @Test
+    public void testAdaptiveResolution() {
+        final Set<Rectangle> rectangles = randomRectangles(2000, 3);
+        final CollisionMap map = CollisionMap.createAdaptive(rectangles);
+        assertRandomQueries(map, rectangles, 200);
+        assertPairs(map, rectangles);
+    }
+
+    @Test
+    public void testOverflowBucket() {
+        final Set<Rectangle> rectangles = randomRectangles(500, 10);
+        final CollisionMap map = new CollisionMap(rectangles, 10, 10);
+        final List<Rectangle> all = new ArrayList<>(rectangles);
+        // rectangles completely outside of the grid, some intersecting each
+        // other, and rectangles that reach beyond it
+        for (int i = 0; i < 40; ++i) {
+            final Rectangle outside = new Rectangle(150 + this.random.nextInt(20), -50 + this.random.nextInt(20), 5,
+                    5);
+            final Rectangle crossing = new Rectangle(90 + this.random.nextFloat() * 20, -10 + this.random.nextFloat()
+                    * 20, 5, 5);
+            assertTrue(map.add(outside));
+            assertTrue(map.add(crossing));
+            all.add(outside);
+            all.add(crossing);
+        }
+        assertEquals(all.size(), map.size());
+        assertRandomQueries(map, all, 200);
+        for (int i = 0; i < 50; ++i) {
+            assertCollisions(map, all, new Rectangle(140 + this.random.nextInt(40), -60 + this.random.nextInt(40),
+                    1 + this.random.nextInt(10), 1 + this.random.nextInt(10)));
+        }
+        assertPairs(map, all);
+    }
+
+    /**
+     * Interleaves adds, removals and moves, some of them into and out of the
+     * overflow bucket, with queries and explicit compactions, and compares the
+     * queries with the list of the currently stored rectangles.
+     */
+    @Test
+    public void testRandomUpdates() {
+        final List<Rectangle> rectangles = new ArrayList<>(randomRectangles(300, 8));
+        final CollisionMap map = new CollisionMap(new HashSet<>(rectangles), 20, 20);
+        for (int step = 0; step < 4000; ++step) {
+            final int operation = this.random.nextInt(5);
+            if (operation == 0 || rectangles.isEmpty()) {
+                final Rectangle rectangle = step % 7 == 0 ? outsideRectangle() : randomRectangle(8);
+                assertTrue(map.add(rectangle));
+                rectangles.add(rectangle);
+            } else if (operation == 1) {
+                final Rectangle rectangle = rectangles.remove(this.random.nextInt(rectangles.size()));
+                assertTrue(map.remove(rectangle));
+                assertFalse(map.remove(rectangle));
+            } else if (operation == 2) {
+                final int index = this.random.nextInt(rectangles.size());
+                final Rectangle moved = step % 5 == 0 ? outsideRectangle() : randomRectangle(8);
+                assertTrue(map.move(rectangles.get(index), moved));
+                rectangles.set(index, moved);
+            } else if (operation == 3 && step % 500 == 3) {
+                map.compact();
+            } else {
+                assertCollisions(map, rectangles, step % 2 == 0 ? randomRectangle(20) : outsideRectangle());
+            }
+            assertEquals(rectangles.size(), map.size());
+        }
+        assertRandomQueries(map, rectangles, 200);
+        assertPairs(map, rectangles);
+        map.compact();
+        assertRandomQueries(map, rectangles, 200);
+        assertPairs(map, rectangles);
+    }
+
+    /**
+     * Removing the rectangles of the overflow bucket must not leave entries
+     * that are tested by later queries.
+     */
+    @Test
+    public void testRemoveFromOverflow() {
+        final Set<Rectangle> rectangles = randomRectangles(100, 10);
+        final CollisionMap map = new CollisionMap(rectangles, 10, 10);
+        final CollisionMapMetrics metrics = new CollisionMapMetrics();
+        map.setMetrics(metrics);
+        final List<Rectangle> outside = new ArrayList<>();
+        for (int i = 0; i < 30; ++i) {
+            final Rectangle rectangle = new Rectangle(200 + i, 200, 5, 5);
+            assertTrue(map.add(rectangle));
+            outside.add(rectangle);
+        }
+        final Rectangle query = new Rectangle(300, 300, 1, 1);
+        map.forEachCollision(query, rectangle -> {
+        });
+        assertEquals(30, metrics.snapshot().getCandidatesTested());
+        // remove in an order that moves the last rectangle of the bucket around
+        for (int i = 0; i < outside.size(); i += 2) {
+            assertTrue(map.remove(outside.get(i)));
+        }
+        metrics.reset();
+        map.forEachCollision(query, rectangle -> {
+        });
+        assertEquals(15, metrics.snapshot().getCandidatesTested());
+        final List<Rectangle> all = new ArrayList<>(rectangles);
+        for (int i = 1; i < outside.size(); i += 2) {
+            all.add(outside.get(i));
+        }
+        assertCollisions(map, all, new Rectangle(190, 190, 30, 30));
+        assertPairs(map, all);
+    }
+
+    @Test
+    public void testQueryOutsideOfGrid() {
+        final Set<Rectangle> rectangles = randomRectangles(200, 10);
+        final CollisionMap map = new CollisionMap(rectangles);
+        assertCollisions(map, rectangles, new Rectangle(-50, -50, 10, 10));
+        assertCollisions(map, rectangles, new Rectangle(200, 200, 10, 10));
+        assertCollisions(map, rectangles, new Rectangle(-50, -50, 500, 500));
+    }
+
+    @Test
+    public void testSingleRectangle() {
+        final Set<Rectangle> rectangles = new HashSet<>();
+        rectangles.add(new Rectangle(3, 4, 1, 2));
+        final CollisionMap map = new CollisionMap(rectangles);
+        assertCollisions(map, rectangles, new Rectangle(4, 6, 1, 1));
+        assertCollisions(map, rectangles, new Rectangle(4.5f, 6, 1, 1));
+        assertPairs(map, rectangles);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidResolution() {
+        new CollisionMap(randomRectangles(10, 10), 0, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullQuery() {
+        new CollisionMap(randomRectangles(10, 10)).collide(null);
+    }
 }
@@ -0,0 +1,146 @@
+package de.unistuttgart.vis.dsass2021.ex05.p2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.unistuttgart.vis.dsass2021.ex05.p1.Rectangle;
+import de.unistuttgart.vis.dsass2021.ex05.p2.CollisionMap;
+import de.unistuttgart.vis.dsass2021.ex05.p2.SweepAndPrune;
+
+public class SweepAndPruneTest {
+
+    private Random random;
+
+    @Before
+    public void setUp() {
+        this.random = new Random(42);
+    }
+
+    private Rectangle randomRectangle(final float maxSize) {
+        return new Rectangle(this.random.nextFloat() * 120 - 10, this.random.nextFloat() * 120 - 10,
+                0.01f + this.random.nextFloat() * maxSize, 0.01f + this.random.nextFloat() * maxSize);
+    }
+
+    /**
+     * Compares the collisions of both broad phases with each other.
+     */
+    private static void assertSameCollisions(final SweepAndPrune sweep, final CollisionMap map,
+            final Rectangle query) {
+        final Set<Rectangle> expected = CollisionMapTest.identitySet();
+        map.forEachCollision(query, expected::add);
+        final List<Rectangle> found = new ArrayList<>();
+        assertEquals(expected.size(), sweep.forEachCollision(query, found::add));
+        assertEquals(expected.size(), found.size());
+        assertTrue(expected.containsAll(found));
+        assertEquals(map.collide(query), sweep.collide(query));
+    }
+
+    @Test
+    public void testAgainstCollisionMap() {
+        final Set<Rectangle> rectangles = new HashSet<>();
+        for (int i = 0; i < 1000; ++i) {
+            rectangles.add(randomRectangle(5));
+        }
+        final SweepAndPrune sweep = new SweepAndPrune(rectangles);
+        final CollisionMap map = new CollisionMap(rectangles);
+        for (int i = 0; i < 300; ++i) {
+            assertSameCollisions(sweep, map, randomRectangle(30));
+        }
+        assertEquals(map.forEachCollidingPair((first, second) -> {
+        }), sweep.forEachCollidingPair((first, second) -> assertTrue(first.intersects(second))));
+    }
+
+    /**
+     * Interleaves adds, removals and moves with queries, including removals and
+     * moves of the widest rectangles, and compares every query with a
+     * {@link CollisionMap} that receives the same updates.
+     */
+    @Test
+    public void testUpdatesAgainstCollisionMap() {
+        final List<Rectangle> rectangles = new ArrayList<>();
+        for (int i = 0; i < 300; ++i) {
+            rectangles.add(randomRectangle(5));
+        }
+        final SweepAndPrune sweep = new SweepAndPrune(new HashSet<>(rectangles));
+        final CollisionMap map = new CollisionMap(new HashSet<>(rectangles));
+        for (int step = 0; step < 4000; ++step) {
+            final int operation = this.random.nextInt(4);
+            if (operation == 0 || rectangles.isEmpty()) {
+                // now and then a wide rectangle that is removed or moved later
+                final Rectangle rectangle = randomRectangle(step % 40 == 0 ? 60 : 5);
+                assertTrue(sweep.add(rectangle));
+                assertTrue(map.add(rectangle));
+                assertFalse(sweep.add(rectangle));
+                rectangles.add(rectangle);
+            } else if (operation == 1) {
+                final Rectangle rectangle = rectangles.remove(this.random.nextInt(rectangles.size()));
+                assertTrue(sweep.remove(rectangle));
+                assertTrue(map.remove(rectangle));
+                assertFalse(sweep.remove(rectangle));
+            } else if (operation == 2) {
+                final int index = this.random.nextInt(rectangles.size());
+                final Rectangle rectangle = rectangles.get(index);
+                // mostly small steps, which keep the order almost sorted
+                final Rectangle moved = step % 10 == 0 ? randomRectangle(5)
+                        : new Rectangle(rectangle.getX() + this.random.nextFloat() * 2 - 1,
+                                rectangle.getY() + this.random.nextFloat() * 2 - 1, rectangle.getWidth(),
+                                rectangle.getHeight());
+                assertTrue(sweep.move(rectangle, moved));
+                assertTrue(map.move(rectangle, moved));
+                assertFalse(sweep.contains(rectangle));
+                assertTrue(sweep.contains(moved));
+                rectangles.set(index, moved);
+            } else {
+                assertSameCollisions(sweep, map, randomRectangle(20));
+            }
+            assertEquals(map.size(), sweep.size());
+        }
+        final long[] pairs = new long[1];
+        map.forEachCollidingPair((first, second) -> ++pairs[0]);
+        assertEquals(pairs[0], sweep.forEachCollidingPair((first, second) -> assertTrue(first.intersects(second))));
+    }
+
+    /**
+     * A query far to the right of a removed wide rectangle must not find it,
+     * and a narrowed rectangle must still be found by queries to its right.
+     */
+    @Test
+    public void testWidestRectangleUpdates() {
+        final Set<Rectangle> rectangles = new HashSet<>();
+        final Rectangle wide = new Rectangle(0, 0, 100, 1);
+        final Rectangle narrow = new Rectangle(50, 0, 1, 1);
+        rectangles.add(wide);
+        rectangles.add(narrow);
+        final SweepAndPrune sweep = new SweepAndPrune(rectangles);
+        assertEquals(2, sweep.forEachCollision(new Rectangle(50, 0, 1, 1), rectangle -> {
+        }));
+        final Rectangle narrowed = new Rectangle(0, 0, 10, 1);
+        assertTrue(sweep.move(wide, narrowed));
+        assertEquals(1, sweep.forEachCollision(new Rectangle(50, 0, 1, 1), rectangle -> {
+        }));
+        assertTrue(sweep.collide(new Rectangle(9, 0, 1, 1)));
+        assertTrue(sweep.remove(narrowed));
+        assertFalse(sweep.collide(new Rectangle(9, 0, 1, 1)));
+        assertTrue(sweep.collide(new Rectangle(51, 1, 1, 1)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMoveToStoredRectangle() {
+        final Set<Rectangle> rectangles = new HashSet<>();
+        final Rectangle first = new Rectangle(0, 0, 1, 1);
+        final Rectangle second = new Rectangle(5, 5, 1, 1);
+        rectangles.add(first);
+        rectangles.add(second);
+        new SweepAndPrune(rectangles).move(first, second);
+    }
+}